@@ -24,6 +24,17 @@ public class Cardinality {
 	public static final Cardinality ZERO_MANY = new Cardinality(0, MANY);
 	public static final Cardinality ONE_ONE = new Cardinality(1, 1);
 	public static final Cardinality ONE_MANY = new Cardinality(1, MANY);
+	private final static int FROM = 0, TO = 1;
+	// cardinality
+	// : '*'
+	// | Pint '..' ( '*' | Pint )
+	// ;
+	private final static Rule rule = Rule.choice(
+			Rule.ch('*'),
+			Rule.sequence(
+					Rule.capture(FROM, Rule.of(Parser::consumePint)),
+					Rule.string(".."),
+					Rule.choice(Rule.ch('*'), Rule.capture(TO, Rule.of(Parser::consumePint)))));
 	public final int from;
 	public final int to;
 	public final String text;
@@ -131,18 +142,15 @@ public class Cardinality {
 	public static Cardinality parse(Parser parser) {
 		final Cardinality result;
 
-		// cardinality
-		// : '*'
-		// | Pint '..' ( '*' | Pint )
-		// ;
-
 		final int start = parser.cursor();
-		if(parser.consume('*') ||
-				parser.consumePint() && parser.consume("..") && (parser.consume('*') || parser.consumePint())) {
-			final String string = parser.getString(start);
-			result = Cardinality.newInstance(string);
+		final Match match = new Match(parser, 2);
+		if(match.matches(rule)) {
+			try {
+				result = newInstance(match.getInt(FROM, 0), match.getInt(TO, MANY));
+			} catch(final NumberFormatException e) {
+				throw new Exception("Invalid cardinality: '" + parser.getString(start) + '\'', e);
+			}
 		} else {
-			parser.setCursor(start);
 			result = null;
 		}
 
@@ -0,0 +1,136 @@
+package com.inexas.util;
+
+/**
+ * Bulk scanning of char[] ranges used by Parser and Text. indexOfAny() reads
+ * four characters at a time as a long, assembled from plain array reads, and
+ * tests them against all the characters together using SWAR (SIMD within a
+ * register) bit tricks. If the system property com.inexas.util.swar is
+ * "false" it uses the simple loop instead. Benchmarks show that without
+ * unaligned long reads the JIT's simple loops are faster for the single
+ * character scans so they use nothing else. All methods work on [from, to)
+ * which must be a valid range of the array, it is not checked.
+ */
+final class CharArrays {
+	/** One in each 16 bit lane */
+	private final static long ONES = 0x0001_0001_0001_0001L;
+	/** Everything but the top bit in each lane */
+	private final static long LOW_BITS = 0x7FFF_7FFF_7FFF_7FFFL;
+	private final static boolean swar = !"false".equals(System.getProperty("com.inexas.util.swar"));
+
+	private CharArrays() {
+		// Hide
+	}
+
+	/**
+	 * @return True if the SWAR kernel is being used.
+	 */
+	static boolean isSwar() {
+		return swar;
+	}
+
+	/**
+	 * @return The index of the first c in [from, to) or -1.
+	 */
+	static int indexOf(char[] ca, int from, int to, char c) {
+		for(int i = from; i < to; i++) {
+			if(ca[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The index of the first character in [from, to) that is one of
+	 *         chars or -1.
+	 */
+	static int indexOfAny(char[] ca, int from, int to, char[] chars) {
+		final int count = chars.length;
+		int i = from;
+		if(swar && count > 0 && count <= 4) {
+			final long pattern0 = chars[0] * ONES;
+			final long pattern1 = count > 1 ? chars[1] * ONES : pattern0;
+			final long pattern2 = count > 2 ? chars[2] * ONES : pattern0;
+			final long pattern3 = count > 3 ? chars[3] * ONES : pattern0;
+			for(final int last = to - 4; i <= last; i += 4) {
+				final long word = read(ca, i);
+				final long matches = zeroLanes(word ^ pattern0)
+						| zeroLanes(word ^ pattern1)
+						| zeroLanes(word ^ pattern2)
+						| zeroLanes(word ^ pattern3);
+				if(matches != 0) {
+					return i + (Long.numberOfTrailingZeros(matches) >>> 4);
+				}
+			}
+		}
+		for(; i < to; i++) {
+			final char c = ca[i];
+			for(int j = 0; j < count; j++) {
+				if(chars[j] == c) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The index of the last c in [from, to) or -1.
+	 */
+	static int lastIndexOf(char[] ca, int from, int to, char c) {
+		int i = to;
+		while(--i >= from) {
+			if(ca[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The number of c characters in [from, to).
+	 */
+	static int count(char[] ca, int from, int to, char c) {
+		int result = 0;
+		for(int i = from; i < to; i++) {
+			if(ca[i] == c) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The index of the first character in [from, to) that is not a
+	 *         space, tab or newline or 'to' if there isn't one.
+	 */
+	static int skipWhitespace(char[] ca, int from, int to) {
+		int i = from;
+		for(; i < to; i++) {
+			final char c = ca[i];
+			if(c != ' ' && c != '\n' && c != '\t') {
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @return ca[i] to ca[i + 3] as a long, ca[i] in the low 16 bits.
+	 */
+	private static long read(char[] ca, int i) {
+		return ca[i]
+				| (long)ca[i + 1] << 16
+				| (long)ca[i + 2] << 32
+				| (long)ca[i + 3] << 48;
+	}
+
+	/**
+	 * @return A long with the top bit of each 16 bit lane set if that lane of
+	 *         word is zero, there are no false positives.
+	 */
+	private static long zeroLanes(long word) {
+		return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+	}
+
+}
@@ -0,0 +1,320 @@
+package com.inexas.util;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A CharClass is an immutable set of characters compiled for fast matching,
+ * use it with Parser.consume(CharClass, int, int) to consume tokens made of
+ * any characters, not just the ASCII classes supported by consumeAscii().
+ *
+ * Characters up to 0xFF are held in a 256 bit bitmap so matching them is a
+ * table lookup; other characters are held as a sorted array of ranges which
+ * is binary searched. Build a CharClass once, typically as a constant, and
+ * reuse it:
+ *
+ * <pre>
+ * final static CharClass IDENTIFIER = new CharClass.Builder()
+ * 		.add('a', 'z').add('A', 'Z').add('_').add('\u00c0', '\u00ff')
+ * 		.build();
+ * </pre>
+ */
+public final class CharClass {
+	public final static CharClass DIGIT = new Builder().add('0', '9').build();
+	public final static CharClass HEX_DIGIT = new Builder().add('0', '9').add('a', 'f').add('A', 'F').build();
+	public final static CharClass ASCII_LETTER = new Builder().add('a', 'z').add('A', 'Z').build();
+	public final static CharClass WHITESPACE = new Builder().add(" \t\n\r\f").build();
+
+	/**
+	 * Builds a CharClass from characters, ranges and other classes.
+	 */
+	public static class Builder {
+		/** Inclusive ranges as from, to pairs in the order added */
+		private int[] ranges = new int[16];
+		private int size;
+		private boolean negate;
+
+		/**
+		 * Add a single character.
+		 *
+		 * @param c
+		 *            The character to add.
+		 * @return this
+		 */
+		public Builder add(char c) {
+			return add(c, c);
+		}
+
+		/**
+		 * Add an inclusive range of characters.
+		 *
+		 * @param from
+		 *            The first character in the range.
+		 * @param to
+		 *            The last character in the range.
+		 * @return this
+		 */
+		public Builder add(char from, char to) {
+			assert from <= to : "Invalid range: " + (int)from + ".." + (int)to;
+
+			if(size == ranges.length) {
+				ranges = Arrays.copyOf(ranges, size * 2);
+			}
+			ranges[size++] = from;
+			ranges[size++] = to;
+			return this;
+		}
+
+		/**
+		 * Add each of the characters in a string.
+		 *
+		 * @param characters
+		 *            The characters to add, e.g. "+-".
+		 * @return this
+		 */
+		public Builder add(String characters) {
+			final int length = characters.length();
+			for(int i = 0; i < length; i++) {
+				add(characters.charAt(i));
+			}
+			return this;
+		}
+
+		/**
+		 * Add all the characters in another CharClass.
+		 *
+		 * @param charClass
+		 *            The class to add.
+		 * @return this
+		 */
+		public Builder add(CharClass charClass) {
+			final int[] toAdd = charClass.getRanges();
+			for(int i = 0; i < toAdd.length; i += 2) {
+				add((char)toAdd[i], (char)toAdd[i + 1]);
+			}
+			return this;
+		}
+
+		/**
+		 * Add every character for which a predicate is true, e.g.
+		 * Character::isLetter. The predicate is called for all 65,536
+		 * characters once, when this method is called, and never again.
+		 *
+		 * @param predicate
+		 *            The predicate to test each character with.
+		 * @return this
+		 */
+		public Builder add(IntPredicate predicate) {
+			int from = -1;
+			for(int c = 0; c <= Character.MAX_VALUE + 1; c++) {
+				if(c <= Character.MAX_VALUE && predicate.test(c)) {
+					if(from < 0) {
+						from = c;
+					}
+				} else if(from >= 0) {
+					add((char)from, (char)(c - 1));
+					from = -1;
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Make the CharClass match every character that has not been added.
+		 *
+		 * @return this
+		 */
+		public Builder negate() {
+			negate = !negate;
+			return this;
+		}
+
+		/**
+		 * @return A new CharClass with the characters added so far.
+		 */
+		public CharClass build() {
+			return new CharClass(normalize());
+		}
+
+		/**
+		 * @return The ranges sorted, merged and negated if required.
+		 */
+		private int[] normalize() {
+			// Sort the pairs by their start...
+			final int count = size / 2;
+			final long[] pairs = new long[count];
+			for(int i = 0; i < count; i++) {
+				pairs[i] = (long)ranges[i * 2] << 32 | ranges[i * 2 + 1];
+			}
+			Arrays.sort(pairs);
+
+			// ...merge overlapping and adjacent ones...
+			final int[] merged = new int[size];
+			int mergedSize = 0;
+			for(final long pair : pairs) {
+				final int from = (int)(pair >>> 32);
+				final int to = (int)pair;
+				if(mergedSize > 0 && from <= merged[mergedSize - 1] + 1) {
+					merged[mergedSize - 1] = Math.max(merged[mergedSize - 1], to);
+				} else {
+					merged[mergedSize++] = from;
+					merged[mergedSize++] = to;
+				}
+			}
+
+			// ...and negate
+			final int[] result;
+			if(negate) {
+				final int[] negated = new int[mergedSize + 2];
+				int negatedSize = 0;
+				int next = 0;
+				for(int i = 0; i < mergedSize; i += 2) {
+					if(merged[i] > next) {
+						negated[negatedSize++] = next;
+						negated[negatedSize++] = merged[i] - 1;
+					}
+					next = merged[i + 1] + 1;
+				}
+				if(next <= Character.MAX_VALUE) {
+					negated[negatedSize++] = next;
+					negated[negatedSize++] = Character.MAX_VALUE;
+				}
+				result = Arrays.copyOf(negated, negatedSize);
+			} else {
+				result = Arrays.copyOf(merged, mergedSize);
+			}
+
+			return result;
+		}
+	}
+
+	/** Characters 0 to 0xFF, bit c % 64 of latin1[c / 64] */
+	private final long[] latin1 = new long[4];
+	/** Sorted, non-overlapping, inclusive ranges above 0xFF as from, to pairs */
+	private final char[] high;
+	/** All the ranges, kept so the class can be added to another */
+	private final int[] ranges;
+
+	private CharClass(int[] ranges) {
+		this.ranges = ranges;
+
+		int highCount = 0;
+		for(int i = 0; i < ranges.length; i += 2) {
+			final int from = ranges[i];
+			final int to = ranges[i + 1];
+			for(int c = from; c <= Math.min(to, 0xFF); c++) {
+				latin1[c >>> 6] |= 1L << c;
+			}
+			if(to > 0xFF) {
+				highCount += 2;
+			}
+		}
+
+		high = new char[highCount];
+		int j = 0;
+		for(int i = 0; i < ranges.length; i += 2) {
+			final int to = ranges[i + 1];
+			if(to > 0xFF) {
+				high[j++] = (char)Math.max(ranges[i], 0x100);
+				high[j++] = (char)to;
+			}
+		}
+	}
+
+	/**
+	 * @param c
+	 *            The character to test.
+	 * @return True if c is in this class.
+	 */
+	public boolean matches(char c) {
+		final boolean result;
+
+		if(c <= 0xFF) {
+			result = (latin1[c >>> 6] & 1L << c) != 0;
+		} else {
+			// Binary search for the last range starting at or before c
+			int low = 0, highest = high.length / 2 - 1;
+			while(low <= highest) {
+				final int middle = (low + highest) >>> 1;
+				if(high[middle * 2] <= c) {
+					low = middle + 1;
+				} else {
+					highest = middle - 1;
+				}
+			}
+			result = highest >= 0 && c <= high[highest * 2 + 1];
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The index of the first character in [from, to) of ca that is not
+	 *         in this class or 'to' if they all are.
+	 */
+	int span(char[] ca, int from, int to) {
+		int i = from;
+		if(high.length == 0) {
+			// No need to check anything but the bitmap
+			final long[] bits = latin1;
+			for(; i < to; i++) {
+				final char c = ca[i];
+				if(c > 0xFF || (bits[c >>> 6] & 1L << c) == 0) {
+					break;
+				}
+			}
+		} else {
+			while(i < to && matches(ca[i])) {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	int[] getRanges() {
+		return ranges;
+	}
+
+	/**
+	 * @return The class in the usual [a-z_] notation with non-printing
+	 *         characters escaped.
+	 */
+	@Override
+	public String toString() {
+		final Text result = new Text();
+		result.append('[');
+		for(int i = 0; i < ranges.length; i += 2) {
+			append(result, ranges[i]);
+			if(ranges[i + 1] != ranges[i]) {
+				result.append('-');
+				append(result, ranges[i + 1]);
+			}
+		}
+		result.append(']');
+		return result.toString();
+	}
+
+	private void append(Text text, int c) {
+		if(c > ' ' && c < 0x7F && c != '-' && c != '\\' && c != ']') {
+			text.append((char)c);
+		} else {
+			text.append("\\u");
+			final String hex = Integer.toHexString(c);
+			for(int i = hex.length(); i < 4; i++) {
+				text.append('0');
+			}
+			text.append(hex);
+		}
+	}
+
+	@Override
+	public boolean equals(Object rhsObject) {
+		return rhsObject instanceof CharClass && Arrays.equals(ranges, ((CharClass)rhsObject).ranges);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(ranges);
+	}
+
+}
@@ -102,15 +102,31 @@ public class DateU {
 	 */
 	@Nullable
 	public static LocalDateTime parseStandardDatetime(String datetime) {
+		return parseStandardDatetime(new Parser(datetime));
+	}
+
+	/**
+	 * Parse a datetime in standard format at the parser's cursor. If one is
+	 * found the cursor is advanced past it otherwise the cursor is not moved.
+	 * The parser may be streaming.
+	 *
+	 * @param parser
+	 *            Where to parse from.
+	 * @return The parsed date or null if one cannot be parsed.
+	 * @see #parseStandardDatetime(String)
+	 */
+	@Nullable
+	public static LocalDateTime parseStandardDatetime(Parser parser) {
 		final LocalDateTime result;
 
-		final Parser parser = new Parser(datetime);
+		final int save = parser.cursor();
 		LocalDate date;
 		LocalTime time;
 		if((date = date(parser)) != null && parser.consume(' ') && (time = time(parser)) != null) {
 			result = LocalDateTime.of(date, time);
 		} else {
 			result = null;
+			parser.setCursor(save);
 		}
 
 		return result;
@@ -128,6 +144,19 @@ public class DateU {
 		return date(parser);
 	}
 
+	/**
+	 * Parse a date in standard format at the parser's cursor.
+	 *
+	 * @param parser
+	 *            Where to parse from, the cursor is only advanced if a date
+	 *            is found.
+	 * @return The parsed date or null if one cannot be parsed.
+	 */
+	@Nullable
+	public static LocalDate parseStandardDate(Parser parser) {
+		return date(parser);
+	}
+
 	/**
 	 * Parse a time in standard format.
 	 *
@@ -140,6 +169,19 @@ public class DateU {
 		return time(parser);
 	}
 
+	/**
+	 * Parse a time in standard format at the parser's cursor.
+	 *
+	 * @param parser
+	 *            Where to parse from, the cursor is only advanced if a time
+	 *            is found.
+	 * @return The parsed time or null if one cannot be parsed.
+	 */
+	@Nullable
+	public static LocalTime parseStandardTime(Parser parser) {
+		return time(parser);
+	}
+
 	/*
 	 * 'Standard' date time format
 	 *
@@ -158,9 +200,9 @@ public class DateU {
 	 * @return yyyy/mm/dd hh:mm(:ss(.ms)?)?
 	 */
 	public static String formatStandardDatetime(LocalDateTime datetime) {
-		final Text t = new Text();
+		final Text t = TextPool.SHARED.acquire(true);
 		formatStandardDatetime(datetime, t);
-		return t.toString();
+		return TextPool.SHARED.toString(t);
 	}
 
 	/**
@@ -185,9 +227,9 @@ public class DateU {
 	 * @return yyyy/mm/dd
 	 */
 	public static String formatStandardDate(LocalDate date) {
-		final Text t = new Text();
+		final Text t = TextPool.SHARED.acquire(true);
 		formatStandardDate(date, t);
-		return t.toString();
+		return TextPool.SHARED.toString(t);
 	}
 
 	public static void formatStandardDate(LocalDate date, Text t) {
@@ -202,9 +244,9 @@ public class DateU {
 	 * @return hh:mm(:ss(.ms)?)?
 	 */
 	public static String formatStandardTime(LocalTime time) {
-		final Text t = new Text();
+		final Text t = TextPool.SHARED.acquire(true);
 		formatStandardTime(time, t);
-		return t.toString();
+		return TextPool.SHARED.toString(t);
 	}
 
 	public static void formatStandardTime(LocalTime time, Text t) {
@@ -304,37 +346,24 @@ public class DateU {
 	}
 
 	private static void date(int year, int month, int day, Text t) {
-		pad(year, t);
+		t.appendPadded(year, 2);
 		t.append('/');
-		pad(month, t);
+		t.appendPadded(month, 2);
 		t.append('/');
-		pad(day, t);
-	}
-
-	private static void pad(int i, Text t) {
-		if(i < 10) {
-			t.append('0');
-		}
-		t.append(i);
+		t.appendPadded(day, 2);
 	}
 
 	private static void time(int hour, int minute, int second, int nano, Text t) {
-		pad(hour, t);
+		t.appendPadded(hour, 2);
 		t.append(':');
-		pad(minute, t);
+		t.appendPadded(minute, 2);
 		if(second != 0 || nano != 0) {
 			t.append(':');
-			pad(second, t);
+			t.appendPadded(second, 2);
 			final int ms = nano / 1_000_000;
 			if(ms != 0) {
 				t.append('.');
-				if(ms < 100) {
-					t.append('0');
-				}
-				if(ms < 10) {
-					t.append('0');
-				}
-				t.append(ms);
+				t.appendPadded(ms, 3);
 			}
 		}
 	}
@@ -0,0 +1,383 @@
+package com.inexas.util;
+
+import java.math.BigInteger;
+
+/**
+ * Writes numbers as characters directly into a char[] so that Text can
+ * append them without creating Strings.
+ *
+ * Integers are written from the right two digits at a time using a lookup
+ * table. Doubles are converted to the shortest decimal that parses back to
+ * the same double using Raffaello Giulietti's Schubfach algorithm, which is
+ * what Double.toString() uses from JDK 19, and laid out the same way as
+ * Double.toString(): plain for 10^-3 &lt;= |d| &lt; 10^7 and computerized
+ * scientific notation, e.g. 1.0E-5, otherwise. Older JDKs sometimes write
+ * more digits than are needed so the output may be shorter than theirs.
+ */
+final class Digits {
+	/** Longest double: -2.2250738585072014E-308 */
+	static final int MAX_DOUBLE_LENGTH = 24;
+	private final static char[] TENS = new char[100];
+	private final static char[] ONES = new char[100];
+	private final static char[] HEX = "0123456789abcdef".toCharArray();
+	static {
+		for(int i = 0; i < 100; i++) {
+			TENS[i] = (char)('0' + i / 10);
+			ONES[i] = (char)('0' + i % 10);
+		}
+	}
+
+	// Schubfach constants, see DoubleToDecimal in JDK 19
+	/** Precision in bits */
+	private final static int P = 53;
+	/** Minimum binary exponent of the significand */
+	private final static int Q_MIN = -1074;
+	/** Smallest normal significand */
+	private final static long C_MIN = 1L << P - 1;
+	/** Subnormal significands below this need an extra digit */
+	private final static int C_TINY = 3;
+	/** Number of decimal digits in the normalized significand */
+	private final static int H = 17;
+	private final static long MASK_63 = 0x7FFF_FFFF_FFFF_FFFFL;
+	private final static long[] POWERS_OF_10 = new long[H + 1];
+	static {
+		POWERS_OF_10[0] = 1;
+		for(int i = 1; i <= H; i++) {
+			POWERS_OF_10[i] = POWERS_OF_10[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * 126 bit approximations of powers of 10, created the first time a double
+	 * is written.
+	 */
+	private static class Powers {
+		private final static int K_MIN = -324;
+		private final static int K_MAX = 292;
+		/** g1, the high bits, and g0, the low 63 bits, for each k */
+		private final static long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+		static {
+			// 10^-k = beta 2^r where 2^125 <= beta < 2^126, g = floor(beta) + 1
+			final BigInteger ten = BigInteger.TEN;
+			for(int k = K_MIN; k <= K_MAX; k++) {
+				final int r = flog2pow10(-k) - 125;
+				BigInteger beta;
+				if(k <= 0) {
+					beta = ten.pow(-k);
+					beta = r <= 0 ? beta.shiftLeft(-r) : beta.shiftRight(r);
+				} else {
+					beta = BigInteger.ONE.shiftLeft(-r).divide(ten.pow(k));
+				}
+				final BigInteger g = beta.add(BigInteger.ONE);
+				final int i = (k - K_MIN) * 2;
+				G[i] = g.shiftRight(63).longValue();
+				G[i + 1] = g.longValue() & MASK_63;
+			}
+		}
+	}
+
+	private Digits() {
+		// Hide
+	}
+
+	/**
+	 * @return The number of characters needed to write l including the sign.
+	 */
+	static int size(long l) {
+		int result = l < 0 ? 2 : 1;
+
+		// Negative so MIN_VALUE can be handled
+		final long q = l < 0 ? l : -l;
+		long limit = -10;
+		for(int digits = 1; digits < 19 && q <= limit; digits++) {
+			result++;
+			limit *= 10;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Write l in decimal ending just before 'end'.
+	 *
+	 * @return The index of the first character written.
+	 */
+	static int write(long l, int end, char[] ca) {
+		int i = end;
+		// Negative so MIN_VALUE can be handled
+		long q = l < 0 ? l : -l;
+		while(q <= -100) {
+			final long next = q / 100;
+			final int pair = (int)(next * 100 - q);
+			q = next;
+			ca[--i] = ONES[pair];
+			ca[--i] = TENS[pair];
+		}
+		final int last = (int)-q;
+		ca[--i] = ONES[last];
+		if(last >= 10) {
+			ca[--i] = TENS[last];
+		}
+		if(l < 0) {
+			ca[--i] = '-';
+		}
+		return i;
+	}
+
+	/**
+	 * Write l in decimal, right aligned and padded to at least 'width'
+	 * characters starting at 'start'. If the pad character is '0' a minus
+	 * sign comes before the zeros.
+	 *
+	 * @return The index after the last character written.
+	 */
+	static int writePadded(long l, int width, char pad, int start, char[] ca) {
+		final int size = size(l);
+		final int end = start + Math.max(size, width);
+		write(l, end, ca);
+		if(size < width) {
+			int i = start;
+			if(l < 0 && pad == '0') {
+				ca[i++] = '-';
+				ca[start + width - size] = '0';
+			}
+			while(i < end - size) {
+				ca[i++] = pad;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return The number of hex digits needed to write l unsigned.
+	 */
+	static int hexSize(long l) {
+		return Math.max(1, (67 - Long.numberOfLeadingZeros(l)) >> 2);
+	}
+
+	/**
+	 * Write l as unsigned lower case hex, 'size' digits ending just before
+	 * 'end'. If size is more than hexSize(l) leading zeros are written.
+	 */
+	static void writeHex(long l, int size, int end, char[] ca) {
+		long remainder = l;
+		for(int i = end - 1; i >= end - size; i--) {
+			ca[i] = HEX[(int)remainder & 0xF];
+			remainder >>>= 4;
+		}
+	}
+
+	/**
+	 * Write the shortest decimal that will parse to d.
+	 *
+	 * @param start
+	 *            Where to write, there must be MAX_DOUBLE_LENGTH characters of
+	 *            space.
+	 * @return The index after the last character written.
+	 */
+	static int write(double d, int start, char[] ca) {
+		final int result;
+
+		final long bits = Double.doubleToRawLongBits(d);
+		final long t = bits & (C_MIN - 1);
+		final int bq = (int)(bits >>> P - 1) & 0x7FF;
+		if(bq < 0x7FF) {
+			int i = start;
+			if(bits < 0) {
+				ca[i++] = '-';
+			}
+			if(bq != 0) {
+				// Normal
+				final int mq = -Q_MIN + 1 - bq;
+				final long c = C_MIN | t;
+				final long f = c >> mq;
+				if(0 < mq & mq < P && f << mq == c) {
+					// A small integer
+					result = layout(f, 0, i, ca);
+				} else {
+					result = toDecimal(-mq, c, 0, i, ca);
+				}
+			} else if(t != 0) {
+				// Subnormal
+				result = t < C_TINY ? toDecimal(Q_MIN, 10 * t, -1, i, ca) : toDecimal(Q_MIN, t, 0, i, ca);
+			} else {
+				ca[i++] = '0';
+				ca[i++] = '.';
+				ca[i++] = '0';
+				result = i;
+			}
+		} else {
+			final String special = t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity";
+			special.getChars(0, special.length(), ca, start);
+			result = start + special.length();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Find the shortest decimal in the rounding interval of c 2^q.
+	 */
+	private static int toDecimal(int q, long c, int dk, int start, char[] ca) {
+		final int out = (int)c & 0x1;
+		final long cb = c << 2;
+		final long cbr = cb + 2;
+		final long cbl;
+		final int k;
+		if(c != C_MIN | q == Q_MIN) {
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			// The interval is asymmetric at the bottom of a binade
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		final int h = q + flog2pow10(-k) + 2;
+
+		final int index = (k - Powers.K_MIN) * 2;
+		final long g1 = Powers.G[index];
+		final long g0 = Powers.G[index + 1];
+
+		final long vb = rop(g1, g0, cb << h);
+		final long vbl = rop(g1, g0, cbl << h);
+		final long vbr = rop(g1, g0, cbr << h);
+
+		final long s = vb >> 2;
+		if(s >= 100) {
+			// Try one digit less
+			final long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+			final long tp10 = sp10 + 10;
+			final boolean upin = vbl + out <= sp10 << 2;
+			final boolean wpin = (tp10 << 2) + out <= vbr;
+			if(upin != wpin) {
+				return layout(upin ? sp10 : tp10, k, start, ca);
+			}
+		}
+		final long t = s + 1;
+		final boolean uin = vbl + out <= s << 2;
+		final boolean win = (t << 2) + out <= vbr;
+		if(uin != win) {
+			return layout(uin ? s : t, k + dk, start, ca);
+		}
+		// Both are in the interval, pick the closest, or the even one
+		final long cmp = vb - (s + t << 1);
+		return layout(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, start, ca);
+	}
+
+	/**
+	 * Write f 10^e in the same layout as Double.toString().
+	 */
+	private static int layout(long f, int e, int start, char[] ca) {
+		// Strip trailing zeros
+		long significand = f;
+		int exponent = e;
+		while(significand % 10 == 0 && significand != 0) {
+			significand /= 10;
+			exponent++;
+		}
+
+		int length = 1;
+		while(length < H + 1 && significand >= POWERS_OF_10[length]) {
+			length++;
+		}
+		// Value is d.ddd x 10^scientific
+		final int scientific = exponent + length - 1;
+
+		int i = start;
+		if(scientific >= 0 && scientific < 7) {
+			// Plain: ddd.ddd, with a trailing .0 if it's an integer
+			if(length <= scientific + 1) {
+				i = write(significand, i + length, ca);
+				i += length;
+				for(int j = length; j <= scientific; j++) {
+					ca[i++] = '0';
+				}
+				ca[i++] = '.';
+				ca[i++] = '0';
+			} else {
+				final int end = i + length + 1;
+				write(significand, end, ca);
+				// Shift the integer part left one to make room for the '.'
+				System.arraycopy(ca, i + 1, ca, i, scientific + 1);
+				ca[i + scientific + 1] = '.';
+				i = end;
+			}
+		} else if(scientific < 0 && scientific >= -3) {
+			// Plain: 0.000ddd
+			ca[i++] = '0';
+			ca[i++] = '.';
+			for(int j = -1; j > scientific; j--) {
+				ca[i++] = '0';
+			}
+			i += length;
+			write(significand, i, ca);
+		} else {
+			// Scientific: d.dddEn
+			final int end = i + length + 1;
+			write(significand, end, ca);
+			ca[i] = ca[i + 1];
+			ca[i + 1] = '.';
+			i = end;
+			if(length == 1) {
+				ca[i++] = '0';
+			}
+			ca[i++] = 'E';
+			final int size = size(scientific);
+			i += size;
+			write(scientific, i, ca);
+		}
+
+		return i;
+	}
+
+	/**
+	 * @return The rounded product of the 126 bit g and cp, see Schubfach.
+	 */
+	private static long rop(long g1, long g0, long cp) {
+		final long x1 = multiplyHigh(g0, cp);
+		final long y0 = g1 * cp;
+		final long y1 = multiplyHigh(g1, cp);
+		final long z = (y0 >>> 1) + x1;
+		final long vbp = y1 + (z >>> 63);
+		return vbp | (z & MASK_63) + MASK_63 >>> 63;
+	}
+
+	/**
+	 * @return The high 64 bits of the 128 bit product, Math.multiplyHigh()
+	 *         isn't available until Java 9.
+	 */
+	private static long multiplyHigh(long x, long y) {
+		final long x1 = x >> 32;
+		final long x2 = x & 0xFFFF_FFFFL;
+		final long y1 = y >> 32;
+		final long y2 = y & 0xFFFF_FFFFL;
+		final long z2 = x2 * y2;
+		final long t = x1 * y2 + (z2 >>> 32);
+		long z1 = t & 0xFFFF_FFFFL;
+		final long z0 = t >> 32;
+		z1 += x2 * y1;
+		return x1 * y1 + z0 + (z1 >> 32);
+	}
+
+	/**
+	 * @return floor(log10(2^e)) for |e| &lt;= 5,456,721.
+	 */
+	private static int flog10pow2(int e) {
+		return (int)(e * 661_971_961_083L >> 41);
+	}
+
+	/**
+	 * @return floor(log10(3/4 2^e)) for |e| &lt;= 5,456,721.
+	 */
+	private static int flog10threeQuartersPow2(int e) {
+		return (int)(e * 661_971_961_083L + -274_743_187_321L >> 41);
+	}
+
+	/**
+	 * @return floor(log2(10^e)) for |e| &lt;= 1,233,610.
+	 */
+	private static int flog2pow10(int e) {
+		return (int)(e * 913_124_641_741L >> 38);
+	}
+
+}
@@ -1,11 +1,25 @@
 package com.inexas.util;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.regex.Pattern;
-import java.util.zip.*;
+import java.util.stream.*;
 import com.inexas.exception.ShouldNotBeCalledException;
 
+/**
+ * File utilities. The read methods decode files in one pass with an explicit
+ * Charset, the overloads without one use the platform's default charset as
+ * FileReader does. Files of MAPPING_THRESHOLD bytes or more are memory
+ * mapped and decoded through a small window so the bytes are never all on
+ * the heap; smaller files are read with a single read. readIntoStringList()
+ * decodes as it goes so only the lines are kept.
+ */
 public class FileU {
 	public static enum Type {
 		FILE,
@@ -16,57 +30,186 @@ public class FileU {
 	public final static String ROOT = getCurrentWorkingDirectory() + '/';
 	public final static String DATA = ROOT + "data/";
 	public final static String DATATEST = ROOT + "datatest/";
+	private final static char[] LINE_ENDS = { '\n', '\r' };
+	private final static int DECODE_WINDOW_SIZE = 64 * 1024;
+	/** Files this size or bigger are memory mapped rather than read */
+	public final static int MAPPING_THRESHOLD = 1024 * 1024;
 
-	public static char[] readToCharacterArray(File file) {
-		final char[] result;
-
-		try(final FileReader reader = new FileReader(file)) {
-			final int length = (int)file.length();
-			final char[] ca = new char[length];
-			final int read = reader.read(ca);
-			if(read < length) {
-				// File contained unicode characters mapping two bytes to 1
-				// character
-				result = new char[read];
-				System.arraycopy(ca, 0, result, 0, read);
+	/**
+	 * Read a file's bytes without copying them if possible: files of
+	 * MAPPING_THRESHOLD bytes or more are memory mapped, the buffer is read
+	 * only, smaller ones are read into a heap buffer.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @return The file's bytes from position 0 to the limit.
+	 */
+	public static ByteBuffer readToByteBuffer(File file) {
+		final ByteBuffer result;
+
+		try(final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = checkSize(channel, file);
+			if(size >= MAPPING_THRESHOLD) {
+				result = channel.map(MapMode.READ_ONLY, 0, size);
 			} else {
-				result = ca;
+				result = ByteBuffer.allocate((int)size);
+				while(result.hasRemaining() && channel.read(result) >= 0) {
+					// Keep reading
+				}
+				result.flip();
 			}
-		} catch(final Exception e) {
-			throw new RuntimeException("Error reading file: " +
-					file.getAbsolutePath(), e);
+		} catch(final IOException e) {
+			throw new RuntimeException("Error reading file: " + file.getAbsolutePath(), e);
 		}
 
 		return result;
 	}
 
+	/**
+	 * @param file
+	 *            The file to read.
+	 * @return The file's bytes, the array is exactly the size of the file.
+	 */
+	public static byte[] readToByteArray(File file) {
+		byte[] result;
+
+		try(final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buffer = ByteBuffer.allocate((int)checkSize(channel, file));
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// Keep reading
+			}
+			result = buffer.array();
+			if(buffer.position() < result.length) {
+				// The file shrank
+				result = Arrays.copyOf(result, buffer.position());
+			}
+		} catch(final IOException e) {
+			throw new RuntimeException("Error reading file: " + file.getAbsolutePath(), e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Read and decode a file in one pass into a buffer sized from the file's
+	 * length. Malformed input is replaced, not reported.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param charset
+	 *            The file's character set.
+	 * @return A heap buffer of the file's characters from position 0 to the
+	 *         limit.
+	 */
+	public static CharBuffer readToCharBuffer(File file, Charset charset) {
+		return decode(readToByteBuffer(file), charset);
+	}
+
+	public static char[] readToCharacterArray(File file) {
+		return readToCharacterArray(file, Charset.defaultCharset());
+	}
+
+	/**
+	 * @param file
+	 *            The file to read.
+	 * @param charset
+	 *            The file's character set.
+	 * @return The file's characters, the array is exactly the length of the
+	 *         text. It is only copied if the file has multi-byte characters.
+	 */
+	public static char[] readToCharacterArray(File file, Charset charset) {
+		final CharBuffer buffer = readToCharBuffer(file, charset);
+		final char[] result = buffer.array();
+		return buffer.limit() == result.length ? result : Arrays.copyOf(result, buffer.limit());
+	}
+
 	public static String read(File file, boolean trim) {
-		final StringBuilder result = new StringBuilder();
+		return read(file, trim, Charset.defaultCharset());
+	}
 
-		final List<String> list = readIntoStringList(file, trim);
-		final String ls = System.getProperty("line.separator");
-		for(final String line : list) {
-			result.append(line);
-			result.append(ls);
+	/**
+	 * Read a text file with its line ends, "\n", "\r" or "\r\n", replaced by
+	 * the platform's line separator. The last line is always followed by a
+	 * separator.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param trim
+	 *            True to trim white space from each line.
+	 * @param charset
+	 *            The file's character set.
+	 * @return The text of the file.
+	 */
+	public static String read(File file, boolean trim, Charset charset) {
+		final String result;
+
+		final CharBuffer buffer = readToCharBuffer(file, charset);
+		final char[] ca = buffer.array();
+		final int end = buffer.limit();
+		final String ls = System.lineSeparator();
+		if(!trim && ls.equals("\n")
+				&& (end == 0 || ca[end - 1] == '\n')
+				&& CharArrays.indexOf(ca, 0, end, '\r') < 0) {
+			// Nothing to change
+			result = new String(ca, 0, end);
+		} else {
+			// Each line is no longer than it was and a separator replaces a
+			// line end of one or two characters, except perhaps the last
+			final int separatorLength = ls.length();
+			final char[] out = new char[separatorLength == 1 ? end + 1 : end * separatorLength + separatorLength];
+			int length = 0;
+			int from = 0;
+			while(from < end) {
+				final int lineEnd = lineEnd(ca, from, end);
+				int start = from, to = lineEnd;
+				if(trim) {
+					while(start < to && ca[start] <= ' ') {
+						start++;
+					}
+					while(to > start && ca[to - 1] <= ' ') {
+						to--;
+					}
+				}
+				System.arraycopy(ca, start, out, length, to - start);
+				length += to - start;
+				ls.getChars(0, separatorLength, out, length);
+				length += separatorLength;
+				from = nextLine(ca, lineEnd, end);
+			}
+			result = new String(out, 0, length);
 		}
 
-		return result.toString();
+		return result;
 	}
 
 	public static List<String> readIntoStringList(File file, boolean trim) {
+		return readIntoStringList(file, trim, Charset.defaultCharset());
+	}
+
+	/**
+	 * @param file
+	 *            The file to read.
+	 * @param trim
+	 *            True to trim white space from each line.
+	 * @param charset
+	 *            The file's character set.
+	 * @return The lines of the file without their line ends, "\n", "\r" or
+	 *         "\r\n".
+	 */
+	public static List<String> readIntoStringList(File file, boolean trim, Charset charset) {
 		final List<String> result = new ArrayList<>();
 
-		try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
-			String line = null;
+		final CharsetDecoder decoder = newDecoder(charset);
+		try(final BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), decoder), DECODE_WINDOW_SIZE)) {
+			String line;
 			while((line = reader.readLine()) != null) {
 				result.add(trim ? line.trim() : line);
 			}
-
-		} catch(final Exception e) {
-			throw new RuntimeException(
-					"Error reading file: " +
-							file.getAbsolutePath(), e);
+		} catch(final IOException e) {
+			throw new RuntimeException("Error reading file: " + file.getAbsolutePath(), e);
 		}
+
 		return result;
 	}
 
@@ -82,38 +225,123 @@ public class FileU {
 		return new File(path);
 	}
 
+	/**
+	 * @param directory
+	 *            The directory to list.
+	 * @param type
+	 *            The type of children to return.
+	 * @param regex
+	 *            A regular expression the children's names must match.
+	 * @return The matching children of the directory.
+	 * @see #getChildren(Path, Type, String, int)
+	 */
 	public static File[] getChildren(File directory, Type type, String regex) {
 		assert directory.isDirectory() : "Not a directory: " + directory.getPath();
 
-		final List<File> result = new ArrayList<>();
+		try(final Stream<Path> children = getChildren(directory.toPath(), type, regex, 1)) {
+			return children.map(Path::toFile).toArray(File[]::new);
+		}
+	}
 
-		final File[] list = directory.listFiles();
-		for(final File child : list) {
-			if(child.getName().matches(regex)) {
-				switch(type) {
-				case BOTH:
-					result.add(child);
-					break;
+	/**
+	 * Stream the descendants of a directory whose names match a regular
+	 * expression. The directory is read lazily, an entry at a time, and the
+	 * name is matched before the file's attributes are read so entries that
+	 * don't match cost no system call unless they must be descended into.
+	 * Each entry's attributes are read at most once.
+	 *
+	 * Symbolic links are reported as what they link to but not followed into
+	 * sub-directories. Make the stream parallel() to walk sub-directories on
+	 * several threads. The stream holds open directories so close it, e.g.
+	 * with try-with-resources.
+	 *
+	 * @param directory
+	 *            The directory to walk.
+	 * @param type
+	 *            The type of descendants to return.
+	 * @param regex
+	 *            A regular expression the names, not the paths, must match.
+	 * @param maxDepth
+	 *            1 for the directory's children, 2 to include their children
+	 *            and so on; Integer.MAX_VALUE for all.
+	 * @return A stream of the matching descendants, each directory's before
+	 *         its own descendants.
+	 */
+	public static Stream<Path> getChildren(Path directory, Type type, String regex, int maxDepth) {
+		assert maxDepth > 0 : "Invalid depth: " + maxDepth;
 
-				case DIRECTORY:
-					if(child.isDirectory()) {
-						result.add(child);
-					}
-					break;
+		final Pattern pattern = Pattern.compile(regex);
+		try {
+			return walk(directory, type, pattern, maxDepth);
+		} catch(final IOException e) {
+			throw new RuntimeException("Error reading directory: " + directory, e);
+		}
+	}
 
-				case FILE:
-					if(child.isFile()) {
-						result.add(child);
-					}
-					break;
+	private static Stream<Path> walk(Path directory, Type type, Pattern pattern, int depth) throws IOException {
+		final DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
 
-				default:
-					throw new ShouldNotBeCalledException();
+		Stream<Path> result = StreamSupport.stream(entries.spliterator(), false)
+				.onClose(() -> {
+					try {
+						entries.close();
+					} catch(final IOException e) {
+						throw new RuntimeException("Error closing directory: " + directory, e);
+					}
+				});
+		if(depth == 1 && type == Type.BOTH) {
+			// No need for attributes at all
+			result = result.filter(path -> pattern.matcher(path.getFileName().toString()).matches());
+		} else {
+			result = result.flatMap(path -> {
+				final boolean matches = pattern.matcher(path.getFileName().toString()).matches();
+				Stream<Path> paths = Stream.empty();
+				if(matches || depth > 1) {
+					try {
+						// The path itself, not what it may link to
+						final BasicFileAttributes attributes = Files.readAttributes(
+								path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+						if(matches && isType(type, attributes, path)) {
+							paths = Stream.of(path);
+						}
+						if(depth > 1 && attributes.isDirectory()) {
+							paths = Stream.concat(paths, walk(path, type, pattern, depth - 1));
+						}
+					} catch(final NoSuchFileException e) {
+						// Deleted since the directory was listed
+						paths = Stream.empty();
+					} catch(final IOException e) {
+						throw new RuntimeException("Error reading: " + path, e);
+					}
 				}
-			}
+				return paths;
+			});
+		}
+
+		return result;
+	}
+
+	private static boolean isType(Type type, BasicFileAttributes attributes, Path path) {
+		final boolean result;
+
+		switch(type) {
+		case BOTH:
+			result = true;
+			break;
+
+		case DIRECTORY:
+			result = attributes.isSymbolicLink() ? Files.isDirectory(path) : attributes.isDirectory();
+			break;
+
+		case FILE:
+			result = attributes.isSymbolicLink() ? Files.isRegularFile(path) : attributes.isRegularFile();
+			break;
+
+		default:
+			throw new ShouldNotBeCalledException();
 		}
 
-		return result.toArray(new File[result.size()]);
+		return result;
 	}
 
 	public static InputStream openResourceStream(String path) {
@@ -122,92 +350,116 @@ public class FileU {
 	}
 
 	/**
-	 * Search classpath for entries matching a given pattern
+	 * Search classpath for entries matching a given pattern. The class path is
+	 * scanned once, by ResourceIndex.getDefault(), and later searches are
+	 * answered from memory.
 	 *
 	 * @param regexp
 	 *            a regular expression to match, e.g. ".*\\.properties" or
-	 *            "/com/inexas/util/.*\\properties"
+	 *            "/com/inexas/util/.*\\.properties"
 	 * @param allClasspath
 	 *            true search all classpath, false search only the project (the
-	 *            first entry in the class path)
+	 *            first entry in the class path). The whole class path is
+	 *            scanned either way but an entry that can't be read is
+	 *            logged and has no resources rather than failing the search
 	 * @return a collection of Strings that can be used with
 	 *         getResourceAsStream()
 	 */
-
 	public static Collection<String> getResources(String regexp, boolean allClasspath) {
-		final ArrayList<String> result = new ArrayList<>();
+		return ResourceIndex.getDefault().find(regexp, allClasspath);
+	}
 
-		Pattern pattern;
-		try {
-			pattern = Pattern.compile(regexp);
-		} catch(final Exception e) {
-			throw new RuntimeException("Error parsing pattern", e);
-		}
-		final String classPath = System.getProperty("java.class.path", ".");
-		final String[] classPathElements = classPath.split(":");
-		if(allClasspath) {
-			for(final String element : classPathElements) {
-				result.addAll(getResources(element, pattern));
-			}
-		} else {
-			result.addAll(getResources(classPathElements[0], pattern));
+	private static long checkSize(FileChannel channel, File file) throws IOException {
+		final long result = channel.size();
+		if(result > Integer.MAX_VALUE - 8) {
+			throw new RuntimeException("File too big to read: " + file.getAbsolutePath());
 		}
-
 		return result;
 	}
 
-	private static Collection<String> getResources(String element, Pattern pattern) {
-		final ArrayList<String> result = new ArrayList<>();
-
-		final File file = new File(element);
-		if(file.isDirectory()) {
-			result.addAll(getResourcesFromDirectory(element.length(), file, pattern));
+	/**
+	 * Decode bytes into a buffer big enough for the worst case, for UTF-8 and
+	 * single byte character sets that is the number of bytes, so the bytes
+	 * are decoded in one pass without copying the result.
+	 *
+	 * Decoders are much faster from an array than from a direct buffer so a
+	 * mapped file is decoded through a small heap window.
+	 */
+	private static CharBuffer decode(ByteBuffer bytes, Charset charset) {
+		final CharsetDecoder decoder = newDecoder(charset);
+		final long capacity = (long)Math.ceil(bytes.remaining() * (double)decoder.maxCharsPerByte());
+		CharBuffer result = CharBuffer.allocate((int)Math.min(capacity, Integer.MAX_VALUE - 8));
+		if(bytes.hasArray()) {
+			result = decode(decoder, bytes, result, true);
 		} else {
-			result.addAll(getResourcesFromJarFile(file, pattern));
+			final ByteBuffer window = ByteBuffer.allocate(DECODE_WINDOW_SIZE);
+			final int limit = bytes.limit();
+			boolean endOfInput = false;
+			while(!endOfInput) {
+				// Fill the window after any bytes left over from the last pass
+				bytes.limit(bytes.position() + Math.min(window.remaining(), bytes.remaining()));
+				window.put(bytes);
+				bytes.limit(limit);
+				endOfInput = !bytes.hasRemaining();
+				window.flip();
+				result = decode(decoder, window, result, endOfInput);
+				window.compact();
+			}
+		}
+		CoderResult coderResult = decoder.flush(result);
+		while(coderResult.isOverflow()) {
+			result = grow(result);
+			coderResult = decoder.flush(result);
 		}
+		result.flip();
 		return result;
 	}
 
-	private static Collection<String> getResourcesFromJarFile(File file, Pattern pattern) {
-		final ArrayList<String> result = new ArrayList<>();
+	/**
+	 * @return A decoder that replaces bad input as FileReader does.
+	 */
+	private static CharsetDecoder newDecoder(Charset charset) {
+		return charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
 
-		try(final ZipFile zipFile = new ZipFile(file)) {
-			@SuppressWarnings("unchecked")
-			final Enumeration<ZipEntry> entries = (Enumeration<ZipEntry>)zipFile.entries();
-			while(entries.hasMoreElements()) {
-				final ZipEntry entry = entries.nextElement();
-				final String fileName = entry.getName();
-				if(pattern.matcher(fileName).matches()) {
-					result.add(fileName);
-				}
-			}
-		} catch(final Exception e) {
-			throw new RuntimeException("Error reading JAR file", e);
+	private static CharBuffer decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer buffer, boolean endOfInput) {
+		CharBuffer result = buffer;
+		CoderResult coderResult = decoder.decode(bytes, result, endOfInput);
+		while(coderResult.isOverflow()) {
+			result = grow(result);
+			coderResult = decoder.decode(bytes, result, endOfInput);
 		}
+		return result;
+	}
 
+	private static CharBuffer grow(CharBuffer buffer) {
+		final CharBuffer result = CharBuffer.allocate(buffer.capacity() * 2 + 16);
+		buffer.flip();
+		result.put(buffer);
 		return result;
 	}
 
-	private static Collection<String> getResourcesFromDirectory(
-			int rootLength,
-			File directory,
-			Pattern pattern) {
-		final ArrayList<String> result = new ArrayList<>();
+	/**
+	 * @return The index of the '\n' or '\r' that ends the line starting at
+	 *         from, or end.
+	 */
+	private static int lineEnd(char[] ca, int from, int end) {
+		final int result = CharArrays.indexOfAny(ca, from, end, LINE_ENDS);
+		return result < 0 ? end : result;
+	}
 
-		final File[] fileList = directory.listFiles();
-		for(final File file : fileList) {
-			if(file.isDirectory()) {
-				result.addAll(getResourcesFromDirectory(rootLength, file, pattern));
-			} else {
-				try {
-					final String fileName = file.getCanonicalPath().substring(rootLength);
-					if(pattern.matcher(fileName).matches()) {
-						result.add(fileName);
-					}
-				} catch(final IOException e) {
-					throw new RuntimeException("Error reading directory", e);
-				}
-			}
+	/**
+	 * @return The start of the line after a line end, or end.
+	 */
+	private static int nextLine(char[] ca, int lineEnd, int end) {
+		final int result;
+		if(lineEnd == end) {
+			result = end;
+		} else {
+			final int next = lineEnd + 1;
+			result = ca[lineEnd] == '\r' && next < end && ca[next] == '\n' ? next + 1 : next;
 		}
 		return result;
 	}
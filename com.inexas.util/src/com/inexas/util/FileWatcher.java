@@ -0,0 +1,306 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Watches directories with a WatchService and tells listeners which files
+ * have changed so they re-read only those, e.g.
+ *
+ * <pre>
+ * final FileWatcher watcher = new FileWatcher(200);
+ * final Map&lt;Path, JsonUtilities&gt; config = watcher.load(
+ * 		Paths.get(FileU.ROOT, "config"), ".*\\.json", JsonUtilities::new);
+ * final Map&lt;Path, List&lt;String&gt;&gt; data = watcher.load(
+ * 		Paths.get(FileU.DATA), ".*\\.txt", file -&gt; FileU.readIntoStringList(file, true));
+ * </pre>
+ *
+ * Events are debounced: they are collected until the directories have been
+ * quiet for the debounce period, or for at most MAXIMUM_DEBOUNCES periods
+ * while they keep changing, and then each listener is called once with the
+ * set of paths that were created, modified or deleted. If the operating
+ * system drops events the watched directory itself is reported so the
+ * listener can rescan it.
+ *
+ * Listeners are called on the watcher's daemon thread, one at a time, and
+ * an exception from one is passed to the thread's uncaught exception
+ * handler without stopping the watcher.
+ */
+public class FileWatcher implements Closeable {
+	/** Events are delivered after at most this many debounce periods */
+	private final static int MAXIMUM_DEBOUNCES = 10;
+
+	/**
+	 * Loads a file for load().
+	 */
+	public static interface Loader<T> {
+		T load(File file) throws Exception;
+	}
+
+	/**
+	 * A directory registered with the watch service and the listener it
+	 * reports to.
+	 */
+	private static class Watched {
+		final Path directory;
+		final boolean recursive;
+		final Consumer<Set<Path>> listener;
+
+		Watched(Path directory, boolean recursive, Consumer<Set<Path>> listener) {
+			this.directory = directory;
+			this.recursive = recursive;
+			this.listener = listener;
+		}
+	}
+
+	private final long debounce;
+	private final WatchService service;
+	/** Locked while a key is registered and mapped so it's never seen unmapped */
+	private final Map<WatchKey, Watched> keys = new ConcurrentHashMap<>();
+	private final Thread thread;
+	private volatile boolean closed;
+
+	/**
+	 * @param debounce
+	 *            The milliseconds the watched directories must be quiet
+	 *            before changes are reported.
+	 */
+	public FileWatcher(long debounce) {
+		this.debounce = debounce;
+		try {
+			service = FileSystems.getDefault().newWatchService();
+		} catch(final IOException e) {
+			throw new RuntimeException("Error creating watch service", e);
+		}
+		thread = new Thread(this::run, "FileWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Watch a directory. The listener is given the absolute paths of the
+	 * files and directories that have changed, deleted ones included.
+	 *
+	 * @param directory
+	 *            The directory to watch.
+	 * @param recursive
+	 *            True to watch its sub-directories too, including those
+	 *            created later.
+	 * @param listener
+	 *            Called with the paths that have changed.
+	 */
+	public void watch(Path directory, boolean recursive, Consumer<Set<Path>> listener) {
+		final Path absolute = directory.toAbsolutePath();
+		if(recursive) {
+			try(final Stream<Path> directories = FileU.getChildren(
+					absolute,
+					FileU.Type.DIRECTORY,
+					".*",
+					Integer.MAX_VALUE)) {
+				register(absolute, recursive, listener);
+				directories.forEach(child -> register(child, recursive, listener));
+			}
+		} else {
+			register(absolute, recursive, listener);
+		}
+	}
+
+	/**
+	 * Load the files in a directory tree whose names match a regular
+	 * expression and keep them loaded: when a file changes only it is loaded
+	 * again, when it is deleted it is removed. A file deleted while it is
+	 * being loaded is left out. If a file fails to load again the error goes
+	 * to the uncaught exception handler and the map keeps what was loaded
+	 * before.
+	 *
+	 * @param directory
+	 *            The directory to load and watch, recursively.
+	 * @param regex
+	 *            A regular expression the file names must match.
+	 * @param loader
+	 *            Loads a file, e.g. JsonUtilities::new.
+	 * @param <T>
+	 *            What a file is loaded as.
+	 * @return A live, thread safe map of the files' absolute paths to what
+	 *         they were loaded as.
+	 */
+	public <T> Map<Path, T> load(Path directory, String regex, Loader<T> loader) {
+		final Map<Path, T> result = new ConcurrentHashMap<>();
+
+		final Path absolute = directory.toAbsolutePath();
+		final Pattern pattern = Pattern.compile(regex);
+		watch(absolute, true, paths -> {
+			for(final Path path : paths) {
+				try {
+					if(Files.isDirectory(path)) {
+						// Created, moved in or events were lost: load what's there
+						reload(path, regex, loader, result, false);
+					} else if(pattern.matcher(path.getFileName().toString()).matches()) {
+						if(Files.isRegularFile(path)) {
+							result.put(path, load(loader, path));
+						} else {
+							result.remove(path);
+						}
+					} else if(!Files.exists(path)) {
+						// Perhaps a deleted directory
+						result.keySet().removeIf(key -> key.startsWith(path));
+					}
+				} catch(final RuntimeException e) {
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		});
+		// The watch is registered first so no change is missed, which means the
+		// listener may already have loaded or removed some of the files
+		reload(absolute, regex, loader, result, true);
+
+		return result;
+	}
+
+	/**
+	 * Stop watching and stop the watcher's thread.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			service.close();
+		} catch(final IOException e) {
+			throw new RuntimeException("Error closing watch service", e);
+		}
+	}
+
+	/**
+	 * Load the matching files in a directory tree into a map. Files deleted
+	 * after they are listed are skipped.
+	 *
+	 * @param initial
+	 *            True for load()'s first pass, which runs alongside the
+	 *            listener and so mustn't replace what it has loaded or put
+	 *            back what it has removed.
+	 */
+	private static <T> void reload(
+			Path directory,
+			String regex,
+			Loader<T> loader,
+			Map<Path, T> map,
+			boolean initial) {
+		try(final Stream<Path> files = FileU.getChildren(directory, FileU.Type.FILE, regex, Integer.MAX_VALUE)) {
+			files.forEach(file -> {
+				T value;
+				try {
+					value = load(loader, file);
+				} catch(final RuntimeException e) {
+					if(Files.exists(file)) {
+						throw e;
+					}
+					// Deleted since it was listed
+					value = null;
+				}
+				if(value != null) {
+					if(!initial) {
+						map.put(file, value);
+					} else if(map.putIfAbsent(file, value) == null && !Files.exists(file)) {
+						// Deleted after it was loaded, perhaps after the listener removed it
+						map.remove(file, value);
+					}
+				}
+			});
+		}
+	}
+
+	private static <T> T load(Loader<T> loader, Path path) {
+		try {
+			return loader.load(path.toFile());
+		} catch(final RuntimeException e) {
+			throw e;
+		} catch(final Exception e) {
+			throw new RuntimeException("Error loading file: " + path, e);
+		}
+	}
+
+	private void register(Path directory, boolean recursive, Consumer<Set<Path>> listener) {
+		try {
+			synchronized(keys) {
+				final WatchKey key = directory.register(
+						service,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY,
+						StandardWatchEventKinds.ENTRY_DELETE);
+				keys.put(key, new Watched(directory, recursive, listener));
+			}
+		} catch(final IOException e) {
+			throw new RuntimeException("Error watching directory: " + directory, e);
+		}
+	}
+
+	private void run() {
+		// Paths changed by listener, in the order they were first seen
+		final Map<Consumer<Set<Path>>, Set<Path>> pending = new LinkedHashMap<>();
+		try {
+			while(!closed) {
+				WatchKey key = service.take();
+				final long deadline = System.currentTimeMillis() + debounce * MAXIMUM_DEBOUNCES;
+				while(key != null) {
+					collect(key, pending);
+					final long wait = Math.min(debounce, deadline - System.currentTimeMillis());
+					key = wait > 0 ? service.poll(wait, TimeUnit.MILLISECONDS) : null;
+				}
+				deliver(pending);
+			}
+		} catch(final InterruptedException | ClosedWatchServiceException e) {
+			// Closed
+		}
+	}
+
+	private void collect(WatchKey key, Map<Consumer<Set<Path>>, Set<Path>> pending) {
+		final Watched watched;
+		synchronized(keys) {
+			// The key may have been taken before register() has mapped it
+			watched = keys.get(key);
+		}
+		if(watched != null) {
+			final Set<Path> paths = pending.computeIfAbsent(watched.listener, listener -> new LinkedHashSet<>());
+			for(final WatchEvent<?> event : key.pollEvents()) {
+				if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					paths.add(watched.directory);
+				} else {
+					final Path path = watched.directory.resolve((Path)event.context());
+					final boolean directory = watched.recursive && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+					if(!directory) {
+						paths.add(path);
+					} else if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+						paths.add(path);
+						try {
+							watch(path, true, watched.listener);
+						} catch(final RuntimeException e) {
+							// Deleted again already
+						}
+					}
+					// else a watched sub-directory's contents changed, it reports them
+				}
+			}
+		}
+		if(!key.reset()) {
+			// The directory has gone
+			keys.remove(key);
+		}
+	}
+
+	private void deliver(Map<Consumer<Set<Path>>, Set<Path>> pending) {
+		for(final Map.Entry<Consumer<Set<Path>>, Set<Path>> entry : pending.entrySet()) {
+			try {
+				entry.getKey().accept(Collections.unmodifiableSet(entry.getValue()));
+			} catch(final RuntimeException e) {
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+		pending.clear();
+	}
+
+}
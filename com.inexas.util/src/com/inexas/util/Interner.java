@@ -0,0 +1,158 @@
+package com.inexas.util;
+
+/**
+ * A table of canonical Strings that can be looked up using any CharSequence,
+ * typically a {@link Span}, without creating a String. A tokenizer can load
+ * its keywords and then get() each token: a hit returns the canonical String,
+ * which can be compared with ==, and a miss returns null. Neither allocates.
+ *
+ * Uses open addressing with linear probing. Not thread safe.
+ */
+public class Interner {
+	private String[] strings;
+	private int[] hashes;
+	private int mask;
+	private int size;
+
+	public Interner() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize
+	 *            The number of Strings expected, the table will grow if
+	 *            necessary.
+	 */
+	public Interner(int expectedSize) {
+		int capacity = 16;
+		while(capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		strings = new String[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Create an Interner and add a set of Strings, e.g. keywords.
+	 *
+	 * @param strings
+	 *            The Strings to add.
+	 */
+	public Interner(String... strings) {
+		this(strings.length);
+		for(final String string : strings) {
+			intern(string);
+		}
+	}
+
+	/**
+	 * @param sequence
+	 *            The characters to look up.
+	 * @return The canonical String with the same characters or null if there
+	 *         isn't one.
+	 */
+	public String get(CharSequence sequence) {
+		final int hash = hash(sequence);
+
+		String result = null;
+		int index = hash & mask;
+		String candidate;
+		while((candidate = strings[index]) != null) {
+			if(hashes[index] == hash && equal(candidate, sequence)) {
+				result = candidate;
+				break;
+			}
+			index = (index + 1) & mask;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param sequence
+	 *            The characters to intern.
+	 * @return The canonical String with the same characters, one is created
+	 *         if necessary.
+	 */
+	public String intern(CharSequence sequence) {
+		String result = get(sequence);
+		if(result == null) {
+			result = sequence.toString();
+			if(2 * (size + 1) > strings.length) {
+				grow();
+			}
+			add(result, result.hashCode());
+		}
+		return result;
+	}
+
+	/**
+	 * @return The number of Strings in the table.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void add(String string, int hash) {
+		int index = hash & mask;
+		while(strings[index] != null) {
+			index = (index + 1) & mask;
+		}
+		strings[index] = string;
+		hashes[index] = hash;
+		size++;
+	}
+
+	private void grow() {
+		final String[] oldStrings = strings;
+		final int[] oldHashes = hashes;
+		final int capacity = oldStrings.length * 2;
+		strings = new String[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+		size = 0;
+		for(int i = 0; i < oldStrings.length; i++) {
+			if(oldStrings[i] != null) {
+				add(oldStrings[i], oldHashes[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return The same hash String would calculate for the characters.
+	 */
+	private static int hash(CharSequence sequence) {
+		int result;
+		if(sequence instanceof String || sequence instanceof Span) {
+			result = sequence.hashCode();
+		} else {
+			result = 0;
+			final int length = sequence.length();
+			for(int i = 0; i < length; i++) {
+				result = 31 * result + sequence.charAt(i);
+			}
+		}
+		return result;
+	}
+
+	private static boolean equal(String string, CharSequence sequence) {
+		boolean result;
+
+		final int length = string.length();
+		if(sequence.length() == length) {
+			result = true;
+			for(int i = 0; i < length; i++) {
+				if(string.charAt(i) != sequence.charAt(i)) {
+					result = false;
+					break;
+				}
+			}
+		} else {
+			result = false;
+		}
+
+		return result;
+	}
+
+}
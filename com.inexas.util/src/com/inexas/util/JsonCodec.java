@@ -0,0 +1,1138 @@
+package com.inexas.util;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.math.*;
+import java.net.URI;
+import java.text.*;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import com.inexas.exception.InvalidCallException;
+
+/**
+ * Binds JSON to the fields of a class and back again. A codec is built once
+ * per class, the first time it's asked for, and cached. Each field gets a
+ * MethodHandle getter and setter and int, long, double and boolean fields
+ * are read and written through them without boxing. Reading goes straight
+ * from a JsonReader to the object without an intermediate tree and names
+ * are matched in place without creating Strings, e.g.
+ *
+ * <pre>
+ * final Point point = JsonCodec.of(Point.class).fromJson("{\"x\":1,\"y\":2}");
+ * </pre>
+ *
+ * The JSON is the same as Gson's defaults: all non-static, non-transient
+ * fields of the class and its superclasses, named as they are, null fields
+ * not written. A field may be a primitive or its wrapper, a String, an enum,
+ * a BigDecimal or BigInteger, a Date, a UUID or URI, an array, a
+ * Collection, a Map with String keys, an Object or another class that can be
+ * bound. A Date is written as its milliseconds since 1970, not as Gson's
+ * locale dependent text which drops the milliseconds, but Gson's text, or
+ * ISO 8601, is read. A Collection or Map field of an interface type is read
+ * as an ArrayList, LinkedHashSet, TreeSet, ArrayDeque, LinkedHashMap, TreeMap
+ * or ConcurrentHashMap, whichever first fits, otherwise as the field's class.
+ * Classes need a no-argument constructor, it need not be public. A class
+ * that implements JsonWriter.ToJson writes itself.
+ *
+ * As with Gson an Object, a raw Collection or Map's elements, and a field
+ * whose type is a type variable are written as the class they are at run
+ * time and read as a String, Long, Double, Boolean, ArrayList or
+ * LinkedHashMap. Type arguments are only used for a Collection or Map.
+ *
+ * Other JDK classes, those in java and javax packages, are not bound field
+ * by field: their fields are private details that change between releases
+ * and aren't accessible on Java 9 and later.
+ *
+ * Properties in the JSON that aren't fields are skipped and fields that
+ * aren't in the JSON are left as the constructor set them.
+ *
+ * @param <T>
+ *            The class bound.
+ */
+public class JsonCodec<T> {
+	private final static ClassValue<JsonCodec<?>> codecs = new ClassValue<JsonCodec<?>>() {
+		@Override
+		protected JsonCodec<?> computeValue(Class<?> type) {
+			return new JsonCodec<>(type);
+		}
+	};
+	/** Values for readObject() and writeObject() */
+	private final static ClassValue<Value> values = new ClassValue<Value>() {
+		@Override
+		protected Value computeValue(Class<?> type) {
+			return new Nullable(toObjectValue(type, type));
+		}
+	};
+	/** What a Collection or Map of an interface or abstract type is read as */
+	private final static Class<?>[] COLLECTIONS = {
+			ArrayList.class, LinkedHashSet.class, TreeSet.class, ArrayDeque.class };
+	private final static Class<?>[] MAPS = { LinkedHashMap.class, TreeMap.class, ConcurrentHashMap.class };
+	/** What a Collection or Map without a usable constructor must still be */
+	private final static Class<?>[] KINDS = {
+			List.class, Set.class, SortedSet.class, Queue.class, Deque.class, SortedMap.class, ConcurrentMap.class };
+	private final Class<T> type;
+	private final MethodHandle constructor;
+	private final Property[] properties;
+	/** The property names, in the same order as properties */
+	private final String[] names;
+
+	/**
+	 * Reads and writes a value of a given type. Objects are boxed.
+	 */
+	private static abstract class Value {
+		abstract Object read(JsonReader reader);
+
+		abstract void write(JsonWriter writer, Object value);
+	}
+
+	/**
+	 * A field of the class bound.
+	 */
+	private static abstract class Property {
+		final String name;
+		final MethodHandle getter, setter;
+
+		Property(Field field, Class<?> type) {
+			name = field.getName();
+			try {
+				final MethodHandles.Lookup lookup = MethodHandles.lookup();
+				field.setAccessible(true);
+				getter = lookup.unreflectGetter(field).asType(MethodType.methodType(type, Object.class));
+				setter = lookup.unreflectSetter(field).asType(
+						MethodType.methodType(void.class, Object.class, type));
+			} catch(final IllegalAccessException e) {
+				throw new RuntimeException("Error binding field: " + field, e);
+			}
+		}
+
+		abstract void read(JsonReader reader, Object object) throws Throwable;
+
+		abstract void write(JsonWriter writer, Object object) throws Throwable;
+
+		/**
+		 * The JSON value is null, primitives are left as they are.
+		 */
+		void setNull(@SuppressWarnings("unused") Object object) throws Throwable {
+			// Do nothing
+		}
+	}
+
+	private static class IntProperty extends Property {
+		IntProperty(Field field) {
+			super(field, int.class);
+		}
+
+		@Override
+		void read(JsonReader reader, Object object) throws Throwable {
+			setter.invokeExact(object, reader.nextInt());
+		}
+
+		@Override
+		void write(JsonWriter writer, Object object) throws Throwable {
+			writer.property(name, (int)getter.invokeExact(object));
+		}
+	}
+
+	private static class LongProperty extends Property {
+		LongProperty(Field field) {
+			super(field, long.class);
+		}
+
+		@Override
+		void read(JsonReader reader, Object object) throws Throwable {
+			setter.invokeExact(object, reader.nextLong());
+		}
+
+		@Override
+		void write(JsonWriter writer, Object object) throws Throwable {
+			writer.property(name, (long)getter.invokeExact(object));
+		}
+	}
+
+	private static class DoubleProperty extends Property {
+		DoubleProperty(Field field) {
+			super(field, double.class);
+		}
+
+		@Override
+		void read(JsonReader reader, Object object) throws Throwable {
+			setter.invokeExact(object, reader.nextDouble());
+		}
+
+		@Override
+		void write(JsonWriter writer, Object object) throws Throwable {
+			writer.property(name, (double)getter.invokeExact(object));
+		}
+	}
+
+	private static class BooleanProperty extends Property {
+		BooleanProperty(Field field) {
+			super(field, boolean.class);
+		}
+
+		@Override
+		void read(JsonReader reader, Object object) throws Throwable {
+			setter.invokeExact(object, reader.nextBoolean());
+		}
+
+		@Override
+		void write(JsonWriter writer, Object object) throws Throwable {
+			writer.property(name, (boolean)getter.invokeExact(object));
+		}
+	}
+
+	/**
+	 * Any other field, boxed if it's primitive.
+	 */
+	private static class ObjectProperty extends Property {
+		private final Value value;
+		private final boolean primitive;
+
+		ObjectProperty(Field field, Value value) {
+			super(field, Object.class);
+			this.value = value;
+			primitive = field.getType().isPrimitive();
+		}
+
+		@Override
+		void read(JsonReader reader, Object object) throws Throwable {
+			setter.invokeExact(object, value.read(reader));
+		}
+
+		@Override
+		void setNull(Object object) throws Throwable {
+			if(!primitive) {
+				setter.invokeExact(object, (Object)null);
+			}
+		}
+
+		@Override
+		void write(JsonWriter writer, Object object) throws Throwable {
+			final Object toWrite = getter.invokeExact(object);
+			if(toWrite != null) {
+				writer.name(name);
+				value.write(writer, toWrite);
+			}
+		}
+	}
+
+	private final static Value STRING = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			return reader.nextString();
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value((String)value);
+		}
+	};
+
+	private final static Value BOOLEAN = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			return Boolean.valueOf(reader.nextBoolean());
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value(((Boolean)value).booleanValue());
+		}
+	};
+
+	private final static Value CHARACTER = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			final String string = reader.nextString();
+			if(string.length() != 1) {
+				throw new JsonReader.ParseException("Expected one character: " + string);
+			}
+			return Character.valueOf(string.charAt(0));
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value(value.toString());
+		}
+	};
+
+	private final static Value INTEGER = new WholeNumber() {
+		@Override
+		Object read(JsonReader reader) {
+			return Integer.valueOf(reader.nextInt());
+		}
+	};
+
+	private final static Value LONG = new WholeNumber() {
+		@Override
+		Object read(JsonReader reader) {
+			return Long.valueOf(reader.nextLong());
+		}
+	};
+
+	private final static Value SHORT = new WholeNumber() {
+		@Override
+		Object read(JsonReader reader) {
+			final int result = reader.nextInt();
+			if(result != (short)result) {
+				throw new JsonReader.ParseException("Expected a short: " + result);
+			}
+			return Short.valueOf((short)result);
+		}
+	};
+
+	private final static Value BYTE = new WholeNumber() {
+		@Override
+		Object read(JsonReader reader) {
+			final int result = reader.nextInt();
+			if(result != (byte)result) {
+				throw new JsonReader.ParseException("Expected a byte: " + result);
+			}
+			return Byte.valueOf((byte)result);
+		}
+	};
+
+	private final static Value DOUBLE = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			return Double.valueOf(reader.nextDouble());
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value(((Number)value).doubleValue());
+		}
+	};
+
+	private final static Value FLOAT = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			return Float.valueOf((float)reader.nextDouble());
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			// Via the String so 0.1f is written as 0.1
+			writer.value(Double.parseDouble(value.toString()));
+		}
+	};
+
+	private final static Value BIG_DECIMAL = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			final String number = reader.nextString();
+			try {
+				return new BigDecimal(number);
+			} catch(final NumberFormatException e) {
+				throw new JsonReader.ParseException("Expected a number: " + number);
+			}
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value((Number)value);
+		}
+	};
+
+	private final static Value BIG_INTEGER = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			final String number = reader.nextString();
+			try {
+				return new BigInteger(number);
+			} catch(final NumberFormatException e) {
+				throw new JsonReader.ParseException("Expected a whole number: " + number);
+			}
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value((Number)value);
+		}
+	};
+
+	private final static Value DATE = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			final Object result;
+			if(reader.peek() == JsonReader.Token.STRING) {
+				// Written by Gson
+				result = parseDate(reader.nextString());
+			} else {
+				result = new Date(reader.nextLong());
+			}
+			return result;
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value(((Date)value).getTime());
+		}
+	};
+
+	private final static Value UUID_VALUE = new ParsedValue("UUID", UUID::fromString);
+
+	private final static Value URI_VALUE = new ParsedValue("URI", URI::create);
+
+	/**
+	 * An Object, written as the class it is and read as what the JSON is. It
+	 * may be null.
+	 */
+	private final static Value DYNAMIC = new Value() {
+		@Override
+		Object read(JsonReader reader) {
+			final Object result;
+
+			switch(reader.peek()) {
+			case BEGIN_ARRAY:
+				final List<Object> list = new ArrayList<>();
+				reader.beginArray();
+				while(reader.hasNext()) {
+					list.add(read(reader));
+				}
+				reader.endArray();
+				result = list;
+				break;
+
+			case BEGIN_OBJECT:
+				final Map<String, Object> map = new LinkedHashMap<>();
+				reader.beginObject();
+				while(reader.hasNext()) {
+					final String name = reader.nextName();
+					map.put(name, read(reader));
+				}
+				reader.endObject();
+				result = map;
+				break;
+
+			case NUMBER:
+				final String number = reader.nextString();
+				if(number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+					result = toLong(number);
+				} else {
+					result = Double.valueOf(number);
+				}
+				break;
+
+			case BOOLEAN:
+				result = Boolean.valueOf(reader.nextBoolean());
+				break;
+
+			case NULL:
+				reader.nextNull();
+				result = null;
+				break;
+
+			default:
+				result = reader.nextString();
+			}
+
+			return result;
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			if(value != null && value.getClass() == Object.class) {
+				writer.beginObject();
+				writer.endObject();
+			} else {
+				writeObject(writer, value);
+			}
+		}
+
+		private Object toLong(String number) {
+			Object result;
+			try {
+				result = Long.valueOf(number);
+			} catch(final NumberFormatException e) {
+				// Too big
+				result = Double.valueOf(number);
+			}
+			return result;
+		}
+	};
+
+	private static abstract class WholeNumber extends Value {
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value(((Number)value).longValue());
+		}
+	}
+
+	private static class EnumValue extends Value {
+		private final Class<?> type;
+
+		EnumValue(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		Object read(JsonReader reader) {
+			Object result = null;
+
+			final String name = reader.nextString();
+			for(final Object constant : type.getEnumConstants()) {
+				if(((Enum<?>)constant).name().equals(name)) {
+					result = constant;
+					break;
+				}
+			}
+			if(result == null) {
+				throw new JsonReader.ParseException("No " + type.getName() + "." + name);
+			}
+
+			return result;
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value(((Enum<?>)value).name());
+		}
+	}
+
+	/**
+	 * A value written as its toString() and read by parsing that.
+	 */
+	private static class ParsedValue extends Value {
+		private final String what;
+		private final Function<String, Object> parse;
+
+		ParsedValue(String what, Function<String, Object> parse) {
+			this.what = what;
+			this.parse = parse;
+		}
+
+		@Override
+		Object read(JsonReader reader) {
+			final String string = reader.nextString();
+			try {
+				return parse.apply(string);
+			} catch(final IllegalArgumentException e) {
+				throw new JsonReader.ParseException("Expected a " + what + ": " + string);
+			}
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.value(value.toString());
+		}
+	}
+
+	/**
+	 * A value bound by a codec, found when it's first used so a class can
+	 * contain itself.
+	 */
+	private static class CodecValue extends Value {
+		private final Class<?> type;
+		private JsonCodec<Object> codec;
+
+		CodecValue(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		Object read(JsonReader reader) {
+			return codec().read(reader);
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			codec().write(writer, value);
+		}
+
+		@SuppressWarnings("unchecked")
+		private JsonCodec<Object> codec() {
+			if(codec == null) {
+				codec = (JsonCodec<Object>)of(type);
+			}
+			return codec;
+		}
+	}
+
+	/**
+	 * A Value that may be null.
+	 */
+	private static class Nullable extends Value {
+		private final Value value;
+
+		Nullable(Value value) {
+			this.value = value;
+		}
+
+		@Override
+		Object read(JsonReader reader) {
+			final Object result;
+			if(reader.peek() == JsonReader.Token.NULL) {
+				reader.nextNull();
+				result = null;
+			} else {
+				result = value.read(reader);
+			}
+			return result;
+		}
+
+		@Override
+		void write(JsonWriter writer, Object toWrite) {
+			if(toWrite == null) {
+				writer.nullValue();
+			} else {
+				value.write(writer, toWrite);
+			}
+		}
+	}
+
+	private static class ArrayValue extends Value {
+		private final Class<?> componentType;
+		private final Value element;
+
+		ArrayValue(Class<?> componentType, Value element) {
+			this.componentType = componentType;
+			this.element = element;
+		}
+
+		@Override
+		Object read(JsonReader reader) {
+			final List<Object> list = new ArrayList<>();
+			reader.beginArray();
+			while(reader.hasNext()) {
+				list.add(element.read(reader));
+			}
+			reader.endArray();
+			final int size = list.size();
+			final Object result = Array.newInstance(componentType, size);
+			for(int i = 0; i < size; i++) {
+				Array.set(result, i, list.get(i));
+			}
+			return result;
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.beginArray();
+			final int length = Array.getLength(value);
+			for(int i = 0; i < length; i++) {
+				element.write(writer, Array.get(value, i));
+			}
+			writer.endArray();
+		}
+	}
+
+	private static class CollectionValue extends Value {
+		private final MethodHandle constructor;
+		private final Value element;
+
+		CollectionValue(MethodHandle constructor, Value element) {
+			this.constructor = constructor;
+			this.element = element;
+		}
+
+		@Override
+		Object read(JsonReader reader) {
+			@SuppressWarnings("unchecked")
+			final Collection<Object> result = (Collection<Object>)newInstance(constructor);
+			reader.beginArray();
+			while(reader.hasNext()) {
+				result.add(element.read(reader));
+			}
+			reader.endArray();
+			return result;
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.beginArray();
+			for(final Object toWrite : (Collection<?>)value) {
+				element.write(writer, toWrite);
+			}
+			writer.endArray();
+		}
+	}
+
+	private static class MapValue extends Value {
+		private final MethodHandle constructor;
+		private final Value element;
+
+		MapValue(MethodHandle constructor, Value element) {
+			this.constructor = constructor;
+			this.element = element;
+		}
+
+		@Override
+		Object read(JsonReader reader) {
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> result = (Map<String, Object>)newInstance(constructor);
+			reader.beginObject();
+			while(reader.hasNext()) {
+				final String name = reader.nextName();
+				result.put(name, element.read(reader));
+			}
+			reader.endObject();
+			return result;
+		}
+
+		@Override
+		void write(JsonWriter writer, Object value) {
+			writer.beginObject();
+			for(final Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+				writer.name(String.valueOf(entry.getKey()));
+				element.write(writer, entry.getValue());
+			}
+			writer.endObject();
+		}
+	}
+
+	/**
+	 * @param type
+	 *            The class to bind.
+	 * @param <T>
+	 *            The class to bind.
+	 * @return The codec for the class, it's built the first time it's asked
+	 *         for.
+	 * @throws InvalidCallException
+	 *             If the class can't be bound, e.g. it has no no-argument
+	 *             constructor or a field of a type that can't be bound.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> JsonCodec<T> of(Class<T> type) {
+		return (JsonCodec<T>)codecs.get(type);
+	}
+
+	private JsonCodec(Class<T> type) {
+		this.type = type;
+
+		if(type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isArray()
+				|| type.isPrimitive() || type.isEnum() || isJdk(type)) {
+			throw new InvalidCallException("Can't bind " + type.getName());
+		}
+		try {
+			final Constructor<T> noArgs = type.getDeclaredConstructor();
+			noArgs.setAccessible(true);
+			constructor = MethodHandles.lookup().unreflectConstructor(noArgs)
+					.asType(MethodType.methodType(Object.class));
+		} catch(final NoSuchMethodException e) {
+			throw new InvalidCallException("No no-argument constructor: " + type.getName());
+		} catch(final IllegalAccessException e) {
+			throw new RuntimeException("Error binding constructor: " + type.getName(), e);
+		}
+
+		// Superclass fields first...
+		final List<Class<?>> classes = new ArrayList<>();
+		for(Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+			if(isJdk(c)) {
+				throw new InvalidCallException("Can't bind " + type.getName() + ", it extends " + c.getName());
+			}
+			classes.add(0, c);
+		}
+		final List<Property> list = new ArrayList<>();
+		for(final Class<?> c : classes) {
+			for(final Field field : c.getDeclaredFields()) {
+				final int modifiers = field.getModifiers();
+				if(!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+					list.add(toProperty(field));
+				}
+			}
+		}
+		properties = list.toArray(new Property[list.size()]);
+		names = new String[properties.length];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = properties[i].name;
+		}
+	}
+
+	/**
+	 * @return The class bound.
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * Read the next value as an instance of the class.
+	 *
+	 * @param reader
+	 *            The reader positioned at a JSON object or null.
+	 * @return The object read or null if the value was null.
+	 * @throws JsonReader.ParseException
+	 *             If the JSON is not correct or a value is the wrong type.
+	 */
+	public T read(JsonReader reader) {
+		final T result;
+
+		if(reader.peek() == JsonReader.Token.NULL) {
+			reader.nextNull();
+			result = null;
+		} else {
+			try {
+				@SuppressWarnings("unchecked")
+				final T object = (T)(Object)constructor.invokeExact();
+				result = object;
+				reader.beginObject();
+				int next = 0;
+				while(reader.hasNext()) {
+					final int index = reader.nextName(names, next);
+					if(index < 0) {
+						reader.skipValue();
+					} else {
+						final Property property = properties[index];
+						if(reader.peek() == JsonReader.Token.NULL) {
+							reader.nextNull();
+							property.setNull(object);
+						} else {
+							property.read(reader, object);
+						}
+						next = index + 1;
+					}
+				}
+				reader.endObject();
+			} catch(final RuntimeException e) {
+				throw e;
+			} catch(final Throwable e) {
+				throw new RuntimeException("Error reading " + type.getName(), e);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param json
+	 *            A JSON object.
+	 * @return The object read.
+	 * @throws JsonReader.ParseException
+	 *             If the JSON is not correct, a value is the wrong type or
+	 *             there's more than one value.
+	 */
+	public T fromJson(CharSequence json) {
+		final JsonReader reader = new JsonReader(Parser.wrap(json));
+		final T result = read(reader);
+		if(reader.peek() != JsonReader.Token.END_DOCUMENT) {
+			throw new JsonReader.ParseException("Unexpected text after " + type.getName());
+		}
+		return result;
+	}
+
+	/**
+	 * Write an instance of the class as a JSON object.
+	 *
+	 * @param writer
+	 *            Where to write.
+	 * @param object
+	 *            The object to write, if null then null is written.
+	 */
+	public void write(JsonWriter writer, T object) {
+		if(object == null) {
+			writer.nullValue();
+		} else if(object instanceof JsonWriter.ToJson) {
+			((JsonWriter.ToJson)object).toJson(writer);
+		} else {
+			writer.beginObject();
+			try {
+				for(final Property property : properties) {
+					property.write(writer, object);
+				}
+			} catch(final RuntimeException e) {
+				throw e;
+			} catch(final Throwable e) {
+				throw new RuntimeException("Error writing " + type.getName(), e);
+			}
+			writer.endObject();
+		}
+	}
+
+	/**
+	 * @param object
+	 *            The object to write.
+	 * @return The object as compact JSON.
+	 */
+	public String toJson(T object) {
+		final Text t = TextPool.SHARED.acquire(false);
+		write(new JsonWriter(t), object);
+		return TextPool.SHARED.toString(t);
+	}
+
+	/**
+	 * Read a value of any class a field could be, e.g. a class bound by a
+	 * codec, a String, a Date or an array.
+	 *
+	 * @param reader
+	 *            The reader positioned at the value.
+	 * @param type
+	 *            The value's class.
+	 * @return The value read, may be null.
+	 * @throws InvalidCallException
+	 *             If the class can't be bound.
+	 */
+	static Object readObject(JsonReader reader, Class<?> type) {
+		return values.get(type).read(reader);
+	}
+
+	/**
+	 * Write a value of any class readObject() can read.
+	 *
+	 * @param writer
+	 *            Where to write.
+	 * @param object
+	 *            The object to write, if null then null is written.
+	 * @throws InvalidCallException
+	 *             If the object's class can't be bound.
+	 */
+	static void writeObject(JsonWriter writer, Object object) {
+		if(object == null) {
+			writer.nullValue();
+		} else {
+			values.get(object.getClass()).write(writer, object);
+		}
+	}
+
+	private static Property toProperty(Field field) {
+		final Property result;
+
+		final Class<?> fieldType = field.getType();
+		if(fieldType == int.class) {
+			result = new IntProperty(field);
+		} else if(fieldType == long.class) {
+			result = new LongProperty(field);
+		} else if(fieldType == double.class) {
+			result = new DoubleProperty(field);
+		} else if(fieldType == boolean.class) {
+			result = new BooleanProperty(field);
+		} else {
+			result = new ObjectProperty(field, toValue(field.getGenericType(), field));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param source
+	 *            The field, or class, the type is bound for, for messages.
+	 * @return A Value for a type, it reads and writes null for anything but
+	 *         primitives.
+	 */
+	private static Value toValue(Type type, Object source) {
+		final Value result;
+
+		if(type instanceof Class) {
+			final Class<?> c = (Class<?>)type;
+			if(c == int.class) {
+				result = INTEGER;
+			} else if(c == long.class) {
+				result = LONG;
+			} else if(c == double.class) {
+				result = DOUBLE;
+			} else if(c == boolean.class) {
+				result = BOOLEAN;
+			} else if(c == float.class) {
+				result = FLOAT;
+			} else if(c == short.class) {
+				result = SHORT;
+			} else if(c == byte.class) {
+				result = BYTE;
+			} else if(c == char.class) {
+				result = CHARACTER;
+			} else {
+				result = new Nullable(toObjectValue(c, source));
+			}
+		} else if(type instanceof ParameterizedType) {
+			final ParameterizedType parameterized = (ParameterizedType)type;
+			final Class<?> raw = (Class<?>)parameterized.getRawType();
+			final Type[] arguments = parameterized.getActualTypeArguments();
+			if(Collection.class.isAssignableFrom(raw)) {
+				result = new Nullable(new CollectionValue(
+						toConstructor(raw, COLLECTIONS, source),
+						toValue(arguments[0], source)));
+			} else if(Map.class.isAssignableFrom(raw) && arguments[0] == String.class) {
+				result = new Nullable(new MapValue(
+						toConstructor(raw, MAPS, source),
+						toValue(arguments[1], source)));
+			} else {
+				// E.g. Holder<String>, its fields of type T are Objects
+				result = toValue(raw, source);
+			}
+		} else if(type instanceof TypeVariable) {
+			result = toValue(((TypeVariable<?>)type).getBounds()[0], source);
+		} else if(type instanceof WildcardType) {
+			result = toValue(((WildcardType)type).getUpperBounds()[0], source);
+		} else if(type instanceof GenericArrayType) {
+			final Type component = ((GenericArrayType)type).getGenericComponentType();
+			if(!(component instanceof ParameterizedType)) {
+				throw new InvalidCallException("Can't bind " + type + ": " + source);
+			}
+			final Class<?> raw = (Class<?>)((ParameterizedType)component).getRawType();
+			result = new Nullable(new ArrayValue(raw, toValue(component, source)));
+		} else {
+			throw new InvalidCallException("Can't bind " + type + ": " + source);
+		}
+
+		return result;
+	}
+
+	private static Value toObjectValue(Class<?> c, Object source) {
+		final Value result;
+
+		if(c == String.class) {
+			result = STRING;
+		} else if(c == Integer.class) {
+			result = INTEGER;
+		} else if(c == Long.class) {
+			result = LONG;
+		} else if(c == Double.class) {
+			result = DOUBLE;
+		} else if(c == Boolean.class) {
+			result = BOOLEAN;
+		} else if(c == Float.class) {
+			result = FLOAT;
+		} else if(c == Short.class) {
+			result = SHORT;
+		} else if(c == Byte.class) {
+			result = BYTE;
+		} else if(c == Character.class) {
+			result = CHARACTER;
+		} else if(c == BigDecimal.class) {
+			result = BIG_DECIMAL;
+		} else if(c == BigInteger.class) {
+			result = BIG_INTEGER;
+		} else if(c == Date.class) {
+			result = DATE;
+		} else if(c.isEnum()) {
+			result = new EnumValue(c);
+		} else if(c == UUID.class) {
+			result = UUID_VALUE;
+		} else if(c == URI.class) {
+			result = URI_VALUE;
+		} else if(c == Object.class) {
+			result = DYNAMIC;
+		} else if(c.isArray()) {
+			final Class<?> component = c.getComponentType();
+			result = new ArrayValue(component, toValue(component, source));
+		} else if(Collection.class.isAssignableFrom(c)) {
+			// Raw, e.g. an ArrayList given to writeObject()
+			result = new CollectionValue(toConstructor(c, COLLECTIONS, source), DYNAMIC);
+		} else if(Map.class.isAssignableFrom(c)) {
+			result = new MapValue(toConstructor(c, MAPS, source), DYNAMIC);
+		} else if(c.isInterface() || Modifier.isAbstract(c.getModifiers()) || isJdk(c)) {
+			throw new InvalidCallException("Can't bind " + c.getName() + ": " + source);
+		} else {
+			result = new CodecValue(c);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param raw
+	 *            A Collection or Map class.
+	 * @param defaults
+	 *            What to make if it's an interface or abstract, or has no
+	 *            usable no-argument constructor, e.g. Arrays.asList()'s.
+	 * @return A handle that makes an empty instance.
+	 */
+	private static MethodHandle toConstructor(Class<?> raw, Class<?>[] defaults, Object source) {
+		MethodHandle result = null;
+
+		if(!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())) {
+			result = toConstructor(raw);
+		}
+		for(int i = 0; result == null && i < defaults.length; i++) {
+			final Class<?> candidate = defaults[i];
+			if(raw.isInterface() || Modifier.isAbstract(raw.getModifiers())
+					? raw.isAssignableFrom(candidate)
+					: isSameKind(raw, candidate)) {
+				result = toConstructor(candidate);
+			}
+		}
+		if(result == null) {
+			throw new InvalidCallException("Can't bind " + raw.getName() + ": " + source);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return A handle that makes an instance or null if there's no usable
+	 *         no-argument constructor.
+	 */
+	private static MethodHandle toConstructor(Class<?> toMake) {
+		MethodHandle result;
+
+		try {
+			final Constructor<?> noArgs = toMake.getDeclaredConstructor();
+			noArgs.setAccessible(true);
+			result = MethodHandles.lookup().unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+		} catch(final NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+			// RuntimeException as Java 9 and later refuse some JDK classes
+			result = null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return True if candidate is every kind of Collection or Map that c is,
+	 *         e.g. a List or a SortedSet.
+	 */
+	private static boolean isSameKind(Class<?> c, Class<?> candidate) {
+		boolean result = true;
+		for(final Class<?> kind : KINDS) {
+			if(kind.isAssignableFrom(c) && !kind.isAssignableFrom(candidate)) {
+				result = false;
+				break;
+			}
+		}
+		return result;
+	}
+
+	private static Object newInstance(MethodHandle constructor) {
+		try {
+			return constructor.invokeExact();
+		} catch(final RuntimeException e) {
+			throw e;
+		} catch(final Throwable e) {
+			throw new RuntimeException("Error creating collection", e);
+		}
+	}
+
+	/**
+	 * @return A Date from Gson's default text, which depends on the locale
+	 *         and the Java version it was written with, or from ISO 8601.
+	 */
+	private static Date parseDate(String text) {
+		Date result = null;
+
+		final DateFormat[] formats = {
+				// Gson's text before Java 9
+				new SimpleDateFormat("MMM d, yyyy h:mm:ss a", Locale.US),
+				DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US),
+				DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT) };
+		for(final DateFormat format : formats) {
+			final ParsePosition position = new ParsePosition(0);
+			final Date date = format.parse(text, position);
+			if(date != null && position.getIndex() == text.length()) {
+				result = date;
+				break;
+			}
+		}
+		if(result == null) {
+			try {
+				result = Date.from(OffsetDateTime.parse(text).toInstant());
+			} catch(final DateTimeParseException e) {
+				throw new JsonReader.ParseException("Expected a date: " + text);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return True if a class is part of the JDK so mustn't be bound field by
+	 *         field.
+	 */
+	private static boolean isJdk(Class<?> c) {
+		final String name = c.getName();
+		return name.startsWith("java.") || name.startsWith("javax.");
+	}
+
+}
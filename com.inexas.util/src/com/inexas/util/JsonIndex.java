@@ -0,0 +1,128 @@
+package com.inexas.util;
+
+import java.util.Arrays;
+import com.inexas.util.JsonReader.Token;
+
+/**
+ * The structure of a JSON value without any of its content: for each value
+ * and property name in document order, an entry holding the offset of its
+ * first character and the entry that follows it, i.e. for an object or
+ * array the entry after its last descendant. Two ints per token and no
+ * objects, nothing is decoded.
+ *
+ * The members of the object at entry e are then found without scanning any
+ * text: the first name is at e + 1, its value at e + 2 and the next name at
+ * next(e + 1), up to next(e). Array elements are similar without the names.
+ */
+class JsonIndex {
+	/** The next entry of an object or array that hasn't ended yet */
+	private final static int OPEN = -1;
+	/** The next entry of a name whose value hasn't ended yet */
+	private final static int OPEN_NAME = -2;
+	/** Pairs of offset and next entry */
+	private int[] entries = new int[64];
+	private int size;
+
+	/**
+	 * Index the next value from a reader.
+	 *
+	 * @param reader
+	 *            The reader to index from.
+	 * @throws JsonReader.ParseException
+	 *             If the value is not syntactically correct, see
+	 *             {@link JsonReader#skipValue()}.
+	 */
+	JsonIndex(JsonReader reader) {
+		// Entries of the open objects and arrays
+		int[] open = new int[16];
+		int depth = 0;
+		do {
+			final Token token = reader.peek();
+			switch(token) {
+			case BEGIN_OBJECT:
+			case BEGIN_ARRAY:
+				if(depth == open.length) {
+					open = Arrays.copyOf(open, depth * 2);
+				}
+				open[depth++] = add(reader.position(), OPEN);
+				if(token == Token.BEGIN_OBJECT) {
+					reader.beginObject();
+				} else {
+					reader.beginArray();
+				}
+				break;
+
+			case END_OBJECT:
+				reader.endObject();
+				end(open[--depth]);
+				break;
+
+			case END_ARRAY:
+				reader.endArray();
+				end(open[--depth]);
+				break;
+
+			case NAME:
+				add(reader.position(), OPEN_NAME);
+				reader.skipName();
+				break;
+
+			default:
+				// A scalar, or END_DOCUMENT which skipValue() reports
+				final int entry = add(reader.position(), OPEN);
+				reader.skipValue();
+				end(entry);
+			}
+		} while(depth > 0);
+	}
+
+	/**
+	 * @return The number of entries.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param entry
+	 *            The entry.
+	 * @return The offset of the first character of the entry's token.
+	 */
+	int offset(int entry) {
+		return entries[entry * 2];
+	}
+
+	/**
+	 * @param entry
+	 *            The entry.
+	 * @return The entry after the entry's value and any descendants, for a
+	 *         name it's the entry after the name's value.
+	 */
+	int next(int entry) {
+		return entries[entry * 2 + 1];
+	}
+
+	private int add(int offset, int next) {
+		final int result = size++;
+		final int index = result * 2;
+		if(index == entries.length) {
+			entries = Arrays.copyOf(entries, index * 2);
+		}
+		entries[index] = offset;
+		entries[index + 1] = next;
+		return result;
+	}
+
+	/**
+	 * A value has ended, set its next entry and that of its name if it has
+	 * one.
+	 */
+	private void end(int entry) {
+		final int index = entry * 2 + 1;
+		entries[index] = size;
+		if(entry > 0 && entries[index - 2] == OPEN_NAME) {
+			entries[index - 2] = size;
+		}
+	}
+
+}
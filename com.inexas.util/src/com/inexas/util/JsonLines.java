@@ -0,0 +1,221 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
+
+/**
+ * Reads JSON lines files, one JSON object per line, in parallel. The file is
+ * memory mapped in chunks that end at line ends and the chunks are decoded
+ * and parsed on the common ForkJoinPool, e.g.
+ *
+ * <pre>
+ * JsonLines.forEach(file, Event.class, event -&gt; ...);
+ * </pre>
+ *
+ * Files are UTF-8, as JSON lines requires; a newline byte can't be part of
+ * any other character so the file can be split without decoding it. Blank
+ * lines are skipped and a line may end with "\r\n". The lines of a chunk
+ * share one char[] so a JsonUtilities costs only its index.
+ *
+ * Streams are parallel. If ordered they keep the order of the lines so
+ * forEachOrdered(), collect(), etc. see the lines in file order; unordered
+ * streams give up the order for throughput. A line that isn't a JSON object
+ * throws a RuntimeException when its chunk is parsed.
+ */
+public class JsonLines {
+	/** The smallest chunk, smaller ones aren't worth a task */
+	private final static int MINIMUM_CHUNK_SIZE = 1024 * 1024;
+	/**
+	 * The largest chunk, this bounds the memory of a decoded chunk which is
+	 * kept while any JsonUtilities of its lines is
+	 */
+	private final static int MAXIMUM_CHUNK_SIZE = 8 * 1024 * 1024;
+	/** Chunks per core so the work balances when lines vary in length */
+	private final static int CHUNKS_PER_CORE = 4;
+
+	/**
+	 * Parses a line to a result.
+	 */
+	private static interface LineParser<R> {
+		R parse(char[] ca, int from, int to, String source) throws JsonException;
+	}
+
+	/**
+	 * The lines of a chunk, decoded when the first is asked for and parsed
+	 * one at a time so only the line being processed is live.
+	 */
+	private static class Lines<R> extends Spliterators.AbstractSpliterator<R> {
+		private final ByteBuffer chunk;
+		private final long offset;
+		private final String source;
+		private final LineParser<R> parser;
+		private char[] ca;
+		private int end, from, line;
+
+		Lines(ByteBuffer chunk, long offset, String source, LineParser<R> parser) {
+			super(Long.MAX_VALUE, ORDERED | NONNULL);
+			this.chunk = chunk;
+			this.offset = offset;
+			this.source = source;
+			this.parser = parser;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super R> action) {
+			boolean result = false;
+
+			if(ca == null) {
+				final CharBuffer chars = StandardCharsets.UTF_8.decode(chunk);
+				ca = chars.array();
+				end = chars.limit();
+			}
+			while(!result && from < end) {
+				final int newline = CharArrays.indexOf(ca, from, end, '\n');
+				final int next = newline < 0 ? end : newline;
+				final int to = next > from && ca[next - 1] == '\r' ? next - 1 : next;
+				line++;
+				if(CharArrays.skipWhitespace(ca, from, to) < to) {
+					final R parsed;
+					try {
+						parsed = parser.parse(ca, from, to, source);
+					} catch(final JsonException | JsonReader.ParseException e) {
+						throw new RuntimeException("Error in JSON line " + line + " of the chunk at byte " + offset
+								+ ": " + source, e);
+					}
+					action.accept(parsed);
+					result = true;
+				}
+				from = next + 1;
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * @param file
+	 *            The JSON lines file.
+	 * @param ordered
+	 *            True to keep the order of the lines.
+	 * @return A parallel stream of the lines.
+	 */
+	public static Stream<JsonUtilities> stream(File file, boolean ordered) {
+		return stream(file, ordered, chunkSize(file));
+	}
+
+	/**
+	 * Bind each line to a class with a JsonCodec.
+	 *
+	 * @param file
+	 *            The JSON lines file.
+	 * @param type
+	 *            The class to bind each line to.
+	 * @param ordered
+	 *            True to keep the order of the lines.
+	 * @param <T>
+	 *            The class to bind each line to.
+	 * @return A parallel stream of the objects bound.
+	 */
+	public static <T> Stream<T> stream(File file, Class<T> type, boolean ordered) {
+		return stream(file, type, ordered, chunkSize(file));
+	}
+
+	/**
+	 * Bind each line to a class and pass it to a consumer. The consumer is
+	 * called from several threads at once, in no particular order.
+	 *
+	 * @param file
+	 *            The JSON lines file.
+	 * @param type
+	 *            The class to bind each line to.
+	 * @param consumer
+	 *            Called with each object bound, it must be thread safe.
+	 * @param <T>
+	 *            The class to bind each line to.
+	 */
+	public static <T> void forEach(File file, Class<T> type, Consumer<? super T> consumer) {
+		stream(file, type, false).forEach(consumer);
+	}
+
+	static <T> Stream<T> stream(File file, Class<T> type, boolean ordered, long chunkSize) {
+		final JsonCodec<T> codec = JsonCodec.of(type);
+		return stream(file, ordered, chunkSize, (ca, from, to, source) -> {
+			final JsonReader reader = new JsonReader(new Parser(ca, from, to - from));
+			final T result = codec.read(reader);
+			if(reader.peek() != JsonReader.Token.END_DOCUMENT) {
+				throw new JsonException(source + ": Error parsing JSON, unexpected text after object");
+			}
+			return result;
+		});
+	}
+
+	static Stream<JsonUtilities> stream(File file, boolean ordered, long chunkSize) {
+		return stream(file, ordered, chunkSize,
+				(ca, from, to, source) -> new JsonUtilities(CharBuffer.wrap(ca, from, to - from), source));
+	}
+
+	private static <R> Stream<R> stream(File file, boolean ordered, long chunkSize, LineParser<R> parser) {
+		final String source = file.getAbsolutePath();
+		final List<MappedByteBuffer> chunks = new ArrayList<>();
+		final List<Long> offsets = new ArrayList<>();
+		try(final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			// Mappings stay valid after the channel is closed
+			final long size = channel.size();
+			long start = 0;
+			while(start < size) {
+				final long end = start + chunkSize >= size ? size : nextLine(channel, start + chunkSize, size);
+				chunks.add(channel.map(MapMode.READ_ONLY, start, end - start));
+				offsets.add(Long.valueOf(start));
+				start = end;
+			}
+		} catch(final IOException e) {
+			throw new RuntimeException("Error reading file: " + source, e);
+		}
+
+		final Stream<R> result = IntStream.range(0, chunks.size())
+				.parallel()
+				.mapToObj(i -> StreamSupport.stream(
+						new Lines<>(chunks.get(i), offsets.get(i).longValue(), source, parser), false))
+				.flatMap(lines -> lines);
+		return ordered ? result : result.unordered();
+	}
+
+	/**
+	 * @return The offset of the start of the line after position, or size.
+	 */
+	private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+		long result = size;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+		long at = position;
+		search: while(at < size) {
+			buffer.clear();
+			final int read = channel.read(buffer, at);
+			if(read < 0) {
+				break;
+			}
+			for(int i = 0; i < read; i++) {
+				if(buffer.get(i) == '\n') {
+					result = at + i + 1;
+					break search;
+				}
+			}
+			at += read;
+		}
+
+		return result;
+	}
+
+	private static long chunkSize(File file) {
+		final long chunks = (long)Runtime.getRuntime().availableProcessors() * CHUNKS_PER_CORE;
+		return Math.min(MAXIMUM_CHUNK_SIZE, Math.max(MINIMUM_CHUNK_SIZE, file.length() / chunks + 1));
+	}
+
+}
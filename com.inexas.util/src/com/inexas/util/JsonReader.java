@@ -0,0 +1,725 @@
+package com.inexas.util;
+
+import java.util.Arrays;
+
+/**
+ * Reads JSON one token at a time from a Parser, the reading counterpart of
+ * JsonWriter. Nothing is built: the caller asks what comes next with peek()
+ * and then reads it, numbers are parsed straight to primitives and values
+ * that aren't wanted can be skipped with skipValue() which doesn't decode
+ * strings or numbers, e.g.
+ *
+ * <pre>
+ * reader.beginObject();
+ * while(reader.hasNext()) {
+ * 	final String name = reader.nextName();
+ * 	if(name.equals("count")) {
+ * 		count = reader.nextInt();
+ * 	} else {
+ * 		reader.skipValue();
+ * 	}
+ * }
+ * reader.endObject();
+ * </pre>
+ *
+ * Because it works on a Parser the JSON can be a String, a char[], a Text,
+ * etc. or be streamed from a Reader or channel in constant memory. More than
+ * one top level value may be read, e.g. from JSON lines, peek() returns
+ * END_DOCUMENT after the last.
+ *
+ * Syntax errors and reading the wrong type of token throw a ParseException.
+ */
+public class JsonReader {
+	public static enum Token {
+		BEGIN_OBJECT,
+		END_OBJECT,
+		BEGIN_ARRAY,
+		END_ARRAY,
+		/** A property name */
+		NAME,
+		STRING,
+		NUMBER,
+		/** true or false */
+		BOOLEAN,
+		NULL,
+		END_DOCUMENT
+	}
+
+	public static class ParseException extends RuntimeException {
+		private static final long serialVersionUID = -4376383530209416622L;
+
+		public ParseException(String message) {
+			super(message);
+		}
+	}
+
+	private final static int EMPTY_DOCUMENT = 0;
+	private final static int NONEMPTY_DOCUMENT = 1;
+	private final static int EMPTY_OBJECT = 2;
+	private final static int NONEMPTY_OBJECT = 3;
+	/** In an object after a name, waiting for its value */
+	private final static int NAME = 4;
+	private final static int EMPTY_ARRAY = 5;
+	private final static int NONEMPTY_ARRAY = 6;
+	private final static char[] QUOTE_OR_BACKSLASH = { '"', '\\' };
+	private final static char[] END_OF_LITERAL = { ',', '}', ']', ' ', '\n', '\t', '\r' };
+	/** The characters that may follow a backslash in a string, bar u */
+	private final static String ESCAPES = "\"\\/bfnrt";
+	private final Parser parser;
+	/** What is being read at each level of nesting, the top is stack[depth] */
+	private int[] stack = new int[16];
+	private int depth;
+	/** The next token if peek() has been called, otherwise null */
+	private Token peeked;
+	/** Used to decode strings with escapes, created when needed */
+	private Text scratch;
+
+	/**
+	 * @param parser
+	 *            The JSON to read, reading starts at the parser's cursor.
+	 */
+	public JsonReader(Parser parser) {
+		this.parser = parser;
+		stack[0] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * @return The Parser being read from.
+	 */
+	public Parser getParser() {
+		return parser;
+	}
+
+	/**
+	 * @return The type of the next token without consuming it.
+	 */
+	public Token peek() {
+		if(peeked == null) {
+			peeked = doPeek();
+		}
+		return peeked;
+	}
+
+	/**
+	 * @return The offset in the parser of the start of the next token.
+	 */
+	public int position() {
+		peek();
+		return parser.cursor();
+	}
+
+	/**
+	 * @return True if the current object or array has another element.
+	 */
+	public boolean hasNext() {
+		final Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	public void beginObject() {
+		expect(Token.BEGIN_OBJECT);
+		parser.consume('{');
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() {
+		expect(Token.END_OBJECT);
+		parser.consume('}');
+		depth--;
+	}
+
+	public void beginArray() {
+		expect(Token.BEGIN_ARRAY);
+		parser.consume('[');
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() {
+		expect(Token.END_ARRAY);
+		parser.consume(']');
+		depth--;
+	}
+
+	/**
+	 * @return The name of the next property.
+	 */
+	public String nextName() {
+		expect(Token.NAME);
+		final String result = readString();
+		stack[depth] = NAME;
+		return result;
+	}
+
+	/**
+	 * Read the name of the next property and compare it with a given name
+	 * without creating a String unless the name contains escapes.
+	 *
+	 * @param name
+	 *            The name to compare with.
+	 * @return True if the name read was name.
+	 */
+	public boolean nextNameEquals(String name) {
+		final boolean result;
+
+		expect(Token.NAME);
+		parser.consume('"');
+		final int from = parser.cursor();
+		parser.consumeUntilAny(QUOTE_OR_BACKSLASH);
+		if(parser.isEof()) {
+			throw error("Unterminated string");
+		}
+		final int to = parser.cursor();
+		if(parser.consume('"')) {
+			result = matches(from, to, name);
+		} else {
+			parser.setCursor(from - 1);
+			result = readString().equals(name);
+		}
+		stack[depth] = NAME;
+
+		return result;
+	}
+
+	/**
+	 * Read the name of the next property and look it up in an array of names
+	 * without creating a String unless the name contains escapes.
+	 *
+	 * @param names
+	 *            The names to look for.
+	 * @param guess
+	 *            The index of the name most likely to be next, it's checked
+	 *            first.
+	 * @return The index of the name read in names or -1 if it's not there.
+	 */
+	int nextName(String[] names, int guess) {
+		int result = -1;
+
+		expect(Token.NAME);
+		parser.consume('"');
+		final int from = parser.cursor();
+		parser.consumeUntilAny(QUOTE_OR_BACKSLASH);
+		if(parser.isEof()) {
+			throw error("Unterminated string");
+		}
+		final int to = parser.cursor();
+		final int count = names.length;
+		if(parser.consume('"')) {
+			if(guess < count && matches(from, to, names[guess])) {
+				result = guess;
+			} else {
+				for(int i = 0; i < count; i++) {
+					if(matches(from, to, names[i])) {
+						result = i;
+						break;
+					}
+				}
+			}
+		} else {
+			parser.setCursor(from - 1);
+			final String name = readString();
+			for(int i = 0; i < count; i++) {
+				if(names[i].equals(name)) {
+					result = i;
+					break;
+				}
+			}
+		}
+		stack[depth] = NAME;
+
+		return result;
+	}
+
+	private boolean matches(int from, int to, String name) {
+		final int length = name.length();
+		boolean result = to - from == length;
+		for(int i = 0; result && i < length; i++) {
+			result = parser.charAt(from + i) == name.charAt(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The next string value, or if the next token is a number then
+	 *         its text.
+	 */
+	public String nextString() {
+		final String result;
+
+		final Token token = peek();
+		if(token == Token.NUMBER) {
+			final int from = parser.cursor();
+			skipNumber();
+			result = parser.getString(from, parser.cursor());
+		} else {
+			expect(Token.STRING);
+			result = readString();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The next number as a long.
+	 * @throws ParseException
+	 *             If the next token is not a number or the number is not a
+	 *             whole number that fits in a long. In the latter case the
+	 *             number is not consumed.
+	 */
+	public long nextLong() {
+		long result;
+
+		expect(Token.NUMBER);
+		final int from = parser.cursor();
+		result = parser.tryParseLong();
+		final char next = parser.peek();
+		if(!parser.parsed() || next == '.' || next == 'e' || next == 'E') {
+			// 1.0, 1e3, etc. are fine if they are whole numbers
+			parser.setCursor(from);
+			final double d = parser.tryParseDouble();
+			result = (long)d;
+			if(!parser.parsed() || result != d || d == Long.MAX_VALUE) {
+				final String number = parser.getString(from, Math.max(from, parser.cursor()));
+				throw unread(from, "Expected a long: " + number);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The next number as an int.
+	 * @throws ParseException
+	 *             If the next token is not a number or the number is not a
+	 *             whole number that fits in an int. In the latter case the
+	 *             number is not consumed.
+	 */
+	public int nextInt() {
+		final int from = position();
+		final long result = nextLong();
+		if(result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+			throw unread(from, "Expected an int: " + result);
+		}
+		return (int)result;
+	}
+
+	public double nextDouble() {
+		expect(Token.NUMBER);
+		final double result = parser.tryParseDouble();
+		if(!parser.parsed()) {
+			throw error("Invalid number");
+		}
+		return result;
+	}
+
+	public boolean nextBoolean() {
+		final boolean result;
+
+		expect(Token.BOOLEAN);
+		if(parser.consume("true")) {
+			result = true;
+		} else if(parser.consume("false")) {
+			result = false;
+		} else {
+			throw error("Expected true or false");
+		}
+
+		return result;
+	}
+
+	public void nextNull() {
+		expect(Token.NULL);
+		if(!parser.consume("null")) {
+			throw error("Expected null");
+		}
+	}
+
+	/**
+	 * Skip the next value, including everything in it if it's an object or
+	 * array, or if the next token is a name then the name and its value.
+	 * Nothing is decoded but everything is checked: the structure, string
+	 * escapes, the number grammar and the spelling of true, false and null.
+	 */
+	public void skipValue() {
+		int count = 0;
+		if(peek() == Token.NAME) {
+			skipName();
+		}
+		do {
+			switch(peek()) {
+			case BEGIN_OBJECT:
+				beginObject();
+				count++;
+				break;
+
+			case BEGIN_ARRAY:
+				beginArray();
+				count++;
+				break;
+
+			case END_OBJECT:
+				checkSkipping(count);
+				endObject();
+				count--;
+				break;
+
+			case END_ARRAY:
+				checkSkipping(count);
+				endArray();
+				count--;
+				break;
+
+			case NAME:
+				skipName();
+				break;
+
+			case STRING:
+				skipString();
+				peeked = null;
+				break;
+
+			case NUMBER:
+				skipNumber();
+				break;
+
+			case BOOLEAN:
+			case NULL:
+				skipKeyword();
+				break;
+
+			case END_DOCUMENT:
+				throw error("No value to skip");
+			}
+		} while(count > 0);
+	}
+
+	private void checkSkipping(int count) {
+		if(count == 0) {
+			throw error("No value to skip");
+		}
+	}
+
+	/**
+	 * Skip the next property name without decoding it, its value is next.
+	 */
+	void skipName() {
+		expect(Token.NAME);
+		skipString();
+		stack[depth] = NAME;
+	}
+
+	/**
+	 * Skip whitespace and separators and work out what's next, the cursor is
+	 * left at the start of the token.
+	 */
+	private Token doPeek() {
+		final Token result;
+
+		ws();
+		final int top = stack[depth];
+		switch(top) {
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT:
+			if(parser.peek() == '}' && !parser.isEof()) {
+				result = Token.END_OBJECT;
+			} else {
+				if(top == NONEMPTY_OBJECT) {
+					if(!parser.consume(',')) {
+						throw error("Expected ',' or '}'");
+					}
+					ws();
+				}
+				if(parser.peek() != '"' || parser.isEof()) {
+					throw error("Expected a name");
+				}
+				result = Token.NAME;
+			}
+			break;
+
+		case NAME:
+			if(!parser.consume(':')) {
+				throw error("Expected ':'");
+			}
+			ws();
+			stack[depth] = NONEMPTY_OBJECT;
+			result = peekValue();
+			break;
+
+		case EMPTY_ARRAY:
+		case NONEMPTY_ARRAY:
+			if(parser.peek() == ']' && !parser.isEof()) {
+				result = Token.END_ARRAY;
+			} else {
+				if(top == NONEMPTY_ARRAY) {
+					if(!parser.consume(',')) {
+						throw error("Expected ',' or ']'");
+					}
+					ws();
+				}
+				stack[depth] = NONEMPTY_ARRAY;
+				result = peekValue();
+			}
+			break;
+
+		case EMPTY_DOCUMENT:
+			stack[depth] = NONEMPTY_DOCUMENT;
+			result = peekValue();
+			break;
+
+		default: // NONEMPTY_DOCUMENT
+			result = parser.isEof() ? Token.END_DOCUMENT : peekValue();
+		}
+
+		return result;
+	}
+
+	private Token peekValue() {
+		final Token result;
+
+		if(parser.isEof()) {
+			throw error("Unexpected end of input");
+		}
+		final char c = parser.peek();
+		switch(c) {
+		case '{':
+			result = Token.BEGIN_OBJECT;
+			break;
+
+		case '[':
+			result = Token.BEGIN_ARRAY;
+			break;
+
+		case '"':
+			result = Token.STRING;
+			break;
+
+		case 't':
+		case 'f':
+			result = Token.BOOLEAN;
+			break;
+
+		case 'n':
+			result = Token.NULL;
+			break;
+
+		default:
+			if(c == '-' || c >= '0' && c <= '9') {
+				result = Token.NUMBER;
+			} else {
+				throw error("Unexpected character: '" + c + '\'');
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Check the next token is what's expected and mark it as consumed.
+	 */
+	private void expect(Token expected) {
+		final Token token = peek();
+		if(token != expected) {
+			throw error("Expected " + expected + " but was " + token);
+		}
+		peeked = null;
+	}
+
+	private void push(int state) {
+		if(++depth == stack.length) {
+			stack = Arrays.copyOf(stack, depth * 2);
+		}
+		stack[depth] = state;
+	}
+
+	/**
+	 * JSON whitespace: space, tab, newline and carriage return.
+	 */
+	private void ws() {
+		do {
+			parser.ws();
+		} while(parser.consume('\r'));
+	}
+
+	/**
+	 * Read a string, the cursor is at the opening quote. Strings without
+	 * escapes, which is most of them, are taken directly from the parser.
+	 */
+	private String readString() {
+		final String result;
+
+		parser.consume('"');
+		final int from = parser.cursor();
+		parser.consumeUntilAny(QUOTE_OR_BACKSLASH);
+		if(parser.isEof()) {
+			throw error("Unterminated string");
+		}
+		if(parser.peek() == '"') {
+			result = parser.getString(from, parser.cursor());
+			parser.consume('"');
+		} else {
+			if(scratch == null) {
+				scratch = new Text(false);
+			} else {
+				scratch.recycle();
+			}
+			int run = from;
+			while(true) {
+				scratch.append(parser, run, parser.cursor());
+				if(parser.consume('"')) {
+					break;
+				}
+				parser.consume('\\');
+				final char c = next();
+				switch(c) {
+				case '"':
+				case '\\':
+				case '/':
+					scratch.append(c);
+					break;
+
+				case 'b':
+					scratch.append('\b');
+					break;
+
+				case 'f':
+					scratch.append('\f');
+					break;
+
+				case 'n':
+					scratch.append('\n');
+					break;
+
+				case 'r':
+					scratch.append('\r');
+					break;
+
+				case 't':
+					scratch.append('\t');
+					break;
+
+				case 'u':
+					int value = 0;
+					for(int i = 0; i < 4; i++) {
+						final int digit = Character.digit(next(), 16);
+						if(digit < 0) {
+							throw error("Invalid \\u escape");
+						}
+						value = value << 4 | digit;
+					}
+					scratch.append((char)value);
+					break;
+
+				default:
+					throw error("Invalid escape: \\" + c);
+				}
+				run = parser.cursor();
+				parser.consumeUntilAny(QUOTE_OR_BACKSLASH);
+				if(parser.isEof()) {
+					throw error("Unterminated string");
+				}
+			}
+			result = scratch.toString();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Skip a string, the cursor is at the opening quote.
+	 */
+	private void skipString() {
+		parser.consume('"');
+		while(true) {
+			parser.consumeUntilAny(QUOTE_OR_BACKSLASH);
+			if(parser.isEof()) {
+				throw error("Unterminated string");
+			}
+			if(parser.consume('"')) {
+				break;
+			}
+			parser.consume('\\');
+			final char c = next();
+			if(c == 'u') {
+				for(int i = 0; i < 4; i++) {
+					if(Character.digit(next(), 16) < 0) {
+						throw error("Invalid \\u escape");
+					}
+				}
+			} else if(ESCAPES.indexOf(c) < 0) {
+				throw error("Invalid escape: \\" + c);
+			}
+		}
+	}
+
+	/**
+	 * Skip a number checking it is
+	 * '-'? ( '0' | [1-9] [0-9]* ) ( '.' [0-9]+ )? ( [eE] [+-]? [0-9]+ )?
+	 */
+	private void skipNumber() {
+		final int from = parser.cursor();
+		parser.consume('-');
+		final char first = parser.peek();
+		boolean valid = parser.consume('0') || first >= '1' && first <= '9' && parser.consume(CharClass.DIGIT);
+		if(valid && parser.consume('.')) {
+			valid = parser.consume(CharClass.DIGIT);
+		}
+		if(valid && (parser.consume('e') || parser.consume('E'))) {
+			if(!parser.consume('+')) {
+				parser.consume('-');
+			}
+			valid = parser.consume(CharClass.DIGIT);
+		}
+		if(!valid || !isEndOfLiteral()) {
+			parser.consumeUntilAny(END_OF_LITERAL);
+			throw new ParseException("Invalid number: " + parser.getString(from, parser.cursor()) + " at offset " + from);
+		}
+		peeked = null;
+	}
+
+	/**
+	 * Skip true, false or null checking the spelling.
+	 */
+	private void skipKeyword() {
+		final int from = parser.cursor();
+		if(!(parser.consume("true") || parser.consume("false") || parser.consume("null")) || !isEndOfLiteral()) {
+			parser.consumeUntilAny(END_OF_LITERAL);
+			throw new ParseException("Expected true, false or null: " + parser.getString(from, parser.cursor())
+					+ " at offset " + from);
+		}
+		peeked = null;
+	}
+
+	private boolean isEndOfLiteral() {
+		boolean result = parser.isEof();
+		if(!result) {
+			final char c = parser.peek();
+			for(final char end : END_OF_LITERAL) {
+				if(c == end) {
+					result = true;
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	private char next() {
+		if(parser.isEof()) {
+			throw error("Unexpected end of input");
+		}
+		return parser.parseChar();
+	}
+
+	/**
+	 * Put a number back so it can be read as another type after the error.
+	 */
+	private ParseException unread(int from, String message) {
+		parser.setCursor(from);
+		peeked = Token.NUMBER;
+		return new ParseException(message + " at offset " + from);
+	}
+
+	private ParseException error(String message) {
+		return new ParseException(message + " at offset " + parser.cursor());
+	}
+
+}
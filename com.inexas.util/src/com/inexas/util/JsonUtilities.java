@@ -1,99 +1,190 @@
 package com.inexas.util;
 
 import java.io.File;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import org.json.simple.*;
-import org.json.simple.parser.*;
+import com.inexas.util.JsonReader.Token;
 
+/**
+ * Access to the properties of a JSON object by key. Nothing is decoded when
+ * the JSON is loaded: the text is kept as it is and one pass checks it and
+ * builds a JsonIndex, the offsets of its names and values. A get then steps
+ * from name to name through the index, without looking at the text of the
+ * values it passes, and decodes just the value wanted. Children share the
+ * text and index of their parent so the cost is proportional to what is
+ * read rather than to the size of the document.
+ */
 public class JsonUtilities {
-	private final JSONObject json;
+	private final char[] json;
+	/** The slice of json that was indexed, offsets are relative to start */
+	private final int start, length;
+	private final JsonIndex index;
+	/** The index entry of this object */
+	private final int entry;
 	private final String source;
 
+	/**
+	 * Load a UTF-8 JSON file. The file is decoded straight into the buffer
+	 * that is indexed, see FileU.readToCharBuffer().
+	 *
+	 * @param file
+	 *            The file to load.
+	 * @throws JsonException
+	 *             Thrown if the file is not a syntactically correct object.
+	 */
 	public JsonUtilities(File file) throws JsonException {
-		source = file.getAbsolutePath();
+		this(FileU.readToCharBuffer(file, StandardCharsets.UTF_8), file.getAbsolutePath());
+	}
+
+	/**
+	 * @param json
+	 *            The text of a JSON object, it is not copied.
+	 * @param source
+	 *            Where the JSON came from, e.g. a file name, for error
+	 *            messages.
+	 * @throws JsonException
+	 *             Thrown if json is not a syntactically correct object.
+	 */
+	public JsonUtilities(char[] json, String source) throws JsonException {
+		this(json, 0, json.length, source);
+	}
+
+	/**
+	 * @param json
+	 *            The text of a JSON object: the buffer's remaining
+	 *            characters. A heap buffer's array is used as it is, others
+	 *            are copied.
+	 * @param source
+	 *            Where the JSON came from, for error messages.
+	 * @throws JsonException
+	 *             Thrown if json is not a syntactically correct object.
+	 */
+	public JsonUtilities(CharBuffer json, String source) throws JsonException {
+		this(
+				json.hasArray() ? json.array() : json.duplicate().toString().toCharArray(),
+				json.hasArray() ? json.arrayOffset() + json.position() : 0,
+				json.remaining(),
+				source);
+	}
+
+	public JsonUtilities(String json, String source) throws JsonException {
+		this(json.toCharArray(), source);
+	}
+
+	private JsonUtilities(char[] json, int start, int length, String source) throws JsonException {
+		this.json = json;
+		this.start = start;
+		this.length = length;
+		this.source = source;
+		final JsonReader reader = new JsonReader(new Parser(json, start, length));
 		try {
-			final JSONParser parser = new JSONParser();
-			final String jsonText = FileU.read(file, false);
-			json = (JSONObject)parser.parse(jsonText);
-		} catch(final ParseException e) {
+			if(reader.peek() != Token.BEGIN_OBJECT) {
+				throw new JsonException(source + ": Error parsing JSON, expected an object");
+			}
+			index = new JsonIndex(reader);
+			if(reader.peek() != Token.END_DOCUMENT) {
+				throw new JsonException(source + ": Error parsing JSON, unexpected text after object");
+			}
+		} catch(final JsonReader.ParseException e) {
 			throw new JsonException(source + ": " + "Error parsing JSON", e);
 		}
+		entry = 0;
 	}
 
-	public JsonUtilities(JSONObject json, String source) {
-		this.json = json;
-		this.source = source;
+	/**
+	 * A child object, the JSON has already been indexed.
+	 */
+	private JsonUtilities(JsonUtilities parent, int entry) {
+		json = parent.json;
+		start = parent.start;
+		length = parent.length;
+		index = parent.index;
+		source = parent.source;
+		this.entry = entry;
 	}
 
 	public String getString(String key) throws JsonException {
-		final Object object = json.get(key);
-		if(object == null) {
-			throw new JsonException(
-					source + ": " +
-							"Error parsing JSON, missing key: " + source + '/' + key);
-		} else if(object.getClass() != String.class) {
-			throw new JsonException(
-					source + ": " +
-							"Error parsing JSON, invalid type, expected number: " + source + '/' + key);
+		final int value = find(key);
+		if(value < 0) {
+			throw missing(key);
 		}
-		return (String)object;
+		return stringAt(value, key);
 	}
 
 	public String getString(String key, String defaultValue) throws JsonException {
-		final String result;
-		final Object object = json.get(key);
-		if(object == null) {
-			result = defaultValue;
-		} else if(object.getClass() != String.class) {
-			throw new JsonException(
-					source + ": " +
-							"Error parsing JSON, invalid type, expected string: " + source + '/' + key);
-		} else {
-			result = (String)object;
-		}
-		return result;
+		final int value = find(key);
+		return value < 0 ? defaultValue : stringAt(value, key);
 	}
 
 	public int getInt(String key) throws JsonException {
-		final Object object = json.get(key);
-		if(object == null) {
-			throw new JsonException(
-					source + ": " +
-							"Error parsing JSON, missing key: " + source + '/' + key);
-		} else if(object.getClass() != Long.class) {
-			throw new JsonException(
-					source + ": " +
-							"Error parsing JSON, invalid type, expected number: " + source + '/' + key);
+		final int value = find(key);
+		if(value < 0) {
+			throw missing(key);
 		}
-		return ((Long)object).intValue();
+		return intAt(value, key);
 	}
 
 	public int getInt(String key, int defaultValue) throws JsonException {
-		final int result;
-
-		final Object object = json.get(key);
-		if(object == null) {
-			result = defaultValue;
-		} else if(object.getClass() != Long.class) {
-			throw new JsonException(
-					source + ": " +
-							"Error parsing JSON, invalid type, expected number: " + source + '/' + key);
-		} else {
-			result = ((Long)object).intValue();
-		}
-		return result;
+		final int value = find(key);
+		return value < 0 ? defaultValue : intAt(value, key);
 	}
 
+	/**
+	 * @param key
+	 *            The key of the property.
+	 * @return The value of the property: a String, Long, Double, Boolean,
+	 *         JsonUtilities for an object or List of these for an array.
+	 *         Elements of arrays that are null are returned as null.
+	 * @throws JsonException
+	 *             Thrown if there is no such key, the value is null or it
+	 *             can't be decoded, e.g. a whole number too big for a Long.
+	 */
 	public Object getObject(String key) throws JsonException {
-		final Object result = json.get(key);
-		if(result == null) {
-			throw new JsonException(
-					source + ": " +
-							"Error parsing JSON, missing key: " + source + '/' + key);
+		final int value = find(key);
+		if(value < 0) {
+			throw missing(key);
+		}
+		final Object result;
+		try {
+			result = toObject(value);
+		} catch(final JsonReader.ParseException | NumberFormatException e) {
+			throw new JsonException(source + ": Error parsing JSON: " + source + '/' + key, e);
 		}
 		return result;
 	}
 
+	/**
+	 * Bind the value of a property to a class.
+	 *
+	 * @param key
+	 *            The key of the property.
+	 * @param type
+	 *            The class to bind to, see JsonCodec.
+	 * @param <T>
+	 *            The class to bind to.
+	 * @return The value bound or null if there's no such key or it's null.
+	 * @throws JsonException
+	 *             Thrown if the value doesn't match the class.
+	 */
+	public <T> T get(String key, Class<T> type) throws JsonException {
+		final int value = find(key);
+		return value < 0 ? null : bind(value, type, key);
+	}
+
+	/**
+	 * @param type
+	 *            The class to bind to, see JsonCodec.
+	 * @param <T>
+	 *            The class to bind to.
+	 * @return This object bound to a class.
+	 * @throws JsonException
+	 *             Thrown if the object doesn't match the class.
+	 */
+	public <T> T as(Class<T> type) throws JsonException {
+		return bind(entry, type, null);
+	}
+
 	public static interface Visitor<T> {
 		T visit(JsonUtilities jsonSource, T parent) throws JsonException;
 	}
@@ -104,6 +195,9 @@ public class JsonUtilities {
 	 * "{ "children" [ { id: 1 }, { id: 2 } ] }" and the key "children" the
 	 * visitor will be called twice
 	 *
+	 * For a tree of nodes of the same class it is simpler to bind the root
+	 * with as() and let the class hold its children in a List field.
+	 *
 	 * @param key
 	 *            The key of the child array.
 	 * @param visitor
@@ -118,44 +212,237 @@ public class JsonUtilities {
 		return visit(key, (T)null, visitor);
 	}
 
-	// todo This idea doesn't really work. Move it to the classes as ctors
 	private <T> T visit(String key, T parent, Visitor<T> visitor) throws JsonException {
 		// Create the object...
 		final T result = visitor.visit(this, parent);
 
 		// Visit any children...
-		final JSONArray array = (JSONArray)json.get(key);
-		if(array != null) {
-			@SuppressWarnings("unchecked")
-			final Iterator<JSONObject> iterator = array.iterator();
-			while(iterator.hasNext()) {
-				final JsonUtilities childJson = new JsonUtilities(iterator.next(), source);
-				childJson.visit(key, result, visitor);
-			}
+		for(final JsonUtilities childJson : getChildren(key)) {
+			childJson.visit(key, result, visitor);
 		}
 
 		return result;
 	}
 
+	/**
+	 * @param key
+	 *            The key of an array of objects.
+	 * @return The objects in the array, an empty list if there's no such key.
+	 */
 	public List<JsonUtilities> getChildren(String key) {
 		final List<JsonUtilities> result = new ArrayList<>();
 
-		final JSONArray array = (JSONArray)json.get(key);
-		if(array != null) {
-			@SuppressWarnings("unchecked")
-			final Iterator<JSONObject> iterator = array.iterator();
-			while(iterator.hasNext()) {
-				final JsonUtilities childJson = new JsonUtilities(iterator.next(), source);
-				result.add(childJson);
+		final int value = find(key);
+		if(value >= 0) {
+			if(charAt(value) != '[') {
+				throw new RuntimeException(source + ": Error parsing JSON, expected an array: "
+						+ source + '/' + key);
+			}
+			final int end = index.next(value);
+			for(int element = value + 1; element < end; element = index.next(element)) {
+				if(charAt(element) != '{') {
+					throw new RuntimeException(source + ": Error parsing JSON, expected objects in: "
+							+ source + '/' + key);
+				}
+				result.add(new JsonUtilities(this, element));
 			}
 		}
 
 		return result;
 	}
 
+	/**
+	 * @param key
+	 *            The key of an array of objects.
+	 * @param type
+	 *            The class to bind the objects to, see JsonCodec.
+	 * @param <T>
+	 *            The class to bind to.
+	 * @return The objects bound, an empty list if there's no such key.
+	 * @throws JsonException
+	 *             Thrown if the value is not an array or an element doesn't
+	 *             match the class.
+	 */
+	public <T> List<T> getChildren(String key, Class<T> type) throws JsonException {
+		final List<T> result = new ArrayList<>();
+
+		final int value = find(key);
+		if(value >= 0) {
+			if(charAt(value) != '[') {
+				throw invalidType(key, "array");
+			}
+			final int end = index.next(value);
+			for(int element = value + 1; element < end; element = index.next(element)) {
+				result.add(bind(element, type, key));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The text of the object.
+	 */
 	@Override
 	public String toString() {
-		return json.toString();
+		final JsonReader reader = reader(entry);
+		reader.skipValue();
+		final int offset = index.offset(entry);
+		return new String(json, start + offset, reader.getParser().cursor() - offset);
+	}
+
+	/**
+	 * @return A reader positioned at an entry.
+	 */
+	private JsonReader reader(int at) {
+		final Parser parser = new Parser(json, start, length);
+		parser.setCursor(index.offset(at));
+		return new JsonReader(parser);
+	}
+
+	/**
+	 * @return The first character of an entry.
+	 */
+	private char charAt(int at) {
+		return json[start + index.offset(at)];
+	}
+
+	/**
+	 * Step through the names of the object looking for a key.
+	 *
+	 * @param key
+	 *            The key to look for.
+	 * @return The index entry of the key's value or -1 if there is no such
+	 *         key or its value is null.
+	 */
+	private int find(String key) {
+		int result = -1;
+
+		final int end = index.next(entry);
+		for(int name = entry + 1; name < end; name = index.next(name)) {
+			if(nameEquals(name, key)) {
+				if(charAt(name + 1) != 'n') {
+					result = name + 1;
+				}
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Compare a name in the text with a key without decoding it unless it
+	 * has escapes.
+	 */
+	private boolean nameEquals(int name, String key) {
+		final boolean result;
+
+		final int keyLength = key.length();
+		final int to = start + length;
+		int i = start + index.offset(name) + 1;
+		int k = 0;
+		while(k < keyLength && i < to && json[i] == key.charAt(k) && json[i] != '\\') {
+			i++;
+			k++;
+		}
+		if(i < to && json[i] == '\\') {
+			result = reader(name).nextString().equals(key);
+		} else {
+			result = k == keyLength && i < to && json[i] == '"';
+		}
+
+		return result;
+	}
+
+	private String stringAt(int value, String key) throws JsonException {
+		if(charAt(value) != '"') {
+			throw invalidType(key, "string");
+		}
+		final String result;
+		try {
+			result = reader(value).nextString();
+		} catch(final JsonReader.ParseException e) {
+			throw new JsonException(source + ": Error parsing JSON: " + source + '/' + key, e);
+		}
+		return result;
+	}
+
+	private int intAt(int value, String key) throws JsonException {
+		final JsonReader reader = reader(value);
+		if(reader.peek() != Token.NUMBER) {
+			throw invalidType(key, "number");
+		}
+		final int result;
+		try {
+			result = reader.nextInt();
+		} catch(final JsonReader.ParseException e) {
+			throw invalidType(key, "int");
+		}
+		return result;
+	}
+
+	private <T> T bind(int value, Class<T> type, String key) throws JsonException {
+		final T result;
+		try {
+			result = JsonCodec.of(type).read(reader(value));
+		} catch(final JsonReader.ParseException e) {
+			final String path = key == null ? source : source + '/' + key;
+			throw new JsonException(source + ": Error binding JSON to " + type.getName() + ": " + path, e);
+		}
+		return result;
+	}
+
+	private Object toObject(int value) {
+		final Object result;
+
+		final char c = charAt(value);
+		switch(c) {
+		case '"':
+			result = reader(value).nextString();
+			break;
+
+		case '{':
+			result = new JsonUtilities(this, value);
+			break;
+
+		case '[':
+			final List<Object> list = new ArrayList<>();
+			final int end = index.next(value);
+			for(int element = value + 1; element < end; element = index.next(element)) {
+				list.add(toObject(element));
+			}
+			result = list;
+			break;
+
+		case 't':
+		case 'f':
+			result = Boolean.valueOf(c == 't');
+			break;
+
+		case 'n':
+			result = null;
+			break;
+
+		default:
+			final String number = reader(value).nextString();
+			if(number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+				result = Long.valueOf(number);
+			} else {
+				result = Double.valueOf(number);
+			}
+		}
+
+		return result;
+	}
+
+	private JsonException missing(String key) {
+		return new JsonException(source + ": Error parsing JSON, missing key: " + source + '/' + key);
+	}
+
+	private JsonException invalidType(String key, String expected) {
+		return new JsonException(
+				source + ": Error parsing JSON, invalid type, expected " + expected + ": " + source + '/' + key);
 	}
 
 }
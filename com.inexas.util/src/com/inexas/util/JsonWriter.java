@@ -0,0 +1,302 @@
+package com.inexas.util;
+
+import java.io.Writer;
+import java.util.Arrays;
+import com.inexas.exception.InvalidCallException;
+
+/**
+ * Writes JSON to a Text one token at a time. Nothing is built in memory
+ * beyond the Text itself and numbers are written without boxing, e.g.
+ *
+ * <pre>
+ * final JsonWriter writer = new JsonWriter(text);
+ * writer.beginObject();
+ * writer.property("name", "Fred");
+ * writer.name("scores");
+ * writer.beginArray();
+ * writer.value(1);
+ * writer.value(2.5);
+ * writer.endArray();
+ * writer.endObject();
+ * </pre>
+ *
+ * If the Text is pretty the JSON is laid out one value per line indented
+ * with tabs, otherwise it has no whitespace at all. To stream to a Writer,
+ * channel, etc. give the Text an auto flush sink, or use
+ * {@link #JsonWriter(Writer, boolean)}, and call flush() at the end.
+ *
+ * Calls are checked as they are made: a name where a value is expected, an
+ * endArray() that closes an object, etc. throw an InvalidCallException. More
+ * than one top level value may be written, each after the first is on a new
+ * line so a writer can produce JSON lines.
+ */
+public class JsonWriter {
+	private final static int EMPTY_DOCUMENT = 0;
+	private final static int NONEMPTY_DOCUMENT = 1;
+	private final static int EMPTY_OBJECT = 2;
+	private final static int NONEMPTY_OBJECT = 3;
+	/** In an object after a name, waiting for its value */
+	private final static int NAME = 4;
+	private final static int EMPTY_ARRAY = 5;
+	private final static int NONEMPTY_ARRAY = 6;
+	private final Text text;
+	private final boolean pretty;
+	/** What is being written at each level of nesting, the top is stack[depth] */
+	private int[] stack = new int[16];
+	private int depth;
+
+	/**
+	 * Implemented by classes that write themselves as JSON rather than being
+	 * serialized by reflection.
+	 */
+	public static interface ToJson {
+		/**
+		 * Write this object as a single JSON value, typically an object.
+		 *
+		 * @param writer
+		 *            Where to write to.
+		 */
+		void toJson(JsonWriter writer);
+	}
+
+	/**
+	 * @param text
+	 *            Where to write to. If it is pretty the JSON is too.
+	 */
+	public JsonWriter(Text text) {
+		this.text = text;
+		pretty = text.pretty;
+		stack[0] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Stream to a Writer through an auto flushing Text. Call flush() at the
+	 * end.
+	 *
+	 * @param writer
+	 *            Where to write to.
+	 * @param pretty
+	 *            True to lay out the JSON for people to read.
+	 */
+	public JsonWriter(Writer writer, boolean pretty) {
+		this(new Text(pretty));
+		text.setAutoFlush(writer, 8 * 1024);
+	}
+
+	/**
+	 * @return The Text being written to.
+	 */
+	public Text getText() {
+		return text;
+	}
+
+	public void beginObject() {
+		beforeValue();
+		push(EMPTY_OBJECT);
+		text.append('{');
+	}
+
+	public void endObject() {
+		end(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+	}
+
+	public void beginArray() {
+		beforeValue();
+		push(EMPTY_ARRAY);
+		text.append('[');
+	}
+
+	public void endArray() {
+		end(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+	}
+
+	/**
+	 * Write the name of the next property in an object.
+	 *
+	 * @param name
+	 *            The name.
+	 */
+	public void name(String name) {
+		final int top = stack[depth];
+		if(top == NONEMPTY_OBJECT) {
+			text.append(',');
+		} else if(top != EMPTY_OBJECT) {
+			throw new InvalidCallException("Name not expected: " + name);
+		}
+		stack[depth] = NAME;
+		newline();
+		text.appendString(name);
+		text.append(':');
+		if(pretty) {
+			text.append(' ');
+		}
+	}
+
+	/**
+	 * @param value
+	 *            The value to write, if null then null is written.
+	 */
+	public void value(String value) {
+		beforeValue();
+		if(value == null) {
+			text.append("null");
+		} else {
+			text.appendString(value);
+		}
+	}
+
+	public void value(long value) {
+		beforeValue();
+		text.append(value);
+	}
+
+	/**
+	 * @param value
+	 *            The value to write, written as Text.append(double) does.
+	 * @throws InvalidCallException
+	 *             If the value is NaN or infinite, JSON can't represent them.
+	 */
+	public void value(double value) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			throw new InvalidCallException("JSON has no " + value);
+		}
+		beforeValue();
+		text.append(value);
+	}
+
+	/**
+	 * @param value
+	 *            The value to write, written as its toString() is so a
+	 *            BigDecimal or BigInteger keeps all its digits. If null then
+	 *            null is written.
+	 * @throws InvalidCallException
+	 *             If the value is NaN or infinite, JSON can't represent them.
+	 */
+	public void value(Number value) {
+		if(value == null) {
+			nullValue();
+		} else {
+			final double d = value.doubleValue();
+			if((value instanceof Double || value instanceof Float) && (Double.isNaN(d) || Double.isInfinite(d))) {
+				throw new InvalidCallException("JSON has no " + value);
+			}
+			beforeValue();
+			text.append(value.toString());
+		}
+	}
+
+	public void value(boolean value) {
+		beforeValue();
+		text.append(value ? "true" : "false");
+	}
+
+	public void nullValue() {
+		beforeValue();
+		text.append("null");
+	}
+
+	/**
+	 * Short hand for name(name), value(value).
+	 *
+	 * @param name
+	 *            The property name.
+	 * @param value
+	 *            The value, may be null.
+	 */
+	public void property(String name, String value) {
+		name(name);
+		value(value);
+	}
+
+	public void property(String name, long value) {
+		name(name);
+		value(value);
+	}
+
+	public void property(String name, double value) {
+		name(name);
+		value(value);
+	}
+
+	public void property(String name, boolean value) {
+		name(name);
+		value(value);
+	}
+
+	/**
+	 * Write anything buffered to the Text's auto flush sink, if it has one.
+	 *
+	 * @see Text#flush()
+	 */
+	public void flush() {
+		text.flush();
+	}
+
+	/**
+	 * @return True if all objects and arrays have been ended.
+	 */
+	public boolean isComplete() {
+		return depth == 0;
+	}
+
+	/**
+	 * Write whatever must come before a value and update the state.
+	 */
+	private void beforeValue() {
+		switch(stack[depth]) {
+		case EMPTY_DOCUMENT:
+			stack[depth] = NONEMPTY_DOCUMENT;
+			break;
+
+		case NONEMPTY_DOCUMENT:
+			text.append('\n');
+			break;
+
+		case NAME:
+			stack[depth] = NONEMPTY_OBJECT;
+			break;
+
+		case EMPTY_ARRAY:
+			stack[depth] = NONEMPTY_ARRAY;
+			newline();
+			break;
+
+		case NONEMPTY_ARRAY:
+			text.append(',');
+			newline();
+			break;
+
+		default:
+			throw new InvalidCallException("Expected a name");
+		}
+	}
+
+	private void push(int state) {
+		if(++depth == stack.length) {
+			stack = Arrays.copyOf(stack, depth * 2);
+		}
+		stack[depth] = state;
+		text.indentMore();
+	}
+
+	private void end(int empty, int nonEmpty, char c) {
+		final int top = stack[depth];
+		if(top != empty && top != nonEmpty) {
+			throw new InvalidCallException("Nothing to end with '" + c + '\'');
+		}
+		depth--;
+		text.indentLess();
+		if(top == nonEmpty) {
+			newline();
+		}
+		text.append(c);
+	}
+
+	private void newline() {
+		if(pretty) {
+			text.newlinePrettyOrNot();
+			text.indent();
+		}
+	}
+
+}
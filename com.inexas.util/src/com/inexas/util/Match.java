@@ -0,0 +1,229 @@
+package com.inexas.util;
+
+import java.util.*;
+
+/**
+ * The state of matching {@link Rule}s against a Parser: the captures and, if
+ * memoised rules are used, the packrat memo table. A Match is not thread safe
+ * but can be reused for any number of matches on the same Parser, for
+ * example one per line of a file.
+ *
+ * Captures are recorded in numbered slots. When a rule fails, any captures it
+ * made are undone so after a successful match a slot holds what its capture
+ * rule matched on the path that succeeded, or nothing if the capture wasn't
+ * on that path.
+ */
+public class Match {
+	final Parser parser;
+	/** Start and end of each slot's capture, start is -1 if there isn't one */
+	private final int[] captures;
+	/** Undo log of slot, old start, old end triples, created when needed */
+	private int[] trail;
+	private int trailSize;
+	/** Packrat memo: (rule id, position) to end and captures, created if needed */
+	private Map<Long, int[]> memos;
+
+	/**
+	 * @param parser
+	 *            The parser to match against.
+	 * @param slots
+	 *            The number of capture slots, 0 if none are used.
+	 */
+	public Match(Parser parser, int slots) {
+		this.parser = parser;
+		captures = new int[slots * 2];
+	}
+
+	/**
+	 * Clear the captures and the memo table and try to match a rule at the
+	 * parser's cursor.
+	 *
+	 * @param rule
+	 *            The rule to match.
+	 * @return True if the rule matched, the cursor is then after the match.
+	 *         Otherwise false and the cursor is not moved.
+	 */
+	public boolean matches(Rule rule) {
+		for(int i = 0; i < captures.length; i += 2) {
+			captures[i] = -1;
+		}
+		trailSize = 0;
+		if(memos != null) {
+			memos.clear();
+		}
+		return rule.match(this);
+	}
+
+	/**
+	 * @param slot
+	 *            The slot to check.
+	 * @return True if something was captured in slot.
+	 */
+	public boolean isCaptured(int slot) {
+		return captures[slot * 2] >= 0;
+	}
+
+	/**
+	 * @param slot
+	 *            The slot to get.
+	 * @return The offset of the start of the capture or -1 if nothing was
+	 *         captured.
+	 */
+	public int start(int slot) {
+		return captures[slot * 2];
+	}
+
+	/**
+	 * @param slot
+	 *            The slot to get.
+	 * @return The offset after the end of the capture.
+	 */
+	public int end(int slot) {
+		return captures[slot * 2 + 1];
+	}
+
+	/**
+	 * @param slot
+	 *            The slot to get.
+	 * @return The captured characters or null if nothing was captured.
+	 */
+	public String getString(int slot) {
+		return isCaptured(slot) ? parser.getString(start(slot), end(slot)) : null;
+	}
+
+	/**
+	 * @param slot
+	 *            The slot to get.
+	 * @return The captured characters as a Span, see Parser.getSpan(), or null
+	 *         if nothing was captured.
+	 */
+	public Span getSpan(int slot) {
+		return isCaptured(slot) ? parser.getSpan(start(slot), end(slot)) : null;
+	}
+
+	/**
+	 * Convert a capture of decimal digits, with an optional leading '-', to
+	 * an int without creating a String.
+	 *
+	 * @param slot
+	 *            The slot to get.
+	 * @param ifMissing
+	 *            Returned if nothing was captured.
+	 * @return The value of the captured integer.
+	 * @throws NumberFormatException
+	 *             If the capture is not a valid int.
+	 */
+	public int getInt(int slot, int ifMissing) throws NumberFormatException {
+		final int result;
+
+		final int start = start(slot);
+		if(start < 0) {
+			result = ifMissing;
+		} else {
+			final int end = end(slot);
+			final boolean negative = start < end && parser.charAt(start) == '-';
+			int i = negative ? start + 1 : start;
+			if(i == end) {
+				throw new NumberFormatException("Not an integer: '" + getString(slot) + '\'');
+			}
+			// Accumulate negatively so MIN_VALUE can be represented
+			int value = 0;
+			for(; i < end; i++) {
+				final int digit = parser.charAt(i) - '0';
+				if(digit < 0 || digit > 9 || value < (Integer.MIN_VALUE + digit) / 10) {
+					throw new NumberFormatException("Not an integer: '" + getString(slot) + '\'');
+				}
+				value = value * 10 - digit;
+			}
+			if(!negative && value == Integer.MIN_VALUE) {
+				throw new NumberFormatException("Not an integer: '" + getString(slot) + '\'');
+			}
+			result = negative ? value : -value;
+		}
+
+		return result;
+	}
+
+	void capture(int slot, int start, int end) {
+		if(trail == null) {
+			trail = new int[24];
+		} else if(trailSize + 3 > trail.length) {
+			trail = Arrays.copyOf(trail, trail.length * 2);
+		}
+		final int index = slot * 2;
+		trail[trailSize++] = slot;
+		trail[trailSize++] = captures[index];
+		trail[trailSize++] = captures[index + 1];
+		captures[index] = start;
+		captures[index + 1] = end;
+	}
+
+	/**
+	 * @return A mark that can be passed to undo() to remove any captures
+	 *         made after this call.
+	 */
+	int mark() {
+		return trailSize;
+	}
+
+	void undo(int mark) {
+		while(trailSize > mark) {
+			trailSize -= 3;
+			final int index = trail[trailSize] * 2;
+			captures[index] = trail[trailSize + 1];
+			captures[index + 1] = trail[trailSize + 2];
+		}
+	}
+
+	int[] getMemo(int id, int position) {
+		return memos == null ? null : memos.get(key(id, position));
+	}
+
+	/**
+	 * Remember the result of a rule.
+	 *
+	 * @param end
+	 *            The cursor after the match or -1 if the rule failed.
+	 * @param mark
+	 *            The mark from before the rule was tried, the captures made
+	 *            since are stored so they can be replayed.
+	 */
+	void putMemo(int id, int position, int end, int mark) {
+		if(memos == null) {
+			memos = new HashMap<>();
+		}
+
+		final int[] entry;
+		if(end < 0) {
+			entry = new int[] { -1 };
+		} else {
+			final int count = (trailSize - mark) / 3;
+			entry = new int[1 + count * 3];
+			entry[0] = end;
+			for(int i = 0; i < count; i++) {
+				final int slot = trail[mark + i * 3];
+				entry[1 + i * 3] = slot;
+				// Store the values as they are now, i.e. the latest
+				entry[2 + i * 3] = start(slot);
+				entry[3 + i * 3] = end(slot);
+			}
+		}
+		memos.put(key(id, position), entry);
+	}
+
+	/**
+	 * Repeat a successful memoised match: redo its captures and move the
+	 * cursor to its end.
+	 */
+	void replay(int[] entry) {
+		for(int i = 1; i < entry.length; i += 3) {
+			capture(entry[i], entry[i + 1], entry[i + 2]);
+		}
+		parser.setCursor(entry[0]);
+	}
+
+	private static Long key(int id, int position) {
+		return Long.valueOf((long)id << 32 | position);
+	}
+
+}
@@ -1,5 +1,11 @@
 package com.inexas.util;
 
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import com.inexas.exception.InvalidCallException;
+
 /**
  * Parser provides a set of methods that support simple parsing of strings. A
  * cursor is set to the place where parsing is to start, typically this will be
@@ -9,23 +15,269 @@ package com.inexas.util;
  *
  * For each type there is a imperative version and a 'best attempt' version int
  * parseInt() must parse an int and returns primitive and throws a
- * ParseException if one cannot be parsed whereas parseInteger tries to parse an
- * integer and returns an Integer or null of one cannot be parsed.
+ * ParseException if one cannot be parsed whereas tryParseInt() tries to parse
+ * an int and returns 0 and sets parsed() to false if one cannot be parsed. The
+ * numeric parsers don't create any objects.
+ *
+ * A Parser can be constructed over a String, in which case the characters are
+ * copied, or it can wrap a char[] slice, a CharBuffer, a Text or any other
+ * CharSequence without copying. Offsets and the cursor are always relative to
+ * the start of the input so all methods behave the same whatever the source.
+ * Wrapped input must not be modified while it is being parsed.
+ *
+ * A Parser can also stream from a Reader or a ReadableByteChannel, in which
+ * case the input is read through a fixed size window that is refilled as the
+ * cursor advances so input of any size can be parsed in constant memory. The
+ * window always keeps at least 'markLimit' characters behind the cursor so
+ * the usual save cursor, try, setCursor(save) backtracking works as long as
+ * it doesn't go back further than that. If a failed match looked further
+ * ahead than the window holds it throws a ParseException rather than leave
+ * the cursor outside the window. When streaming, length() is the
+ * number of characters read so far and the methods that need the whole input,
+ * count(), lastIndexOf() and toCharArray(), are not supported.
  */
 public class Parser implements CharSequence {
 	public static final char EOF = (char)-1;
+	public static final int DEFAULT_WINDOW_SIZE = 8 * 1024;
+	public static final int DEFAULT_MARK_LIMIT = 1024;
+	/** The source if it's array backed, otherwise null */
 	private final char[] ca;
-	private final int length;
+	/** ca[offset + i] is the character at i */
+	private int offset;
+	/** The source if it's not array backed, otherwise null */
+	private final CharSequence sequence;
+	/** Number of characters available, when streaming: read so far */
+	private int length;
 	private int start;
+	/** Streaming input or null */
+	private final Reader reader;
+	/** Offset of the first character in the window, always 0 if not streaming */
+	private int base;
+	/** Number of characters to keep behind the cursor when refilling */
+	private final int markLimit;
+	private boolean eofRead;
+	/** Results of the numeric parsers */
+	private long longValue;
+	private double doubleValue;
+	private boolean parsed;
+	/** Reused by getSpan(), created when needed */
+	private Span span;
 
 	public Parser(String string) {
 		ca = string.toCharArray();
+		offset = 0;
+		sequence = null;
 		length = ca.length;
+		reader = null;
+		markLimit = 0;
+	}
+
+	/**
+	 * Wrap a character array without copying it.
+	 *
+	 * @param ca
+	 *            The characters to parse.
+	 */
+	public Parser(char[] ca) {
+		this(ca, 0, ca.length);
+	}
+
+	/**
+	 * Wrap a slice of a character array without copying it.
+	 *
+	 * @param ca
+	 *            The array containing the characters to parse.
+	 * @param offset
+	 *            The index in ca of the first character to parse.
+	 * @param length
+	 *            The number of characters to parse.
+	 */
+	public Parser(char[] ca, int offset, int length) {
+		if(offset < 0 || length < 0 || offset + length > ca.length) {
+			throw new StringIndexOutOfBoundsException(
+					"offset: " + offset + ", length: " + length + ", array length: " + ca.length);
+		}
+		this.ca = ca;
+		this.offset = offset;
+		this.length = length;
+		sequence = null;
+		reader = null;
+		markLimit = 0;
+	}
+
+	/**
+	 * Wrap the remaining characters of a CharBuffer, i.e. those from its
+	 * position to its limit, without copying them. Heap buffers, for example
+	 * one decoded from a memory mapped file, are accessed through their
+	 * backing array. The buffer's position and limit are not changed.
+	 *
+	 * @param buffer
+	 *            The buffer to parse.
+	 */
+	public Parser(CharBuffer buffer) {
+		length = buffer.remaining();
+		reader = null;
+		markLimit = 0;
+		if(buffer.hasArray()) {
+			ca = buffer.array();
+			offset = buffer.arrayOffset() + buffer.position();
+			sequence = null;
+		} else {
+			ca = null;
+			offset = 0;
+			sequence = buffer.duplicate();
+		}
+	}
+
+	/**
+	 * Wrap a CharSequence without copying it. A Text or a Parser are accessed
+	 * through their internal buffers, other sequences through charAt(). To
+	 * wrap a String without copying use {@link #wrap(CharSequence)}.
+	 *
+	 * @param sequence
+	 *            The characters to parse.
+	 */
+	public Parser(CharSequence sequence) {
+		length = sequence.length();
+		reader = null;
+		markLimit = 0;
+		if(sequence instanceof Text) {
+			ca = ((Text)sequence).getBuffer();
+			offset = 0;
+			this.sequence = null;
+		} else if(sequence instanceof Parser) {
+			final Parser parser = (Parser)sequence;
+			if(parser.reader != null) {
+				throw new InvalidCallException("Cannot wrap a streaming Parser");
+			}
+			ca = parser.ca;
+			offset = parser.offset;
+			this.sequence = parser.sequence;
+		} else if(sequence instanceof CharBuffer && ((CharBuffer)sequence).hasArray()) {
+			final CharBuffer buffer = (CharBuffer)sequence;
+			ca = buffer.array();
+			offset = buffer.arrayOffset() + buffer.position();
+			this.sequence = null;
+		} else {
+			ca = null;
+			offset = 0;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * Stream from a Reader using the default window size and mark limit.
+	 *
+	 * @param reader
+	 *            The source of the input, the caller is responsible for
+	 *            closing it.
+	 * @see #Parser(Reader, int, int)
+	 */
+	public Parser(Reader reader) {
+		this(reader, DEFAULT_WINDOW_SIZE, DEFAULT_MARK_LIMIT);
+	}
+
+	/**
+	 * Stream from a Reader through a fixed size window.
+	 *
+	 * @param reader
+	 *            The source of the input, the caller is responsible for
+	 *            closing it.
+	 * @param windowSize
+	 *            The number of characters buffered. This limits the length of
+	 *            the longest token plus look ahead.
+	 * @param markLimit
+	 *            The number of characters kept behind the cursor when the
+	 *            window is refilled. This limits how far back setCursor() can
+	 *            go. Must be less than the window size.
+	 */
+	public Parser(Reader reader, int windowSize, int markLimit) {
+		assert reader != null : "Null reader";
+		assert markLimit >= 0 && markLimit < windowSize : "Invalid mark limit: " + markLimit;
+
+		this.reader = reader;
+		this.markLimit = markLimit;
+		ca = new char[windowSize];
+		offset = 0;
+		length = 0;
+		sequence = null;
+	}
+
+	/**
+	 * Stream from a channel using the default window size and mark limit.
+	 *
+	 * @param channel
+	 *            The source of the input, the caller is responsible for
+	 *            closing it.
+	 * @param charset
+	 *            The character set used to decode the input.
+	 * @see #Parser(Reader, int, int)
+	 */
+	public Parser(ReadableByteChannel channel, Charset charset) {
+		this(channel, charset, DEFAULT_WINDOW_SIZE, DEFAULT_MARK_LIMIT);
+	}
+
+	/**
+	 * Stream from a channel through a fixed size window.
+	 *
+	 * @param channel
+	 *            The source of the input, the caller is responsible for
+	 *            closing it.
+	 * @param charset
+	 *            The character set used to decode the input.
+	 * @param windowSize
+	 *            The number of characters buffered.
+	 * @param markLimit
+	 *            The number of characters kept behind the cursor.
+	 * @see #Parser(Reader, int, int)
+	 */
+	public Parser(ReadableByteChannel channel, Charset charset, int windowSize, int markLimit) {
+		this(Channels.newReader(channel, charset.newDecoder(), -1), windowSize, markLimit);
+	}
+
+	/**
+	 * Create a Parser over any CharSequence, including a String, that never
+	 * copies the input.
+	 *
+	 * @param sequence
+	 *            The characters to parse.
+	 * @return A new Parser.
+	 */
+	public static Parser wrap(CharSequence sequence) {
+		return new Parser(sequence);
+	}
+
+	/**
+	 * Create a Parser over a slice of a character array without copying it.
+	 *
+	 * @param ca
+	 *            The array containing the characters to parse.
+	 * @param offset
+	 *            The index in ca of the first character to parse.
+	 * @param length
+	 *            The number of characters to parse.
+	 * @return A new Parser.
+	 */
+	public static Parser wrap(char[] ca, int offset, int length) {
+		return new Parser(ca, offset, length);
+	}
+
+	/**
+	 * @return True if the input is streamed from a Reader or a channel, in
+	 *         which case count(), lastIndexOf() and toCharArray() are not
+	 *         supported.
+	 */
+	public boolean isStreaming() {
+		return reader != null;
 	}
 
+	/**
+	 * @return The input as a String. When streaming this is only the
+	 *         characters currently in the window.
+	 */
 	@Override
 	public final String toString() {
-		return new String(ca);
+		return getString(base, length);
 	}
 
 	/**
@@ -41,10 +293,10 @@ public class Parser implements CharSequence {
 	 */
 	@Override
 	public char charAt(int offset) {
-		if(offset < 0 || offset >= length) {
+		if(offset < base || !available(offset)) {
 			throw new StringIndexOutOfBoundsException(length);
 		}
-		return ca[offset];
+		return at(offset);
 	}
 
 	/**
@@ -65,7 +317,7 @@ public class Parser implements CharSequence {
 	}
 
 	public String getString(int from, int to) {
-		if(from < 0) {
+		if(from < base) {
 			throw new StringIndexOutOfBoundsException(from);
 		}
 		if(to > length) {
@@ -74,13 +326,22 @@ public class Parser implements CharSequence {
 		if(from > to) {
 			throw new StringIndexOutOfBoundsException(to - from);
 		}
-		return new String(ca, from, to - from);
+		return ca == null ? sequence.subSequence(from, to).toString() : new String(ca, offset + from, to - from);
 	}
 
 	public int lastIndexOf(char c) {
-		int result = length - 1;
-		while(result >= 0 && ca[result] != c) {
-			result--;
+		checkNotStreaming();
+		int result;
+		if(ca == null) {
+			result = length - 1;
+			while(result >= 0 && at(result) != c) {
+				result--;
+			}
+		} else {
+			result = CharArrays.lastIndexOf(ca, offset, offset + length, c);
+			if(result >= 0) {
+				result -= offset;
+			}
 		}
 		return result;
 	}
@@ -147,28 +408,55 @@ public class Parser implements CharSequence {
 	public boolean consumeAscii(byte bitmap, int... constraints) {
 		final boolean result;
 
-		assert bitmap != 0 : "Missing bit map";
-
-		int from, to;
 		final int constraintsLength = constraints.length;
 		if(constraintsLength == 0) {
-			from = 0;
-			to = Integer.MAX_VALUE;
+			result = consumeAscii(bitmap, 0, Integer.MAX_VALUE);
 		} else if(constraintsLength == 1) {
-			from = to = constraints[0];
+			result = consumeAscii(bitmap, constraints[0], constraints[0]);
 		} else if(constraintsLength == 2) {
-			from = constraints[0];
-			to = constraints[1];
+			result = consumeAscii(bitmap, constraints[0], constraints[1]);
 		} else {
 			throw new RuntimeException("Too many constraints: " + constraintsLength);
 		}
 
+		return result;
+	}
+
+	/**
+	 * Consume at least one character of type 'bitmap' greedily. Unlike
+	 * consumeAscii(byte, int...) this doesn't create a varargs array.
+	 *
+	 * @see #consumeAscii(byte, int...)
+	 */
+	public boolean consumeAscii(byte bitmap) {
+		return consumeAscii(bitmap, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Consume exactly 'count' characters of type 'bitmap'.
+	 *
+	 * @see #consumeAscii(byte, int...)
+	 */
+	public boolean consumeAscii(byte bitmap, int count) {
+		return consumeAscii(bitmap, count, count);
+	}
+
+	/**
+	 * Consume at least 'from' and at most 'to' characters of type 'bitmap'
+	 * greedily.
+	 *
+	 * @see #consumeAscii(byte, int...)
+	 */
+	public boolean consumeAscii(byte bitmap, int from, int to) {
+		final boolean result;
+
+		assert bitmap != 0 : "Missing bit map";
 		assert from >= 0 && from <= to : "Invalid size constraints";
 
 		start = cursor;
 		int count = 0;
-		while((cursor + count) < length && count < to) {
-			final char c = ca[cursor + count];
+		while(count < to && available(cursor + count)) {
+			final char c = at(cursor + count);
 			if(c <= MAX_ASCII && (asciiTypeBits[c] & bitmap) != 0) {
 				count++;
 			} else {
@@ -186,10 +474,79 @@ public class Parser implements CharSequence {
 		return result;
 	}
 
+	/**
+	 * Consume at least one character in a CharClass greedily.
+	 *
+	 * @param charClass
+	 *            The class of characters to consume.
+	 * @return Return true if at least one character was consumed.
+	 * @see #consume(CharClass, int, int)
+	 */
+	public boolean consume(CharClass charClass) {
+		return consume(charClass, 1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Consume at least 'min' and at most 'max' characters in a CharClass
+	 * greedily. For example consume(CharClass.HEX_DIGIT, 4, 4) consumes
+	 * exactly four hex digits. The characters consumed can be retrieved with
+	 * getConsumed() or getSpan(). Nothing is created so this can be used in
+	 * tight loops.
+	 *
+	 * @param charClass
+	 *            The class of characters to consume.
+	 * @param min
+	 *            The minimum number of characters to consume, may be 0.
+	 * @param max
+	 *            The maximum number of characters to consume.
+	 * @return Return true if at least 'min' characters were consumed, if not
+	 *         the cursor is left unchanged.
+	 */
+	public boolean consume(CharClass charClass, int min, int max) {
+		final boolean result;
+
+		assert min >= 0 && min <= max : "Invalid size constraints";
+
+		start = cursor;
+		final long limit = (long)cursor + max;
+		if(ca == null) {
+			while(cursor < limit && cursor < length && charClass.matches(sequence.charAt(cursor))) {
+				cursor++;
+			}
+		} else {
+			// Scan what's in the buffer, if streaming read more and repeat
+			do {
+				final int to = (int)Math.min(length, limit);
+				cursor = charClass.span(ca, offset + cursor, offset + to) - offset;
+			} while(cursor == length && cursor < limit && available(cursor));
+		}
+
+		if(cursor - start >= min) {
+			result = true;
+		} else {
+			result = false;
+			restore(start);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param charClass
+	 *            The class to check.
+	 * @return True if the character at the cursor is in the CharClass.
+	 */
+	public boolean peek(CharClass charClass) {
+		return available(cursor) && charClass.matches(at(cursor));
+	}
+
 	/**
 	 * Reset parsing to being at offset 0.
 	 */
 	public void parseReset() {
+		if(base != 0) {
+			throw new ParseException("Cannot reset, the start of the input has been discarded");
+		}
 		cursor = 0;
 	}
 
@@ -199,38 +556,125 @@ public class Parser implements CharSequence {
 	 * @return The char at the current cursor location.
 	 */
 	public char parseChar() {
-		if(cursor >= length) {
+		if(!available(cursor)) {
 			throw new ParseException("Buffer overrun");
 		}
-		return ca[cursor++];
+		return at(cursor++);
 	}
 
-	public long parseLong() {
-		int result = 0;
-		final boolean negative = consume('-');
-		int count = 0;
+	/**
+	 * Parse an int: '0' | '-'? [1-9] [0-9]* without creating any objects.
+	 *
+	 * @return The int parsed.
+	 * @throws ParseException
+	 *             Thrown if there is no int at the cursor or it overflows.
+	 */
+	public int parseInt() {
+		if(!scanInteger(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+			throw new ParseException("Int not found");
+		}
+		return (int)longValue;
+	}
 
-		while(true) {
-			final char c = ca[cursor];
-			if(c >= '0' && c <= '9') {
-				result = result * 10 + (c - '0');
-				count++;
-			} else {
-				break;
-			}
+	/**
+	 * Try to parse an int, see {@link #parseInt()}.
+	 *
+	 * @return The int parsed or 0 if one could not be parsed in which case
+	 *         {@link #parsed()} returns false and the cursor is not moved.
+	 */
+	public int tryParseInt() {
+		parsed = scanInteger(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		return parsed ? (int)longValue : 0;
+	}
+
+	/**
+	 * Parse a long: '0' | '-'? [1-9] [0-9]* without creating any objects.
+	 *
+	 * @return The long parsed.
+	 * @throws ParseException
+	 *             Thrown if there is no long at the cursor or it overflows.
+	 */
+	public long parseLong() {
+		if(!scanInteger(Long.MIN_VALUE, Long.MAX_VALUE)) {
+			throw new ParseException("Long not found");
 		}
+		return longValue;
+	}
 
-		// ?todo This will accept "012" as an integer, hmmm...
+	/**
+	 * Try to parse a long, see {@link #parseLong()}.
+	 *
+	 * @return The long parsed or 0 if one could not be parsed in which case
+	 *         {@link #parsed()} returns false and the cursor is not moved.
+	 */
+	public long tryParseLong() {
+		parsed = scanInteger(Long.MIN_VALUE, Long.MAX_VALUE);
+		return parsed ? longValue : 0;
+	}
 
-		if(count == 0) {
-			throw new ParseException("Integer not found");
+	/**
+	 * Parse between 1 and 16 hexadecimal digits: [0-9A-Fa-f]+ without a
+	 * leading "0x". 16 digits are treated as an unsigned 64 bit value so
+	 * "FFFFFFFFFFFFFFFF" is -1.
+	 *
+	 * @return The value parsed.
+	 * @throws ParseException
+	 *             Thrown if there are no hex digits at the cursor or there are
+	 *             more than 16.
+	 */
+	public long parseHex() {
+		if(!scanHex()) {
+			throw new ParseException("Hex not found");
 		}
+		return longValue;
+	}
+
+	/**
+	 * Try to parse a hex value, see {@link #parseHex()}.
+	 *
+	 * @return The value parsed or 0 if one could not be parsed in which case
+	 *         {@link #parsed()} returns false and the cursor is not moved.
+	 */
+	public long tryParseHex() {
+		parsed = scanHex();
+		return parsed ? longValue : 0;
+	}
 
-		if(negative) {
-			result = -result;
+	/**
+	 * Parse a double in JSON format:
+	 * '-'? ( '0' | [1-9] [0-9]* ) ( '.' [0-9]+ )? ( [eE] [+-]? [0-9]+ )?
+	 *
+	 * Values with up to 15 significant digits and a small exponent, which is
+	 * nearly all of them in practice, are converted without creating any
+	 * objects. Others fall back to Double.parseDouble().
+	 *
+	 * @return The double parsed.
+	 * @throws ParseException
+	 *             Thrown if there is no number at the cursor.
+	 */
+	public double parseDouble() {
+		if(!scanDouble()) {
+			throw new ParseException("Double not found");
 		}
+		return doubleValue;
+	}
 
-		return result;
+	/**
+	 * Try to parse a double, see {@link #parseDouble()}.
+	 *
+	 * @return The double parsed or 0 if one could not be parsed in which case
+	 *         {@link #parsed()} returns false and the cursor is not moved.
+	 */
+	public double tryParseDouble() {
+		parsed = scanDouble();
+		return parsed ? doubleValue : 0;
+	}
+
+	/**
+	 * @return True if the last tryParseXxx() succeeded.
+	 */
+	public boolean parsed() {
+		return parsed;
 	}
 
 	/**
@@ -241,10 +685,10 @@ public class Parser implements CharSequence {
 	 *             cursor.
 	 */
 	public void consumeOrThrow(char c) {
-		if(cursor >= length) {
+		if(!available(cursor)) {
 			throw new ParseException("Buffer overrun");
 		}
-		if(ca[cursor] != c) {
+		if(at(cursor) != c) {
 			throw new ParseException("Character not found at cursor: " + c);
 		}
 	}
@@ -257,10 +701,10 @@ public class Parser implements CharSequence {
 	public boolean consume(char c) {
 		final boolean result;
 
-		if(cursor >= length) {
+		if(!available(cursor)) {
 			result = false;
 		} else {
-			if(ca[cursor] == c) {
+			if(at(cursor) == c) {
 				cursor++;
 				result = true;
 			} else {
@@ -282,11 +726,10 @@ public class Parser implements CharSequence {
 		assert string != null;
 
 		final int stringLength = string.length();
-		if(cursor + stringLength <= length) {
-			final char[] stringCa = string.toCharArray();
+		if(available(cursor + stringLength - 1)) {
 			result = true;
 			for(int i = 0; i < stringLength; i++) {
-				if(cursor + i >= length || ca[cursor + i] != stringCa[i]) {
+				if(at(cursor + i) != string.charAt(i)) {
 					result = false;
 					break;
 				}
@@ -312,8 +755,54 @@ public class Parser implements CharSequence {
 	 */
 	public boolean consumeUntil(char stop) {
 		start = cursor;
-		while(cursor < length && ca[cursor] != stop) {
-			cursor++;
+		if(ca == null) {
+			while(available(cursor) && at(cursor) != stop) {
+				cursor++;
+			}
+		} else {
+			// Scan what's in the buffer, if streaming read more and repeat
+			do {
+				final int found = CharArrays.indexOf(ca, offset + cursor, offset + length, stop);
+				if(found >= 0) {
+					cursor = found - offset;
+					break;
+				}
+				cursor = length;
+			} while(available(cursor));
+		}
+		return start != cursor;
+	}
+
+	/**
+	 * Advance the cursor until either the end of input or one of the stop
+	 * characters was found. Stop characters are not consumed. Pass a
+	 * pre-allocated array in loops to avoid creating one on each call.
+	 *
+	 * @param stops
+	 *            Stop characters, the search is fastest for 4 or fewer.
+	 * @return At least one character was consumed.
+	 */
+	public boolean consumeUntilAny(char... stops) {
+		start = cursor;
+		if(ca == null) {
+			outer: while(available(cursor)) {
+				final char c = at(cursor);
+				for(final char stop : stops) {
+					if(c == stop) {
+						break outer;
+					}
+				}
+				cursor++;
+			}
+		} else {
+			do {
+				final int found = CharArrays.indexOfAny(ca, offset + cursor, offset + length, stops);
+				if(found >= 0) {
+					cursor = found - offset;
+					break;
+				}
+				cursor = length;
+			} while(available(cursor));
 		}
 		return start != cursor;
 	}
@@ -328,7 +817,7 @@ public class Parser implements CharSequence {
 	 * @return Return true if there is no more input to consume.
 	 */
 	public boolean isEof() {
-		return cursor == length;
+		return !available(cursor);
 	}
 
 	/**
@@ -337,7 +826,7 @@ public class Parser implements CharSequence {
 	 *             Thrown if the cursor is at the end of input.
 	 */
 	public char peek() {
-		return cursor == length ? EOF : ca[cursor];
+		return available(cursor) ? at(cursor) : EOF;
 	}
 
 	/**
@@ -346,7 +835,7 @@ public class Parser implements CharSequence {
 	 * @return Return true if the character is at the cursor.
 	 */
 	public boolean peek(char c) {
-		return cursor + 1 < length && ca[cursor] == c;
+		return available(cursor + 1) && at(cursor) == c;
 	}
 
 	/**
@@ -363,7 +852,7 @@ public class Parser implements CharSequence {
 		} else {
 			result = true;
 			for(int i = 0; i < stringLength; i++) {
-				if(ca[cursor + i] != string.charAt(i)) {
+				if(at(cursor + i) != string.charAt(i)) {
 					result = false;
 					break;
 				}
@@ -378,11 +867,17 @@ public class Parser implements CharSequence {
 	 * @return The count of c characters in the buffer.
 	 */
 	public int count(char c) {
-		int result = 0;
-		for(int i = 0; i < length; i++) {
-			if(ca[i] == c) {
-				result++;
+		checkNotStreaming();
+		int result;
+		if(ca == null) {
+			result = 0;
+			for(int i = 0; i < length; i++) {
+				if(at(i) == c) {
+					result++;
+				}
 			}
+		} else {
+			result = CharArrays.count(ca, offset, offset + length, c);
 		}
 		return result;
 	}
@@ -394,15 +889,15 @@ public class Parser implements CharSequence {
 	public String parse(Checker checker) {
 
 		start = cursor;
-		while(cursor < length) {
-			final char c = ca[cursor];
+		while(available(cursor)) {
+			final char c = at(cursor);
 			if(!checker.isValid(cursor - start, c)) {
 				break;
 			}
 			cursor++;
 		}
 
-		return cursor == start ? null : new String(ca, start, cursor - start);
+		return cursor == start ? null : getString(start, cursor);
 	}
 
 	/**
@@ -411,6 +906,9 @@ public class Parser implements CharSequence {
 	 */
 	public void setCursor(int cursor) {
 		assert cursor >= 0 && cursor <= length;
+		if(cursor < base) {
+			throw new ParseException("Cannot set cursor to " + cursor + ", it is before the mark limit");
+		}
 		this.cursor = cursor;
 	}
 
@@ -420,12 +918,18 @@ public class Parser implements CharSequence {
 	 * @return Always returns true.
 	 */
 	public boolean ws() {
-		while(cursor < length) {
-			final char c = ca[cursor];
-			if(c != ' ' && c != '\n' && c != '\t') {
-				break;
+		if(ca == null) {
+			while(available(cursor)) {
+				final char c = at(cursor);
+				if(c != ' ' && c != '\n' && c != '\t') {
+					break;
+				}
+				cursor++;
 			}
-			cursor++;
+		} else {
+			do {
+				cursor = CharArrays.skipWhitespace(ca, offset + cursor, offset + length) - offset;
+			} while(cursor == length && available(cursor));
 		}
 		return true;
 	}
@@ -440,22 +944,22 @@ public class Parser implements CharSequence {
 	 */
 	public boolean consumeString() {
 		start = cursor;
-		if(cursor != length) {
+		if(available(cursor)) {
 			// Pick up the quote character...
-			final char quote = ca[cursor];
+			final char quote = at(cursor);
 			assert quote == '\'' || quote == '"' || quote == '`' : "Invalid quote: " + quote;
 
 			// Advance cursor until the an end condition is found...
 			while(true) {
 				cursor++;
 
-				if(cursor == length) {
+				if(!available(cursor)) {
 					// EOF
-					cursor = start;
+					restore(start);
 					break;
 				}
 
-				final char c = ca[cursor];
+				final char c = at(cursor);
 				if(c == quote) {
 					// Found terminating quote
 					cursor++; // To next character to parse
@@ -464,16 +968,16 @@ public class Parser implements CharSequence {
 
 				if(c == '\n') {
 					// End of line
-					cursor = start;
+					restore(start);
 					break;
 				}
 
 				if(c == '\\') {
 					// Escape: Assume anything can be escaped...
 					cursor++;
-					if(cursor == length) {
+					if(!available(cursor)) {
 						// EOF
-						cursor = start;
+						restore(start);
 						break;
 					}
 				}
@@ -491,7 +995,7 @@ public class Parser implements CharSequence {
 	public boolean consumeInt() {
 		final boolean result;
 
-		start = cursor;
+		final int save = cursor;
 		if(consume('0')) {
 			result = true;
 		} else {
@@ -501,8 +1005,9 @@ public class Parser implements CharSequence {
 		}
 
 		if(!result) {
-			cursor = start;
+			restore(save);
 		}
+		start = save;
 
 		return result;
 	}
@@ -516,11 +1021,11 @@ public class Parser implements CharSequence {
 	public boolean consumePint() {
 		final boolean result;
 
-		if(cursor == length) {
+		if(!available(cursor)) {
 			result = false;
 		} else {
 			start = cursor;
-			final char first = ca[cursor];
+			final char first = at(cursor);
 			consumeAscii(ASCII_0_9);
 			if(first == '0') {
 				if(cursor - start > 1) {
@@ -547,16 +1052,347 @@ public class Parser implements CharSequence {
 	 *         nothing was consumed.
 	 */
 	public String getConsumed() {
-		return new String(ca, start, cursor - start);
+		return getString(start, cursor);
+	}
+
+	/**
+	 * Get the last characters consumed without creating a String. This is the
+	 * allocation free equivalent of {@link #getConsumed()}.
+	 *
+	 * @return The Parser's Span set to the last characters consumed. The same
+	 *         Span is returned by all the getSpan() methods so it is only
+	 *         valid until the next call.
+	 * @see Span
+	 */
+	public Span getSpan() {
+		return getSpan(start, cursor);
+	}
+
+	/**
+	 * @param from
+	 *            Offset of first character.
+	 * @return The Parser's Span set to the characters from 'from' to the
+	 *         cursor.
+	 * @see #getSpan()
+	 */
+	public Span getSpan(int from) {
+		return getSpan(from, cursor);
+	}
+
+	/**
+	 * @param from
+	 *            Offset of first character.
+	 * @param to
+	 *            Offset after the last character.
+	 * @return The Parser's Span set to the characters from 'from' to 'to'.
+	 * @see #getSpan()
+	 */
+	public Span getSpan(int from, int to) {
+		if(from < base) {
+			throw new StringIndexOutOfBoundsException(from);
+		}
+		if(to > length) {
+			throw new StringIndexOutOfBoundsException(to);
+		}
+		if(from > to) {
+			throw new StringIndexOutOfBoundsException(to - from);
+		}
+		if(span == null) {
+			span = new Span(this);
+		}
+		return span.set(from, to);
+	}
+
+	/**
+	 * @return Offset of the first character consumed by the last consumeXxx(),
+	 *         parseXxx() call.
+	 */
+	public int start() {
+		return start;
 	}
 
 	/**
 	 * @return A character array copy of the currently buffered Text
 	 */
 	public char[] toCharArray() {
+		checkNotStreaming();
 		final char[] result = new char[length];
-		System.arraycopy(ca, 0, result, 0, length);
+		if(ca == null) {
+			for(int i = 0; i < length; i++) {
+				result[i] = sequence.charAt(i);
+			}
+		} else {
+			System.arraycopy(ca, offset, result, 0, length);
+		}
 		return result;
 	}
 
+	/**
+	 * @param index
+	 *            Offset from the start of the input.
+	 * @return True if there is a character at index, reading more input if
+	 *         streaming and necessary.
+	 */
+	private boolean available(int index) {
+		return index < length || reader != null && fill(index);
+	}
+
+	/**
+	 * Read from the reader until the character at index is in the window or
+	 * the end of input. If the window is full, characters before the mark
+	 * limit, and before start if the last token still fits, are discarded.
+	 *
+	 * @param index
+	 *            The index of the character needed.
+	 * @return True if the character at index is available.
+	 */
+	private boolean fill(int index) {
+		try {
+			while(index >= length && !eofRead) {
+				int filled = length - base;
+				if(filled == ca.length) {
+					int keep = cursor - markLimit;
+					if(start < keep && index - start < ca.length) {
+						keep = start;
+					}
+					if(keep <= base) {
+						throw new ParseException("Look ahead exceeds window size: " + ca.length);
+					}
+					final int discard = keep - base;
+					filled -= discard;
+					System.arraycopy(ca, discard, ca, 0, filled);
+					base = keep;
+					offset = -base;
+				}
+				final int read = reader.read(ca, filled, ca.length - filled);
+				if(read < 0) {
+					eofRead = true;
+				} else {
+					length += read;
+				}
+			}
+		} catch(final IOException e) {
+			throw new RuntimeException("Error reading input", e);
+		}
+		return index < length;
+	}
+
+	/**
+	 * Scan '0' | '-'? [1-9] [0-9]* into longValue. Digits are accumulated as
+	 * a negative number so that min, e.g. Integer.MIN_VALUE, can be parsed.
+	 *
+	 * @param min
+	 *            The minimum value allowed.
+	 * @param max
+	 *            The maximum value allowed.
+	 * @return True if an integer in range was found, otherwise false and the
+	 *         cursor is not moved.
+	 */
+	private boolean scanInteger(long min, long max) {
+		boolean result = false;
+
+		final int save = cursor;
+		start = save;
+		final boolean negative = consume('-');
+		if(available(cursor)) {
+			char c = at(cursor);
+			if(c == '0' && !negative) {
+				cursor++;
+				longValue = 0;
+				result = true;
+			} else if(c >= '1' && c <= '9') {
+				final long limit = negative ? min : -max;
+				final long multiplyLimit = limit / 10;
+				long accumulator = 0;
+				result = true;
+				do {
+					final int digit = c - '0';
+					if(accumulator < multiplyLimit) {
+						result = false;
+						break;
+					}
+					accumulator *= 10;
+					if(accumulator < limit + digit) {
+						result = false;
+						break;
+					}
+					accumulator -= digit;
+					cursor++;
+				} while(available(cursor) && (c = at(cursor)) >= '0' && c <= '9');
+				longValue = negative ? accumulator : -accumulator;
+			}
+		}
+
+		if(!result) {
+			restore(save);
+		}
+
+		return result;
+	}
+
+	private boolean scanHex() {
+		final int save = cursor;
+		start = save;
+		long accumulator = 0;
+		int count = 0;
+		while(available(cursor)) {
+			final char c = at(cursor);
+			if(c > MAX_ASCII || (asciiTypeBits[c] & ASCII_0_F) == 0) {
+				break;
+			}
+			if(++count > 16) {
+				break;
+			}
+			accumulator = (accumulator << 4) | (c <= '9' ? c - '0' : (c | 0x20) - 'a' + 10);
+			cursor++;
+		}
+
+		final boolean result = count > 0 && count <= 16;
+		if(result) {
+			longValue = accumulator;
+		} else {
+			restore(save);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Exact powers of 10 that can be represented by a double.
+	 */
+	private final static double[] powersOf10 = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+			1e21, 1e22
+	};
+
+	/**
+	 * Scan a JSON style number into doubleValue. The significand is
+	 * accumulated in a long and if it and the exponent are small enough the
+	 * result is exact as both can be represented exactly as a double and the
+	 * single multiplication or division is correctly rounded. Otherwise the
+	 * scanned text is handed to Double.parseDouble().
+	 *
+	 * @return True if a number was found, otherwise false and the cursor is
+	 *         not moved.
+	 */
+	private boolean scanDouble() {
+		final int save = cursor;
+		start = save;
+		final boolean negative = consume('-');
+
+		// Integer part...
+		if(!available(cursor)) {
+			restore(save);
+			return false;
+		}
+		long significand = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean exact = true;
+		char c = at(cursor);
+		if(c == '0') {
+			cursor++;
+		} else if(c >= '1' && c <= '9') {
+			do {
+				if(digits < 18) {
+					significand = significand * 10 + (c - '0');
+					digits++;
+				} else {
+					exponent++;
+					exact = false;
+				}
+				cursor++;
+			} while(available(cursor) && (c = at(cursor)) >= '0' && c <= '9');
+		} else {
+			restore(save);
+			return false;
+		}
+
+		// Fraction...
+		if(available(cursor + 1) && at(cursor) == '.' && (c = at(cursor + 1)) >= '0' && c <= '9') {
+			cursor++;
+			do {
+				if(significand == 0 && c == '0') {
+					// Leading zero, not significant
+					exponent--;
+				} else if(digits < 18) {
+					significand = significand * 10 + (c - '0');
+					digits++;
+					exponent--;
+				} else {
+					exact = false;
+				}
+				cursor++;
+			} while(available(cursor) && (c = at(cursor)) >= '0' && c <= '9');
+		}
+
+		// Exponent...
+		if(available(cursor) && ((c = at(cursor)) == 'e' || c == 'E')) {
+			final int saveE = cursor;
+			cursor++;
+			final boolean negativeE = consume('-');
+			if(!negativeE) {
+				consume('+');
+			}
+			if(available(cursor) && (c = at(cursor)) >= '0' && c <= '9') {
+				int e = 0;
+				do {
+					if(e < 100_000) {
+						e = e * 10 + (c - '0');
+					}
+					cursor++;
+				} while(available(cursor) && (c = at(cursor)) >= '0' && c <= '9');
+				exponent += negativeE ? -e : e;
+			} else {
+				restore(saveE);
+			}
+		}
+
+		final double value;
+		if(significand == 0 && exact) {
+			value = 0.0;
+		} else if(exact && digits <= 15 && exponent >= -22 && exponent <= 22) {
+			value = exponent >= 0
+					? significand * powersOf10[exponent]
+					: significand / powersOf10[-exponent];
+		} else {
+			final String text = getString(negative ? save + 1 : save, cursor);
+			value = Double.parseDouble(text);
+		}
+		doubleValue = negative ? -value : value;
+
+		return true;
+	}
+
+	/**
+	 * Move the cursor back to where a failed match started. When streaming,
+	 * looking ahead may have moved the window past it in which case the
+	 * cursor can't go back and the input is not parseable in this window.
+	 *
+	 * @param index
+	 *            Where to move the cursor back to.
+	 */
+	private void restore(int index) {
+		if(index < base) {
+			throw new ParseException("Look ahead exceeds window size: " + ca.length);
+		}
+		cursor = index;
+	}
+
+	private void checkNotStreaming() {
+		if(reader != null) {
+			throw new InvalidCallException("Not supported when streaming");
+		}
+	}
+
+	/**
+	 * @param index
+	 *            Offset from the start of the input, not range checked.
+	 * @return The character at index.
+	 */
+	char at(int index) {
+		return ca == null ? sequence.charAt(index) : ca[offset + index];
+	}
+
 }
@@ -0,0 +1,486 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.*;
+import java.util.stream.Collectors;
+import java.util.zip.*;
+
+/**
+ * An index of the resources on a class path. Every element, directory or
+ * JAR, is scanned once, the elements in parallel, and queries by regular
+ * expression or glob are answered from memory. The names are those
+ * FileU.getResources() has always returned: a directory's files are
+ * "/com/inexas/util/x.properties" and a JAR's entries are as named in the
+ * JAR, e.g. "com/inexas/util/x.properties".
+ *
+ * The index is a snapshot, refresh() rescans the directories and any JAR
+ * whose modified time or size has changed. An index can be given a cache
+ * file so a warm start reads the JARs' names from it instead of opening the
+ * JARs; directories are always scanned as they change without notice.
+ *
+ * Failures are per element: an element that is missing or can't be read is
+ * kept, in its place on the class path, but has no resources, and a cache
+ * that can't be written is logged and otherwise ignored.
+ */
+public class ResourceIndex {
+	/** Bump this if the cache format changes */
+	private final static int CACHE_VERSION = 1;
+	private static volatile ResourceIndex defaultIndex;
+	private final static Logger logger = Logger.getLogger(ResourceIndex.class.getName());
+
+	/**
+	 * A class path element and the names of its resources.
+	 */
+	private static class Element {
+		final String path;
+		final boolean directory;
+		final long lastModified, size;
+		/** Null if the element is missing or couldn't be read */
+		final String[] names;
+
+		Element(String path, boolean directory, long lastModified, long size, String[] names) {
+			this.path = path;
+			this.directory = directory;
+			this.lastModified = lastModified;
+			this.size = size;
+			this.names = names;
+		}
+
+		boolean isReadable() {
+			return names != null;
+		}
+
+		/**
+		 * @return True if this is a JAR that was read and hasn't changed since.
+		 *         Unreadable elements are never current so they're retried.
+		 */
+		boolean isCurrent(File file) {
+			return !directory
+					&& isReadable()
+					&& file.lastModified() == lastModified
+					&& file.length() == size;
+		}
+
+		boolean isCached() {
+			return !directory && isReadable();
+		}
+	}
+
+	private final String[] classPath;
+	private final File cache;
+	private volatile List<Element> elements;
+
+	/**
+	 * Index the class path of this JVM, java.class.path.
+	 *
+	 * @param cache
+	 *            A file to cache the JARs' names in, or null for no cache. It
+	 *            needn't exist and is rewritten if any JAR has changed.
+	 */
+	public ResourceIndex(File cache) {
+		this(System.getProperty("java.class.path", "."), cache);
+	}
+
+	/**
+	 * @param classPath
+	 *            The class path to index, elements separated by
+	 *            File.pathSeparator.
+	 * @param cache
+	 *            A file to cache the JARs' names in, or null for no cache. It
+	 *            needn't exist and is rewritten if any JAR has changed.
+	 */
+	public ResourceIndex(String classPath, File cache) {
+		this.classPath = Arrays.stream(classPath.split(Pattern.quote(File.pathSeparator)))
+				.filter(element -> element.length() > 0)
+				.toArray(String[]::new);
+		this.cache = cache;
+		final Map<String, Element> cached = cache != null && cache.isFile()
+				? load(cache)
+				: Collections.<String, Element> emptyMap();
+		scan(cached);
+	}
+
+	/**
+	 * @return The index of this JVM's class path, built on first use.
+	 */
+	public static ResourceIndex getDefault() {
+		ResourceIndex result = defaultIndex;
+		if(result == null) {
+			synchronized(ResourceIndex.class) {
+				result = defaultIndex;
+				if(result == null) {
+					result = new ResourceIndex(null);
+					defaultIndex = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Replace the default index, e.g. with one that has a cache file, before
+	 * the first FileU.getResources().
+	 *
+	 * @param index
+	 *            The new default index.
+	 */
+	public static void setDefault(ResourceIndex index) {
+		defaultIndex = index;
+	}
+
+	/**
+	 * Rescan the directories and any JAR that has changed since the index
+	 * was built.
+	 */
+	public void refresh() {
+		final Map<String, Element> current = new HashMap<>();
+		for(final Element element : elements) {
+			current.put(element.path, element);
+		}
+		scan(current);
+	}
+
+	/**
+	 * @param regexp
+	 *            A regular expression to match, e.g. ".*\\.properties".
+	 * @param allClasspath
+	 *            True search all classpath, false search only the first
+	 *            element of the class path. All the elements are scanned
+	 *            either way; if the first is missing or unreadable nothing is
+	 *            found, the search doesn't move on to the next.
+	 * @return The names that match in class path order.
+	 */
+	public List<String> find(String regexp, boolean allClasspath) {
+		final Pattern pattern;
+		try {
+			pattern = Pattern.compile(regexp);
+		} catch(final Exception e) {
+			throw new RuntimeException("Error parsing pattern", e);
+		}
+		return find(pattern, allClasspath);
+	}
+
+	/**
+	 * Find the names that match a glob: "*" matches within a directory, "**"
+	 * across directories, "?" one character, "[a-z]" a character class and
+	 * "{a,b}" either of a or b.
+	 *
+	 * @param glob
+	 *            The glob to match, e.g. "**&#47;*.properties".
+	 * @param allClasspath
+	 *            True search all classpath, false search only the first
+	 *            element of the class path. All the elements are scanned
+	 *            either way; if the first is missing or unreadable nothing is
+	 *            found, the search doesn't move on to the next.
+	 * @return The names that match in class path order.
+	 */
+	public List<String> glob(String glob, boolean allClasspath) {
+		return find(Pattern.compile(toRegexp(glob)), allClasspath);
+	}
+
+	/**
+	 * @return The number of resources indexed.
+	 */
+	public int size() {
+		int result = 0;
+		for(final Element element : elements) {
+			if(element.isReadable()) {
+				result += element.names.length;
+			}
+		}
+		return result;
+	}
+
+	private List<String> find(Pattern pattern, boolean allClasspath) {
+		final List<String> result = new ArrayList<>();
+
+		final List<Element> searched = elements;
+		final int count = allClasspath ? searched.size() : Math.min(1, searched.size());
+		final Matcher matcher = pattern.matcher("");
+		for(int i = 0; i < count; i++) {
+			final Element element = searched.get(i);
+			if(element.isReadable()) {
+				for(final String name : element.names) {
+					if(matcher.reset(name).matches()) {
+						result.add(name);
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Scan the class path reusing any of the given elements still current.
+	 */
+	private synchronized void scan(Map<String, Element> current) {
+		elements = Collections.unmodifiableList(Arrays.stream(classPath)
+				.parallel()
+				.map(path -> {
+					final File file = new File(path);
+					final Element element = current.get(path);
+					return element != null && element.isCurrent(file) ? element : scan(path, file);
+				})
+				.collect(Collectors.toList()));
+
+		if(cache != null) {
+			// Rewrite the cache if the JARs aren't exactly those it was read from
+			int reused = 0, jars = 0;
+			for(final Element element : elements) {
+				if(element.isCached()) {
+					jars++;
+					if(current.get(element.path) == element) {
+						reused++;
+					}
+				}
+			}
+			if(reused < jars || jars < current.values().stream().filter(Element::isCached).count()) {
+				save(cache);
+			}
+		}
+	}
+
+	/**
+	 * @return The element, with null names if it's missing or can't be read.
+	 */
+	private static Element scan(String path, File file) {
+		final Element result;
+
+		if(file.isDirectory()) {
+			result = new Element(path, true, 0, 0, scanDirectory(file.toPath()));
+		} else if(file.isFile()) {
+			// Stat before reading so a JAR changed during the scan is rescanned
+			final long lastModified = file.lastModified(), size = file.length();
+			result = new Element(path, false, lastModified, size, scanJar(file));
+		} else {
+			result = new Element(path, false, 0, 0, null);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The names of the files in the directory or null if it can't be
+	 *         read.
+	 */
+	private static String[] scanDirectory(Path root) {
+		String[] result;
+
+		final List<String> names = new ArrayList<>();
+
+		try {
+			Files.walkFileTree(
+					root,
+					EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+					Integer.MAX_VALUE,
+					new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+							if(!attributes.isDirectory()) {
+								final Text name = new Text();
+								for(final Path part : root.relativize(file)) {
+									name.append('/');
+									name.append(part.toString());
+								}
+								names.add(name.toString());
+							}
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult visitFileFailed(Path file, IOException e) {
+							// Links that loop or can't be read aren't resources
+							return FileVisitResult.CONTINUE;
+						}
+					});
+			result = names.toArray(new String[names.size()]);
+		} catch(final IOException e) {
+			logger.warning("Error reading directory: " + root + ": " + e);
+			result = null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The names of the JAR's entries or null if it can't be read.
+	 */
+	private static String[] scanJar(File file) {
+		String[] result;
+
+		try(final ZipFile zipFile = new ZipFile(file)) {
+			final List<String> names = new ArrayList<>();
+			final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while(entries.hasMoreElements()) {
+				names.add(entries.nextElement().getName());
+			}
+			result = names.toArray(new String[names.size()]);
+		} catch(final IOException e) {
+			logger.warning("Error reading JAR file: " + file.getAbsolutePath() + ": " + e);
+			result = null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The JARs in the cache by path; an unreadable or old cache is
+	 *         empty so the JARs are scanned again. A corrupt cache is logged.
+	 */
+	private static Map<String, Element> load(File file) {
+		final Map<String, Element> result = new HashMap<>();
+
+		// Read it all so available() is the bytes left to check counts against
+		final byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(file.toPath());
+		} catch(final IOException e) {
+			return result;
+		}
+
+		try(final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if(in.readInt() == CACHE_VERSION) {
+				// A JAR is at least an empty path, two longs and a name count
+				final int count = readCount(in, 2 + 8 + 8 + 4);
+				for(int i = 0; i < count; i++) {
+					final String path = in.readUTF();
+					final long lastModified = in.readLong();
+					final long size = in.readLong();
+					// A name is at least an empty string's length
+					final String[] names = new String[readCount(in, 2)];
+					for(int j = 0; j < names.length; j++) {
+						names[j] = in.readUTF();
+					}
+					result.put(path, new Element(path, false, lastModified, size, names));
+				}
+			}
+		} catch(final IOException | RuntimeException e) {
+			logger.warning("Error reading file: " + file.getAbsolutePath() + ": " + e);
+			result.clear();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return A count of things at least minimumSize bytes long that must
+	 *         all fit in what's left of the stream
+	 */
+	private static int readCount(DataInputStream in, int minimumSize) throws IOException {
+		final int result = in.readInt();
+		if(result < 0 || result > in.available() / minimumSize) {
+			throw new StreamCorruptedException("Invalid count: " + result);
+		}
+		return result;
+	}
+
+	/**
+	 * Write the readable JARs to a temporary file next to the cache then
+	 * rename it so another JVM never reads a half written cache. The cache is
+	 * only an optimization so failing to write it is logged, not thrown.
+	 */
+	private void save(File file) {
+		final List<Element> jars = elements.stream()
+				.filter(Element::isCached)
+				.collect(Collectors.toList());
+		final Path target = file.getAbsoluteFile().toPath();
+		Path temporary = null;
+		try {
+			temporary = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+			write(temporary.toFile(), jars);
+			try {
+				Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(final AtomicMoveNotSupportedException e) {
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch(final IOException e) {
+			logger.warning("Error writing file: " + target + ": " + e);
+			if(temporary != null) {
+				temporary.toFile().delete();
+			}
+		}
+	}
+
+	private static void write(File file, List<Element> jars) throws IOException {
+		try(final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(CACHE_VERSION);
+			out.writeInt(jars.size());
+			for(final Element jar : jars) {
+				out.writeUTF(jar.path);
+				out.writeLong(jar.lastModified);
+				out.writeLong(jar.size);
+				out.writeInt(jar.names.length);
+				for(final String name : jar.names) {
+					out.writeUTF(name);
+				}
+			}
+		}
+	}
+
+	static String toRegexp(String glob) {
+		final Text result = new Text();
+
+		boolean inGroup = false, inClass = false;
+		final int length = glob.length();
+		for(int i = 0; i < length; i++) {
+			final char c = glob.charAt(i);
+			if(inClass) {
+				result.append(c == '\\' ? "\\\\" : String.valueOf(c));
+				inClass = c != ']';
+			} else {
+				switch(c) {
+				case '*':
+					if(i + 1 < length && glob.charAt(i + 1) == '*') {
+						result.append(".*");
+						i++;
+					} else {
+						result.append("[^/]*");
+					}
+					break;
+
+				case '?':
+					result.append("[^/]");
+					break;
+
+				case '[':
+					result.append('[');
+					if(i + 1 < length && glob.charAt(i + 1) == '!') {
+						result.append('^');
+						i++;
+					}
+					inClass = true;
+					break;
+
+				case '{':
+					result.append("(?:");
+					inGroup = true;
+					break;
+
+				case '}':
+					result.append(inGroup ? ")" : "\\}");
+					inGroup = false;
+					break;
+
+				case ',':
+					result.append(inGroup ? "|" : ",");
+					break;
+
+				default:
+					if("\\.^$+()|".indexOf(c) >= 0) {
+						result.append('\\');
+					}
+					result.append(c);
+				}
+			}
+		}
+
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,343 @@
+package com.inexas.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * A Rule is an expression in a grammar that can be matched against a Parser.
+ * Rules are built from the factory methods in this class: terminals such as
+ * ch(), string() and chars() are combined with sequence(), choice(),
+ * optional() and repeat(); capture() records where a sub-rule matched so the
+ * caller can retrieve it from the {@link Match}. For example a cardinality
+ * such as "0..*" is:
+ *
+ * <pre>
+ * final static Rule cardinality = Rule.choice(
+ * 		Rule.ch('*'),
+ * 		Rule.sequence(
+ * 				Rule.capture(FROM, Rule.of(Parser::consumePint)),
+ * 				Rule.string(".."),
+ * 				Rule.choice(Rule.ch('*'), Rule.capture(TO, Rule.of(Parser::consumePint)))));
+ * </pre>
+ *
+ * A Rule either matches, advancing the parser's cursor past what it matched,
+ * or fails and leaves the cursor and captures as they were. Choices are
+ * ordered, the first alternative that matches wins, and repeats are greedy
+ * so the grammars are PEGs (parsing expression grammars).
+ *
+ * Rules are immutable once built and can be shared between threads; keep them
+ * in static finals. Use reference() to build recursive grammars. Rules that
+ * may be tried repeatedly at the same position by different alternatives can
+ * be wrapped with memo(), the Match then remembers the result for each
+ * position so that each is only parsed once (packrat parsing) which keeps
+ * the time linear in the length of the input.
+ */
+public abstract class Rule {
+	private final static AtomicInteger memoIds = new AtomicInteger();
+
+	/**
+	 * A placeholder for a rule that has not been defined yet, used to build
+	 * recursive grammars. Call set() before the grammar is used.
+	 */
+	public static class Reference extends Rule {
+		private Rule rule;
+
+		/**
+		 * @param rule
+		 *            The rule this is a reference to.
+		 */
+		public void set(Rule rule) {
+			assert this.rule == null : "Reference already set";
+			this.rule = rule;
+		}
+
+		@Override
+		boolean match(Match match) {
+			assert rule != null : "Reference not set";
+			return rule.match(match);
+		}
+	}
+
+	/**
+	 * @param c
+	 *            The character to match.
+	 * @return A rule that matches a single character.
+	 */
+	public static Rule ch(char c) {
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				return match.parser.consume(c);
+			}
+		};
+	}
+
+	/**
+	 * @param string
+	 *            The string to match.
+	 * @return A rule that matches a string exactly.
+	 */
+	public static Rule string(String string) {
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				return match.parser.consume(string);
+			}
+		};
+	}
+
+	/**
+	 * @param charClass
+	 *            The class of characters to match.
+	 * @return A rule that matches one or more characters in a CharClass.
+	 */
+	public static Rule chars(CharClass charClass) {
+		return chars(charClass, 1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param charClass
+	 *            The class of characters to match.
+	 * @param min
+	 *            The minimum number of characters.
+	 * @param max
+	 *            The maximum number of characters.
+	 * @return A rule that greedily matches between min and max characters in a
+	 *         CharClass.
+	 */
+	public static Rule chars(CharClass charClass, int min, int max) {
+		assert min >= 0 && min <= max : "Invalid size constraints";
+
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				return match.parser.consume(charClass, min, max);
+			}
+		};
+	}
+
+	/**
+	 * Adapt any of the Parser's consumeXxx() methods, or anything else that
+	 * advances the cursor and returns true if it matched. The cursor is
+	 * restored if the predicate returns false.
+	 *
+	 * @param predicate
+	 *            For example Parser::consumeString.
+	 * @return A rule that matches if the predicate returns true.
+	 */
+	public static Rule of(Predicate<Parser> predicate) {
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				final boolean result;
+
+				final Parser parser = match.parser;
+				final int save = parser.cursor();
+				if(predicate.test(parser)) {
+					result = true;
+				} else {
+					result = false;
+					parser.setCursor(save);
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * @param rules
+	 *            The rules to match in order.
+	 * @return A rule that matches if all the rules match one after the other.
+	 */
+	public static Rule sequence(Rule... rules) {
+		assert rules.length > 0 : "Empty sequence";
+
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				boolean result = true;
+
+				final int save = match.parser.cursor();
+				final int mark = match.mark();
+				for(final Rule rule : rules) {
+					if(!rule.match(match)) {
+						result = false;
+						match.undo(mark);
+						match.parser.setCursor(save);
+						break;
+					}
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * @param alternatives
+	 *            The rules to try in order.
+	 * @return A rule that matches the first of the alternatives that matches.
+	 */
+	public static Rule choice(Rule... alternatives) {
+		assert alternatives.length > 0 : "Empty choice";
+
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				boolean result = false;
+
+				for(final Rule rule : alternatives) {
+					if(rule.match(match)) {
+						result = true;
+						break;
+					}
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * @param rule
+	 *            The optional rule.
+	 * @return A rule that always matches, consuming whatever rule matches.
+	 */
+	public static Rule optional(Rule rule) {
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				rule.match(match);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param rule
+	 *            The rule to repeat.
+	 * @param min
+	 *            The minimum number of repetitions.
+	 * @param max
+	 *            The maximum number of repetitions, e.g. Cardinality.MANY.
+	 * @return A rule that greedily matches between min and max repetitions of
+	 *         rule.
+	 */
+	public static Rule repeat(Rule rule, int min, int max) {
+		assert min >= 0 && min <= max : "Invalid repeat: " + min + ".." + max;
+
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				final boolean result;
+
+				final Parser parser = match.parser;
+				final int save = parser.cursor();
+				final int mark = match.mark();
+				int count = 0;
+				while(count < max) {
+					final int before = parser.cursor();
+					if(!rule.match(match) || parser.cursor() == before) {
+						// Stop on failure or on an empty match, which would loop
+						break;
+					}
+					count++;
+				}
+
+				if(count >= min) {
+					result = true;
+				} else {
+					result = false;
+					match.undo(mark);
+					parser.setCursor(save);
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * @param slot
+	 *            The slot to record the match in, 0 to the number of slots
+	 *            the Match was created with - 1.
+	 * @param rule
+	 *            The rule to capture.
+	 * @return A rule that matches rule and records the range it matched.
+	 * @see Match#getString(int)
+	 */
+	public static Rule capture(int slot, Rule rule) {
+		assert slot >= 0 : "Invalid slot: " + slot;
+
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				final boolean result;
+
+				final int start = match.parser.cursor();
+				if(rule.match(match)) {
+					result = true;
+					match.capture(slot, start, match.parser.cursor());
+				} else {
+					result = false;
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * @return A Reference that can be used in place of a rule that will be
+	 *         defined later.
+	 */
+	public static Reference reference() {
+		return new Reference();
+	}
+
+	/**
+	 * @return A rule that matches the same as this one but remembers the
+	 *         result at each position so the input is only parsed once
+	 *         however many times the rule is tried there.
+	 */
+	public Rule memo() {
+		final Rule rule = this;
+		final int id = memoIds.incrementAndGet();
+
+		return new Rule() {
+			@Override
+			boolean match(Match match) {
+				final boolean result;
+
+				final Parser parser = match.parser;
+				final int start = parser.cursor();
+				final int[] entry = match.getMemo(id, start);
+				if(entry == null) {
+					final int mark = match.mark();
+					result = rule.match(match);
+					match.putMemo(id, start, result ? parser.cursor() : -1, mark);
+				} else if(entry[0] < 0) {
+					result = false;
+				} else {
+					result = true;
+					match.replay(entry);
+				}
+
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Try to match this rule at the parser's cursor.
+	 *
+	 * @param match
+	 *            The state of the parse.
+	 * @return True if the rule matched in which case the cursor has been
+	 *         advanced past it, otherwise false and the cursor and captures
+	 *         are as they were.
+	 */
+	abstract boolean match(Match match);
+
+}
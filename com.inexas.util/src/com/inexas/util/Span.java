@@ -0,0 +1,190 @@
+package com.inexas.util;
+
+/**
+ * A Span is a mutable view of a range of characters in a Parser. It lets
+ * tokens be compared, hashed and looked up, see {@link Interner}, without
+ * creating a String for each one.
+ *
+ * Parser.getSpan() returns the same Span each time so a Span is only valid
+ * until the next call; use toString() or Interner.intern() to keep the
+ * characters. When the Parser is streaming the Span is only valid while its
+ * characters are in the Parser's window, i.e. until more input is read.
+ *
+ * The hash code is calculated the same way as String's so a Span and a String
+ * with the same characters have the same hash code. Equality with another
+ * Span is based on the characters, not the range, but as a Span is mutable it
+ * should not be used as a key in a collection. A Span never equals a String,
+ * use contentEquals() to compare the characters.
+ */
+public class Span implements CharSequence {
+	private final Parser parser;
+	private int start;
+	private int end;
+
+	/**
+	 * Create an empty Span over a Parser.
+	 *
+	 * @param parser
+	 *            The Parser to view.
+	 */
+	public Span(Parser parser) {
+		assert parser != null;
+		this.parser = parser;
+	}
+
+	/**
+	 * Set the range of characters viewed.
+	 *
+	 * @param from
+	 *            Offset in the parser of the first character.
+	 * @param to
+	 *            Offset in the parser after the last character.
+	 * @return this
+	 */
+	public Span set(int from, int to) {
+		assert from >= 0 && from <= to && to <= parser.length() : "Invalid span: " + from + ".." + to;
+		start = from;
+		end = to;
+		return this;
+	}
+
+	/**
+	 * @return Offset in the parser of the first character.
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * @return Offset in the parser after the last character.
+	 */
+	public int end() {
+		return end;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	/**
+	 * @return True if the span is empty.
+	 */
+	public boolean isEmpty() {
+		return start == end;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public char charAt(int index) {
+		if(index < 0 || index >= end - start) {
+			throw new StringIndexOutOfBoundsException(index);
+		}
+		return parser.at(start + index);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if(from < 0 || from > to || to > end - start) {
+			throw new StringIndexOutOfBoundsException("from: " + from + ", to: " + to + ", length: " + (end - start));
+		}
+		return parser.getString(start + from, start + to);
+	}
+
+	/**
+	 * @param sequence
+	 *            The characters to compare with.
+	 * @return True if the span contains exactly the same characters as the
+	 *         sequence.
+	 */
+	public boolean contentEquals(CharSequence sequence) {
+		boolean result;
+
+		final int length = end - start;
+		if(sequence.length() == length) {
+			result = true;
+			for(int i = 0; i < length; i++) {
+				if(parser.at(start + i) != sequence.charAt(i)) {
+					result = false;
+					break;
+				}
+			}
+		} else {
+			result = false;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param string
+	 *            The String to compare with.
+	 * @return True if the span contains the same characters as the string
+	 *         ignoring case, each pair of characters compared after
+	 *         Character.toLowerCase().
+	 */
+	public boolean equalsIgnoreCase(String string) {
+		boolean result;
+
+		final int length = end - start;
+		if(string.length() == length) {
+			result = true;
+			for(int i = 0; i < length; i++) {
+				final char c1 = parser.at(start + i);
+				final char c2 = string.charAt(i);
+				if(c1 != c2 && Character.toLowerCase(c1) != Character.toLowerCase(c2)) {
+					result = false;
+					break;
+				}
+			}
+		} else {
+			result = false;
+		}
+
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object rhsObject) {
+		final boolean result;
+
+		if(this == rhsObject) {
+			result = true;
+		} else if(rhsObject == null || !(rhsObject instanceof Span)) {
+			result = false;
+		} else {
+			result = contentEquals((Span)rhsObject);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The same value as toString().hashCode() would.
+	 */
+	@Override
+	public int hashCode() {
+		int result = 0;
+		for(int i = start; i < end; i++) {
+			result = 31 * result + parser.at(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The characters as a new String.
+	 */
+	@Override
+	public String toString() {
+		return parser.getString(start, end);
+	}
+
+}
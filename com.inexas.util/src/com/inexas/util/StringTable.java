@@ -0,0 +1,231 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * An immutable map of Strings to Strings as an open addressing hash table.
+ * A table can be written to a file and memory mapped back, e.g. by a later
+ * run, without decoding it: a mapped table makes a key's Strings when it is
+ * first read and keeps them. Reads take no locks and, once the Strings are
+ * made, are a hash compare and an equals().
+ *
+ * The file layout, all ints big-endian:
+ *
+ * <pre>
+ * MAGIC VERSION count mask
+ * slots[mask + 1]        the offset of a slot's entry or 0 if empty
+ * entries...             hash keyLength valueLength key-chars value-chars
+ * </pre>
+ */
+class StringTable {
+	private final static int MAGIC = 0x54425354;
+	private final static int VERSION = 1;
+	private final static int HEADER = 4 * 4;
+
+	private final int count, mask;
+	/**
+	 * The keys and values by slot. A mapped table fills them as they are
+	 * read: racy but Strings are safely published and any thread makes the
+	 * same String.
+	 */
+	private final String[] keys, values;
+	/** The mapped file or null if the table was built on the heap */
+	private final ByteBuffer buffer;
+
+	private StringTable(int count, int mask, String[] keys, String[] values, ByteBuffer buffer) {
+		this.count = count;
+		this.mask = mask;
+		this.keys = keys;
+		this.values = values;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * @param map
+	 *            The keys and values to put in the table.
+	 * @return A table on the heap.
+	 */
+	static StringTable of(Map<String, String> map) {
+		// At most half full so probes are short
+		final int slots = Integer.highestOneBit(Math.max(map.size(), 1) * 2 - 1) << 1;
+		final String[] keys = new String[slots], values = new String[slots];
+		for(final Map.Entry<String, String> entry : map.entrySet()) {
+			final String key = entry.getKey();
+			int slot = slot(key.hashCode(), slots - 1);
+			while(keys[slot] != null) {
+				slot = (slot + 1) & slots - 1;
+			}
+			keys[slot] = key;
+			values[slot] = entry.getValue();
+		}
+		return new StringTable(map.size(), slots - 1, keys, values, null);
+	}
+
+	/**
+	 * @param file
+	 *            A file written by write().
+	 * @return The table mapped from the file.
+	 */
+	static StringTable map(File file) {
+		final ByteBuffer buffer;
+		try(final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} catch(final IOException e) {
+			throw new RuntimeException("Error reading file: " + file.getAbsolutePath(), e);
+		}
+		if(buffer.limit() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new RuntimeException("Not a string table, or an old one: " + file.getAbsolutePath());
+		}
+		final int slots = buffer.getInt(12) + 1;
+		return new StringTable(buffer.getInt(8), slots - 1, new String[slots], new String[slots], buffer);
+	}
+
+	/**
+	 * @param file
+	 *            The file to write the table to.
+	 */
+	void write(File file) {
+		final ByteBuffer bytes = buffer == null ? encode() : buffer.duplicate();
+		bytes.clear();
+		try(final FileChannel channel = FileChannel.open(
+				file.toPath(),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			while(bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		} catch(final IOException e) {
+			throw new RuntimeException("Error writing file: " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * @param key
+	 *            The key to look up.
+	 * @return The key's value or null if it has none.
+	 */
+	String get(String key) {
+		String result = null;
+
+		final int hash = key.hashCode();
+		int slot = slot(hash, mask);
+		while(true) {
+			final String candidate = keys[slot];
+			if(candidate != null) {
+				if(candidate.hashCode() == hash && candidate.equals(key)) {
+					result = value(slot);
+					break;
+				}
+			} else {
+				final int entry = buffer == null ? 0 : buffer.getInt(HEADER + slot * 4);
+				if(entry == 0) {
+					break;
+				}
+				if(buffer.getInt(entry) == hash && keyEquals(entry, key)) {
+					keys[slot] = key;
+					result = value(slot);
+					break;
+				}
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return result;
+	}
+
+	int size() {
+		return count;
+	}
+
+	/**
+	 * @return The keys and values, in no particular order.
+	 */
+	Map<String, String> toMap() {
+		final Map<String, String> result = new HashMap<>();
+		for(int slot = 0; slot <= mask; slot++) {
+			String key = keys[slot];
+			if(key == null && buffer != null) {
+				final int entry = buffer.getInt(HEADER + slot * 4);
+				if(entry != 0) {
+					key = chars(entry + 12, buffer.getInt(entry + 4));
+				}
+			}
+			if(key != null) {
+				result.put(key, value(slot));
+			}
+		}
+		return result;
+	}
+
+	private String value(int slot) {
+		String result = values[slot];
+		if(result == null) {
+			final int entry = buffer.getInt(HEADER + slot * 4);
+			result = chars(entry + 12 + 2 * buffer.getInt(entry + 4), buffer.getInt(entry + 8));
+			values[slot] = result;
+		}
+		return result;
+	}
+
+	private boolean keyEquals(int entry, String key) {
+		boolean result = buffer.getInt(entry + 4) == key.length();
+		final int chars = entry + 12;
+		for(int i = 0; result && i < key.length(); i++) {
+			result = buffer.getChar(chars + 2 * i) == key.charAt(i);
+		}
+		return result;
+	}
+
+	private String chars(int offset, int length) {
+		final char[] result = new char[length];
+		for(int i = 0; i < length; i++) {
+			result[i] = buffer.getChar(offset + 2 * i);
+		}
+		return new String(result);
+	}
+
+	private ByteBuffer encode() {
+		long size = HEADER + (mask + 1) * 4L;
+		for(int slot = 0; slot <= mask; slot++) {
+			if(keys[slot] != null) {
+				size += 12 + 2L * (keys[slot].length() + values[slot].length());
+			}
+		}
+		if(size > Integer.MAX_VALUE) {
+			throw new RuntimeException("Too many strings to write a table: " + count);
+		}
+
+		final ByteBuffer result = ByteBuffer.allocate((int)size);
+		result.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(mask);
+		result.position(HEADER + (mask + 1) * 4);
+		for(int slot = 0; slot <= mask; slot++) {
+			final String key = keys[slot];
+			if(key != null) {
+				final String value = values[slot];
+				result.putInt(HEADER + slot * 4, result.position());
+				result.putInt(key.hashCode()).putInt(key.length()).putInt(value.length());
+				for(int i = 0; i < key.length(); i++) {
+					result.putChar(key.charAt(i));
+				}
+				for(int i = 0; i < value.length(); i++) {
+					result.putChar(value.charAt(i));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static int slot(int hash, int mask) {
+		// Similar keys have similar hashes, scatter them or they cluster
+		final int scattered = hash * 0x9E3779B9;
+		return (scattered ^ scattered >>> 16) & mask;
+	}
+
+}
@@ -5,7 +5,6 @@ import java.security.*;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
-import com.google.gson.Gson;
 import com.inexas.exception.UnexpectedException;
 import com.inexas.util.ReflectionU.ReflectException;
 
@@ -37,11 +36,11 @@ public class StringU {
 
 	public static String getGetterName(String name) {
 		assert name != null && name.length() > 0;
-		final Text sb = new Text();
+		final Text sb = TextPool.SHARED.acquire(true);
 		sb.append("get");
 		sb.append(Character.toUpperCase(name.charAt(0)));
 		sb.append(name.substring(1));
-		return sb.toString();
+		return TextPool.SHARED.toString(sb);
 	}
 
 	public static int crc(String string) {
@@ -61,11 +60,11 @@ public class StringU {
 
 	public static String toCamelCase(String string) {
 		final String[] parts = string.split("_");
-		final Text sb = new Text();
+		final Text sb = TextPool.SHARED.acquire(true);
 		for(final String part : parts) {
 			sb.append(toProperCase(part));
 		}
-		return sb.toString();
+		return TextPool.SHARED.toString(sb);
 	}
 
 	public static String toProperCase(String string) {
@@ -315,7 +314,7 @@ public class StringU {
 	}
 
 	public static String toDelimitedString(Collection<? extends Object> items) {
-		final Text result = new Text();
+		final Text result = TextPool.SHARED.acquire(true);
 		boolean delimiter = false;
 		for(final Object item : items) {
 			if(delimiter) {
@@ -325,11 +324,11 @@ public class StringU {
 			}
 			result.append(item.toString());
 		}
-		return result.toString();
+		return TextPool.SHARED.toString(result);
 	}
 
 	public static String toDelimitedString(Object[] items) {
-		final Text result = new Text();
+		final Text result = TextPool.SHARED.acquire(true);
 		boolean delimiter = false;
 		for(final Object item : items) {
 			if(delimiter) {
@@ -339,7 +338,7 @@ public class StringU {
 			}
 			result.append(item.toString());
 		}
-		return result.toString();
+		return TextPool.SHARED.toString(result);
 	}
 
 	public static String stringify(Object[] items) {
@@ -348,7 +347,7 @@ public class StringU {
 		if(items == null) {
 			result = null;
 		} else {
-			final Text t = new Text(false);
+			final Text t = TextPool.SHARED.acquire(false);
 			for(final Object item : items) {
 				t.delimit();
 				if(item == null) {
@@ -370,7 +369,7 @@ public class StringU {
 					}
 				}
 			}
-			result = t.toString();
+			result = TextPool.SHARED.toString(t);
 		}
 
 		return result;
@@ -406,7 +405,7 @@ public class StringU {
 		if(collection == null) {
 			result = null;
 		} else {
-			final Text sb = new Text(pretty);
+			final Text sb = TextPool.SHARED.acquire(pretty);
 			for(final Object item : collection) {
 				sb.delimit();
 				if(item == null) {
@@ -428,7 +427,7 @@ public class StringU {
 					}
 				}
 			}
-			result = sb.toString();
+			result = TextPool.SHARED.toString(sb);
 		}
 
 		return result;
@@ -440,7 +439,7 @@ public class StringU {
 			result = null;
 		} else {
 			final List<String> array = new ArrayList<>();
-			final Text t = new Text();
+			final Text t = TextPool.SHARED.acquire(true);
 			final char[] ca = commaDelimitedStrings.toCharArray();
 			final int length = ca.length;
 			for(int i = 0; i < length; i++) {
@@ -482,7 +481,7 @@ public class StringU {
 					break;
 				}
 			}
-			array.add(t.toString());
+			array.add(TextPool.SHARED.toString(t));
 			result = array.toArray(new String[array.size()]);
 		}
 		return result;
@@ -510,7 +509,7 @@ public class StringU {
 		if(string == null) {
 			result = null;
 		} else {
-			final Text t = new Text();
+			final Text t = TextPool.SHARED.acquire(true);
 			if(quote) {
 				t.append(quoteChar);
 			}
@@ -524,7 +523,7 @@ public class StringU {
 			if(quote) {
 				t.append(quoteChar);
 			}
-			result = t.toString();
+			result = TextPool.SHARED.toString(t);
 		}
 
 		return result;
@@ -548,7 +547,7 @@ public class StringU {
 				start = 0;
 				length = ca.length;
 			}
-			final Text sb = new Text();
+			final Text sb = TextPool.SHARED.acquire(true);
 			for(int i = start; i < length; i++) {
 				final char c = ca[i];
 				if(c == quoteChar || c == '\\') {
@@ -556,7 +555,7 @@ public class StringU {
 				}
 				sb.append(c);
 			}
-			result = sb.toString();
+			result = TextPool.SHARED.toString(sb);
 		}
 
 		return result;
@@ -577,7 +576,7 @@ public class StringU {
 		if(map == null) {
 			result = null;
 		} else {
-			final Text sb = new Text();
+			final Text sb = TextPool.SHARED.acquire(true);
 			boolean delimit = false;
 			for(final Entry<String, Class<T>> entry : map.entrySet()) {
 				if(delimit) {
@@ -589,7 +588,7 @@ public class StringU {
 				sb.append(':');
 				sb.append(entry.getValue().getName());
 			}
-			result = sb.toString();
+			result = TextPool.SHARED.toString(sb);
 		}
 		return result;
 	}
@@ -601,8 +600,8 @@ public class StringU {
 		} else {
 			try {
 				result = new HashMap<>();
-				final Text key = new Text();
-				final Text className = new Text();
+				final Text key = TextPool.SHARED.acquire(true);
+				final Text className = TextPool.SHARED.acquire(true);
 				boolean buildKey = true;
 				for(final char c : string.toCharArray()) {
 					if(c == ':') {
@@ -620,9 +619,9 @@ public class StringU {
 						}
 					}
 				}
-				final String name = className.toString();
+				final String name = TextPool.SHARED.toString(className);
 				final Class<T> clazz = ReflectionU.getClass(name, type);
-				result.put(key.toString(), clazz);
+				result.put(TextPool.SHARED.toString(key), clazz);
 			} catch(final ReflectException e) {
 				throw new RuntimeException("Error loading", e);
 			}
@@ -635,12 +634,12 @@ public class StringU {
 		if(array == null) {
 			result = null;
 		} else {
-			final Text t = new Text(false);
+			final Text t = TextPool.SHARED.acquire(false);
 			for(final int i : array) {
 				t.delimit();
 				t.append(i);
 			}
-			result = t.toString();
+			result = TextPool.SHARED.toString(t);
 		}
 		return result;
 	}
@@ -650,12 +649,12 @@ public class StringU {
 		if(array == null) {
 			result = null;
 		} else {
-			final Text t = new Text();
+			final Text t = TextPool.SHARED.acquire(true);
 			for(final long l : array) {
 				t.delimit();
 				t.append(l);
 			}
-			result = t.toString();
+			result = TextPool.SHARED.toString(t);
 		}
 		return result;
 	}
@@ -696,21 +695,39 @@ public class StringU {
 		return result;
 	}
 
+	/**
+	 * @param key
+	 *            The key.
+	 * @param object
+	 *            The object to serialize. If it implements JsonWriter.ToJson
+	 *            it writes itself, otherwise it is serialized by a JsonCodec
+	 *            as a field of its class would be, so a String, a Date, etc.
+	 *            can be serialized too. A Collection or Map's elements are
+	 *            serialized as the classes they are.
+	 * @return key:className:json
+	 */
 	public static String stringifyKeyedObject(String key, Object object) {
-		final Gson gson = new Gson();
-		final Text t = new Text(key);
+		final Text t = TextPool.SHARED.acquire(false);
+		t.append(key);
 		t.append(':');
 		t.append(object.getClass().getName());
 		t.append(':');
-		final String json = gson.toJson(object);
-		t.append(json);
-		return t.toString();
+		JsonCodec.writeObject(new JsonWriter(t), object);
+		return TextPool.SHARED.toString(t);
 	}
 
+	/**
+	 * @param string
+	 *            A string created by stringifyKeyedObject(), or by the Gson
+	 *            version of it.
+	 * @param <T>
+	 *            The class of the object.
+	 * @return The key and the object. A Collection or Map's elements are
+	 *         read as Strings, Longs, Doubles, Booleans, ArrayLists and
+	 *         LinkedHashMaps.
+	 */
 	public static <T> Pair<String, T> destringifyKeyedObject(String string) {
 		try {
-			final Gson gson = new Gson();
-
 			// Key...
 			final int colon = string.indexOf(':');
 			final String key = string.substring(0, colon);
@@ -721,9 +738,10 @@ public class StringU {
 			final Class<?> clazz = Class.forName(className);
 
 			// JSON...
-			final String json = string.substring(secondColon + 1);
+			final Parser parser = Parser.wrap(string);
+			parser.setCursor(secondColon + 1);
 			@SuppressWarnings("unchecked")
-			final T value = (T)gson.fromJson(json, clazz);
+			final T value = (T)JsonCodec.readObject(new JsonReader(parser), clazz);
 
 			return new Pair<>(key, value);
 		} catch(final Exception e) {
@@ -806,7 +824,7 @@ public class StringU {
 		if(string == null) {
 			result = "null";
 		} else {
-			final Text t = new Text();
+			final Text t = TextPool.SHARED.acquire(true);
 			final char[] ca = string.toCharArray();
 			for(final char c : ca) {
 				switch(c) {
@@ -827,7 +845,7 @@ public class StringU {
 					break;
 				}
 			}
-			result = t.toString();
+			result = TextPool.SHARED.toString(t);
 		}
 
 		return result;
@@ -853,7 +871,7 @@ public class StringU {
 		if(string == null) {
 			result = null;
 		} else {
-			result = new Text();
+			result = TextPool.SHARED.acquire(true);
 			final int processinglenth;
 			final boolean elipses;
 			final int stringLength = string.length();
@@ -873,7 +891,7 @@ public class StringU {
 			}
 		}
 
-		return result == null ? "<null>" : result.toString();
+		return result == null ? "<null>" : TextPool.SHARED.toString(result);
 	}
 
 	/**
@@ -0,0 +1,270 @@
+package com.inexas.util;
+
+import java.util.*;
+
+/**
+ * A text with {Name} placeholders, parsed once so it can be rendered many
+ * times in a single pass, e.g.
+ *
+ * <pre>
+ * final Template insert = Template.parse("insert into tab(id,name)values('{Id}','{Name}')");
+ * insert.render("{Id}", "1", "{Name}", "Keith");
+ * </pre>
+ *
+ * Callers that render often can look the parameters up once and bind them
+ * by index without building a varargs array each time, or render into a
+ * Text they are building:
+ *
+ * <pre>
+ * final int id = insert.indexOf("{Id}"), name = insert.indexOf("{Name}");
+ * final Template.Bindings bindings = insert.bind();
+ * ...
+ * bindings.set(id, "1").set(name, "Keith").render();
+ * </pre>
+ *
+ * A placeholder is a '{', one or more characters that aren't braces, and a
+ * '}', so names may contain spaces, e.g. {First Name}; a placeholder given no
+ * value is rendered as it is so text that only looks like a placeholder is
+ * left alone. Values are not themselves searched for placeholders. Templates
+ * are immutable and thread safe, Bindings are not.
+ */
+public class Template {
+	private final String text;
+	/** The text before each placeholder and the text after the last */
+	private final String[] literals;
+	/** The parameter of each placeholder, a parameter may be used twice */
+	private final int[] placeholders;
+	/** The distinct parameter names, braces included */
+	private final String[] parameters;
+	/** The length of the literals */
+	private final int literalLength;
+
+	/**
+	 * The values of a template's parameters, set by index, for rendering the
+	 * same template repeatedly. Values stay set until changed or cleared.
+	 */
+	public static class Bindings {
+		private final Template template;
+		private final String[] values;
+
+		private Bindings(Template template) {
+			this.template = template;
+			values = new String[template.parameters.length];
+		}
+
+		/**
+		 * @param index
+		 *            The parameter's index, see Template.indexOf().
+		 * @param value
+		 *            The value or null to leave the placeholder unchanged.
+		 * @return this.
+		 */
+		public Bindings set(int index, String value) {
+			values[index] = value;
+			return this;
+		}
+
+		public Bindings clear() {
+			Arrays.fill(values, null);
+			return this;
+		}
+
+		/**
+		 * @return The template rendered with the values bound.
+		 */
+		public String render() {
+			return template.renderValues(values);
+		}
+	}
+
+	private Template(String text, String[] literals, int[] placeholders, String[] parameters) {
+		this.text = text;
+		this.literals = literals;
+		this.placeholders = placeholders;
+		this.parameters = parameters;
+		int length = 0;
+		for(final String literal : literals) {
+			length += literal.length();
+		}
+		literalLength = length;
+	}
+
+	/**
+	 * @param text
+	 *            The text of the template.
+	 * @return The template parsed.
+	 */
+	public static Template parse(String text) {
+		final List<String> literals = new ArrayList<>();
+		final List<String> parameters = new ArrayList<>();
+		final List<Integer> placeholders = new ArrayList<>();
+
+		final int length = text.length();
+		int literal = 0, open = text.indexOf('{');
+		while(open >= 0) {
+			int close = open + 1;
+			while(close < length && !isEnd(text.charAt(close))) {
+				close++;
+			}
+			if(close < length && text.charAt(close) == '}' && close > open + 1) {
+				// Interned so names passed as literals match on identity
+				final String name = text.substring(open, close + 1).intern();
+				int parameter = parameters.indexOf(name);
+				if(parameter < 0) {
+					parameter = parameters.size();
+					parameters.add(name);
+				}
+				literals.add(text.substring(literal, open));
+				placeholders.add(Integer.valueOf(parameter));
+				literal = close + 1;
+				open = text.indexOf('{', literal);
+			} else {
+				// Not a placeholder, perhaps the '{' that stopped it is
+				open = close < length && text.charAt(close) == '{' ? close : text.indexOf('{', close);
+			}
+		}
+		literals.add(text.substring(literal));
+
+		final int[] indexes = new int[placeholders.size()];
+		for(int i = 0; i < indexes.length; i++) {
+			indexes[i] = placeholders.get(i).intValue();
+		}
+		return new Template(
+				text,
+				literals.toArray(new String[literals.size()]),
+				indexes,
+				parameters.toArray(new String[parameters.size()]));
+	}
+
+	/**
+	 * @param name
+	 *            A parameter name with its braces, e.g. "{Name}".
+	 * @return The parameter's index or -1 if the template doesn't use it.
+	 */
+	public int indexOf(String name) {
+		int result = -1;
+		for(int i = 0; i < parameters.length; i++) {
+			if(parameters[i].equals(name)) {
+				result = i;
+				break;
+			}
+		}
+		return result;
+	}
+
+	public int getParameterCount() {
+		return parameters.length;
+	}
+
+	/**
+	 * @param index
+	 *            The parameter's index.
+	 * @return The parameter's name, braces included.
+	 */
+	public String getParameter(int index) {
+		return parameters[index];
+	}
+
+	/**
+	 * @return New bindings for the parameters, all unset.
+	 */
+	public Bindings bind() {
+		return new Bindings(this);
+	}
+
+	/**
+	 * @param pairs
+	 *            Name/value pairs like ..., "{Name}", "Keith".
+	 * @return The template rendered.
+	 */
+	public String render(String... pairs) {
+		assert pairs.length % 2 == 0 : "Need 2, 4, 6... parameters";
+
+		final String result;
+
+		if(placeholders.length == 0) {
+			result = text;
+		} else {
+			// Scan the pairs twice rather than allocate an array of values
+			int length = literalLength;
+			for(final int parameter : placeholders) {
+				length += value(parameter, pairs).length();
+			}
+			final StringBuilder out = new StringBuilder(length);
+			out.append(literals[0]);
+			for(int i = 0; i < placeholders.length; i++) {
+				out.append(value(placeholders[i], pairs));
+				out.append(literals[i + 1]);
+			}
+			result = out.toString();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param out
+	 *            Where to render the template.
+	 * @param values
+	 *            The values by parameter index, a null leaves its placeholder
+	 *            unchanged.
+	 */
+	public void render(Text out, String[] values) {
+		out.append(literals[0]);
+		for(int i = 0; i < placeholders.length; i++) {
+			final int parameter = placeholders[i];
+			final String value = values[parameter];
+			out.append(value == null ? parameters[parameter] : value);
+			out.append(literals[i + 1]);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 * Render into a builder of the exact size, measured faster than a pooled
+	 * Text for strings this short.
+	 */
+	private String renderValues(String[] values) {
+		int length = literalLength;
+		for(final int parameter : placeholders) {
+			final String value = values[parameter];
+			length += (value == null ? parameters[parameter] : value).length();
+		}
+
+		final StringBuilder result = new StringBuilder(length);
+		result.append(literals[0]);
+		for(int i = 0; i < placeholders.length; i++) {
+			final int parameter = placeholders[i];
+			final String value = values[parameter];
+			result.append(value == null ? parameters[parameter] : value);
+			result.append(literals[i + 1]);
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * @return The value of a parameter from name/value pairs or its name if
+	 *         it has none.
+	 */
+	private String value(int parameter, String[] pairs) {
+		final String name = parameters[parameter];
+		String result = name;
+		for(int i = 0; i < pairs.length; i += 2) {
+			if(name.equals(pairs[i])) {
+				result = pairs[i + 1];
+				break;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isEnd(char c) {
+		return c == '{' || c == '}';
+	}
+
+}
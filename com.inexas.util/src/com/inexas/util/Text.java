@@ -1,5 +1,9 @@
 package com.inexas.util;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.*;
 import java.util.Arrays;
 
 /**
@@ -12,19 +16,134 @@ import java.util.Arrays;
  * <li>Indent handling</li>
  * <li>Delimiter handling</li>
  * </ul>
+ *
+ * The contents can be written to a Writer or channel without creating a
+ * String using writeTo(). Large outputs can be streamed with bounded memory
+ * by setting an auto flush sink: whenever the buffer would grow beyond the
+ * threshold what has been written so far is flushed to the sink and the
+ * buffer reused. In that case length(), charAt(), etc. only see what has not
+ * been flushed yet and flush() must be called at the end.
+ *
+ * For very large outputs that must be kept in memory setSegmented() stops the
+ * buffer being grown and copied: instead, when it's full, it is kept as a
+ * chunk and a new one started so appending never copies what's already been
+ * written. Everything else, charAt(), subSequence(), etc., works as before
+ * and the chunks are only assembled by toString() or toCharArray(); writeTo()
+ * writes them one by one.
+ *
+ * setLatin1() halves the memory used for mostly ASCII text by storing it as
+ * bytes in the way java.lang.String does internally. If a character above
+ * 0xff is appended the bytes are inflated to chars and the Text carries on as
+ * normal. While the contents are bytes writeTo() a channel with a Latin-1, or
+ * for ASCII contents a UTF-8 or ASCII, encoder writes them without encoding.
  */
-public class Text implements CharSequence {
+public class Text implements CharSequence, Appendable {
 	private final static int maxLineLength = 132;
 	public static final char EOF = (char)-1;
 	public final boolean pretty;
-	private final Text indent;
+	/** Number of tabs written by indent() */
+	private int indentDepth;
+	private final static char[] NO_CHARS = {};
+	/** The contents unless Latin-1 mode is being used, NO_CHARS if it is */
 	private char[] buffer = new char[16];
+	/** In Latin-1 mode the contents, null otherwise */
+	private byte[] bytes;
+	/** True if a byte in the range 0x80 to 0xff has been appended */
+	private boolean nonAscii;
+	/** Latin-1 mode space for formatting numbers before narrowing them */
+	private char[] scratch;
 	private int bufferCapacity;
 	private int index;
 	private int lastNewline;
 	private char compactDelimiter = ',';
 	private String prettyDelimiter = ", ";
 	private boolean delimit;
+	/** Auto flush destination or null */
+	private Sink sink;
+	/** Size of new chunks when segmented, 0 if not */
+	private int chunkSize;
+	/** Full chunks, oldest first, buffer is the current one */
+	private char[][] chunks;
+	/** Offset of the end of each chunk, i.e. the cumulative lengths */
+	private int[] chunkEnds;
+	private int chunkCount;
+	/** Number of characters in the chunks, i.e. the offset of buffer[0] */
+	private int base;
+
+	/**
+	 * Somewhere to flush to.
+	 */
+	private static abstract class Sink {
+		/**
+		 * Write characters.
+		 *
+		 * @param end
+		 *            True if there will be no more characters.
+		 * @return The number of characters written, any that were not will be
+		 *         passed again next time.
+		 */
+		abstract int write(char[] ca, int length, boolean end) throws IOException;
+	}
+
+	private static class WriterSink extends Sink {
+		private final Writer writer;
+
+		WriterSink(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		int write(char[] ca, int length, boolean end) throws IOException {
+			writer.write(ca, 0, length);
+			if(end) {
+				writer.flush();
+			}
+			return length;
+		}
+	}
+
+	private static class ChannelSink extends Sink {
+		private final WritableByteChannel channel;
+		private final CharsetEncoder encoder;
+		private final ByteBuffer bytes;
+
+		ChannelSink(WritableByteChannel channel, CharsetEncoder encoder, int size) {
+			this.channel = channel;
+			this.encoder = encoder;
+			bytes = ByteBuffer.allocate(Math.max(16, (int)(size * encoder.maxBytesPerChar())));
+			encoder.reset();
+		}
+
+		@Override
+		int write(char[] ca, int length, boolean end) throws IOException {
+			final CharBuffer chars = CharBuffer.wrap(ca, 0, length);
+			CoderResult result;
+			do {
+				result = encoder.encode(chars, bytes, end);
+				if(result.isError()) {
+					result.throwException();
+				}
+				drain();
+			} while(result.isOverflow());
+			if(end) {
+				while(encoder.flush(bytes).isOverflow()) {
+					drain();
+				}
+				drain();
+				encoder.reset();
+			}
+			// Anything left is a partial surrogate pair waiting for the rest
+			return chars.position();
+		}
+
+		private void drain() throws IOException {
+			bytes.flip();
+			while(bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			bytes.clear();
+		}
+	}
 
 	public Text(String string) {
 		this(true);
@@ -47,7 +166,6 @@ public class Text implements CharSequence {
 	public Text(boolean pretty) {
 		this.pretty = pretty;
 		bufferCapacity = buffer.length;
-		indent = pretty ? new Text(false) : null;
 	}
 
 	/**
@@ -55,7 +173,7 @@ public class Text implements CharSequence {
 	 */
 	@Override
 	public int length() {
-		return index;
+		return base + index;
 	}
 
 	/**
@@ -63,10 +181,21 @@ public class Text implements CharSequence {
 	 */
 	@Override
 	public char charAt(int offset) {
-		if(offset < 0 || offset >= index) {
-			throw new StringIndexOutOfBoundsException(index);
+		final char result;
+
+		if(offset < 0 || offset >= base + index) {
+			throw new StringIndexOutOfBoundsException(offset);
+		}
+		if(bytes != null) {
+			result = (char)(bytes[offset] & 0xff);
+		} else if(offset >= base) {
+			result = buffer[offset - base];
+		} else {
+			final int chunk = chunkOf(offset);
+			result = chunks[chunk][offset - chunkStart(chunk)];
 		}
-		return buffer[offset];
+
+		return result;
 	}
 
 	/**
@@ -79,7 +208,17 @@ public class Text implements CharSequence {
 
 	@Override
 	public final String toString() {
-		return new String(buffer, 0, index);
+		final String result;
+
+		if(bytes != null) {
+			result = new String(bytes, 0, index, StandardCharsets.ISO_8859_1);
+		} else if(chunkCount == 0) {
+			result = new String(buffer, 0, index);
+		} else {
+			result = new String(toCharArray());
+		}
+
+		return result;
 	}
 
 	public void newline() {
@@ -90,55 +229,156 @@ public class Text implements CharSequence {
 
 	public void newlinePrettyOrNot() {
 		ensureSpaceFor(1);
-		buffer[index++] = '\n';
+		put('\n');
 		lastNewline = index;
 	}
 
 	public void space() {
 		if(pretty) {
 			ensureSpaceFor(1);
-			buffer[index++] = ' ';
+			put(' ');
 		}
 	}
 
 	public void spacePrettyOrNot() {
 		ensureSpaceFor(1);
-		buffer[index++] = ' ';
+		put(' ');
 	}
 
 	public void indent() {
 		if(pretty) {
-			append(indent);
+			ensureSpaceFor(indentDepth);
+			for(int i = 0; i < indentDepth; i++) {
+				put('\t');
+			}
 		}
 	}
 
 	public void indentMore() {
 		if(pretty) {
-			indent.append('\t');
+			indentDepth++;
 		}
 	}
 
 	public void indentLess() {
 		if(pretty) {
-			indent.index--;
-			if(indent.index < 0) {
+			indentDepth--;
+			if(indentDepth < 0) {
 				throw new ArrayIndexOutOfBoundsException();
 			}
 		}
 	}
 
-	public void append(char c) {
+	@Override
+	public Text append(char c) {
 		ensureSpaceFor(1);
-		buffer[index++] = c;
+		put(c);
+		return this;
 	}
 
-	public void append(CharSequence sequence) {
+	@Override
+	public Text append(CharSequence sequence) {
 		if(sequence == null) {
 			append("<null>");
 		} else {
 			final int length = sequence.length();
 			ensureSpaceFor(length);
-			for(int i = 0; i < length; i++) {
+			put(sequence, 0, length);
+		}
+		return this;
+	}
+
+	@Override
+	public Text append(CharSequence sequence, int start, int end) {
+		if(sequence == null) {
+			append("<null>");
+		} else {
+			if(start < 0 || start > end || end > sequence.length()) {
+				throw new StringIndexOutOfBoundsException("start: " + start + ", end: " + end);
+			}
+			ensureSpaceFor(end - start);
+			put(sequence, start, end);
+		}
+		return this;
+	}
+
+	/**
+	 * Put a character in space made by ensureSpaceFor().
+	 */
+	private void put(char c) {
+		// Latin-1 mode fails the bounds check the store needs anyway
+		final char[] ca = buffer;
+		if(index < ca.length) {
+			ca[index++] = c;
+		} else {
+			putLatin1(c);
+		}
+	}
+
+	private void putLatin1(char c) {
+		if(c < 0x80) {
+			bytes[index++] = (byte)c;
+		} else if(c <= 0xff) {
+			nonAscii = true;
+			bytes[index++] = (byte)c;
+		} else {
+			inflate();
+			buffer[index++] = c;
+		}
+	}
+
+	/**
+	 * Put characters in space made by ensureSpaceFor().
+	 */
+	private void put(CharSequence sequence, int start, int end) {
+		if(bytes == null) {
+			putChars(sequence, start, end);
+		} else {
+			putLatin1(sequence, start, end);
+		}
+	}
+
+	private void putLatin1(CharSequence sequence, int start, int end) {
+		int i = start;
+		for(; i < end; i++) {
+			final char c = sequence.charAt(i);
+			if(c >= 0x80) {
+				if(c > 0xff) {
+					break;
+				}
+				nonAscii = true;
+			}
+			bytes[index++] = (byte)c;
+			if(c == '\n') {
+				lastNewline = index;
+			}
+		}
+		if(i < end) {
+			inflate();
+			putChars(sequence, i, end);
+		}
+	}
+
+	private void putChars(CharSequence sequence, int start, int end) {
+		final int length = end - start;
+		if(sequence instanceof String) {
+			((String)sequence).getChars(start, end, buffer, index);
+			advance(length);
+		} else if(sequence instanceof Text) {
+			((Text)sequence).getChars(start, end, buffer, index);
+			advance(length);
+		} else if(sequence instanceof StringBuilder) {
+			((StringBuilder)sequence).getChars(start, end, buffer, index);
+			advance(length);
+		} else if(sequence instanceof CharBuffer && ((CharBuffer)sequence).hasArray()) {
+			final CharBuffer charBuffer = (CharBuffer)sequence;
+			System.arraycopy(
+					charBuffer.array(), charBuffer.arrayOffset() + charBuffer.position() + start,
+					buffer, index,
+					length);
+			advance(length);
+		} else {
+			for(int i = start; i < end; i++) {
 				final char c = sequence.charAt(i);
 				buffer[index++] = c;
 				if(c == '\n') {
@@ -148,39 +388,222 @@ public class Text implements CharSequence {
 		}
 	}
 
+	/**
+	 * Move the index past characters that have just been copied into the
+	 * buffer and note the last newline, if any, among them.
+	 *
+	 * @param length
+	 *            The number of characters copied.
+	 */
+	private void advance(int length) {
+		final int newline = CharArrays.lastIndexOf(buffer, index, index + length, '\n');
+		index += length;
+		if(newline >= 0) {
+			lastNewline = newline + 1;
+		}
+	}
+
+	/**
+	 * Put formatted numbers, which are always ASCII, in space made by
+	 * ensureSpaceFor().
+	 */
+	private void put(char[] ca, int length) {
+		for(int i = 0; i < length; i++) {
+			bytes[index++] = (byte)ca[i];
+		}
+	}
+
+	/**
+	 * @return Latin-1 mode space for formatting numbers.
+	 */
+	private char[] scratch(int size) {
+		if(scratch == null || scratch.length < size) {
+			scratch = new char[Math.max(size, Digits.MAX_DOUBLE_LENGTH)];
+		}
+		return scratch;
+	}
+
 	public void append(Object object) {
 		append(object == null ? "null" : object.toString());
 	}
 
 	public void append(Text toAppend) {
-		final int length = index + toAppend.index;
+		final int length = toAppend.length();
 		ensureSpaceFor(length);
-		System.arraycopy(toAppend.buffer, 0, buffer, index, toAppend.index);
-		index = length;
+		if(bytes != null && toAppend.bytes != null) {
+			System.arraycopy(toAppend.bytes, 0, bytes, index, length);
+			index += length;
+			nonAscii |= toAppend.nonAscii;
+			for(int i = index - 1; i >= index - length; i--) {
+				if(bytes[i] == '\n') {
+					lastNewline = i + 1;
+					break;
+				}
+			}
+		} else {
+			put(toAppend, 0, length);
+		}
+	}
+
+	/**
+	 * Append all of a char[].
+	 *
+	 * @param ca
+	 *            The characters to append.
+	 */
+	public void append(char[] ca) {
+		append(ca, 0, ca.length);
+	}
+
+	/**
+	 * Append part of a char[].
+	 *
+	 * @param ca
+	 *            The characters to append.
+	 * @param start
+	 *            The offset of the first character to append.
+	 * @param end
+	 *            The offset after the last character to append.
+	 */
+	public void append(char[] ca, int start, int end) {
+		if(start < 0 || start > end || end > ca.length) {
+			throw new StringIndexOutOfBoundsException("start: " + start + ", end: " + end);
+		}
+		final int length = end - start;
+		ensureSpaceFor(length);
+		if(bytes == null) {
+			System.arraycopy(ca, start, buffer, index, length);
+			advance(length);
+		} else {
+			put(CharBuffer.wrap(ca), start, end);
+		}
 	}
 
 	public void append(int i) {
-		append(Integer.toString(i));
+		append((long)i);
 	}
 
 	public void append(Integer i) {
-		append(i.toString());
+		append(i.intValue());
 	}
 
+	/**
+	 * Append a long in decimal, the same as Long.toString() but without
+	 * creating a String.
+	 *
+	 * @param l
+	 *            The value to append.
+	 */
 	public void append(long l) {
-		append(Long.toString(l));
+		final int size = Digits.size(l);
+		ensureSpaceFor(size);
+		if(bytes == null) {
+			index += size;
+			Digits.write(l, index, buffer);
+		} else {
+			final char[] ca = scratch(size);
+			Digits.write(l, size, ca);
+			put(ca, size);
+		}
 	}
 
 	public void append(Long l) {
-		append(l.toString());
+		append(l.longValue());
 	}
 
+	/**
+	 * Append the shortest decimal that parses back to d, laid out the same as
+	 * Double.toString(), e.g. 1.0, 0.001 or 1.0E7.
+	 *
+	 * @param d
+	 *            The value to append.
+	 */
 	public void append(double d) {
-		append(Double.toString(d));
+		ensureSpaceFor(Digits.MAX_DOUBLE_LENGTH);
+		if(bytes == null) {
+			index = Digits.write(d, index, buffer);
+		} else {
+			final char[] ca = scratch(Digits.MAX_DOUBLE_LENGTH);
+			put(ca, Digits.write(d, 0, ca));
+		}
 	}
 
 	public void append(Double d) {
-		append(d.toString());
+		append(d.doubleValue());
+	}
+
+	/**
+	 * Append a value zero padded to at least 'width' digits, e.g. 7 with a
+	 * width of 3 is "007" and -7 is "-07".
+	 *
+	 * @param l
+	 *            The value to append.
+	 * @param width
+	 *            The minimum width including any minus sign.
+	 */
+	public void appendPadded(long l, int width) {
+		appendPadded(l, width, '0');
+	}
+
+	/**
+	 * Append a value right aligned in a fixed width field, e.g. 7 with a
+	 * width of 3 and a pad of ' ' is "  7". Values that are too wide are not
+	 * truncated.
+	 *
+	 * @param l
+	 *            The value to append.
+	 * @param width
+	 *            The minimum width including any minus sign.
+	 * @param pad
+	 *            The character to pad with, if '0' any minus sign comes
+	 *            before the padding.
+	 */
+	public void appendPadded(long l, int width, char pad) {
+		final int size = Math.max(width, Digits.size(l));
+		ensureSpaceFor(size);
+		if(bytes == null) {
+			index = Digits.writePadded(l, width, pad, index, buffer);
+		} else if(pad > 0xff) {
+			inflate();
+			index = Digits.writePadded(l, width, pad, index, buffer);
+		} else {
+			final char[] ca = scratch(size);
+			put(ca, Digits.writePadded(l, width, pad, 0, ca));
+			nonAscii |= pad >= 0x80;
+		}
+	}
+
+	/**
+	 * Append a value in lower case hex treating it as unsigned so -1 is
+	 * "ffffffffffffffff".
+	 *
+	 * @param l
+	 *            The value to append.
+	 */
+	public void appendHex(long l) {
+		appendHex(l, 1);
+	}
+
+	/**
+	 * Append a value in lower case hex, treating it as unsigned, zero padded
+	 * to at least 'width' digits.
+	 *
+	 * @param l
+	 *            The value to append.
+	 * @param width
+	 *            The minimum number of digits.
+	 */
+	public void appendHex(long l, int width) {
+		final int size = Math.max(width, Digits.hexSize(l));
+		ensureSpaceFor(size);
+		if(bytes == null) {
+			index += size;
+			Digits.writeHex(l, size, index, buffer);
+		} else {
+			final char[] ca = scratch(size);
+			Digits.writeHex(l, size, size, ca);
+			put(ca, size);
+		}
 	}
 
 	/**
@@ -211,21 +634,88 @@ public class Text implements CharSequence {
 
 	public void setLength(int length) {
 		// todo This is a bit dangerous, consider push state?
-		assert length >= 0 && length <= index;
-		index = length;
+		assert length >= 0 && length <= base + index;
+		if(length >= base) {
+			index = length - base;
+		} else {
+			// Make the chunk the new length falls in the current buffer
+			final int chunk = chunkOf(length);
+			final int start = chunkStart(chunk);
+			lastNewline += base - start;
+			buffer = chunks[chunk];
+			bufferCapacity = buffer.length;
+			index = length - start;
+			base = start;
+			Arrays.fill(chunks, chunk, chunkCount, null);
+			chunkCount = chunk;
+		}
 	}
 
 	public String getString(int from, int to) {
 		if(from < 0) {
 			throw new StringIndexOutOfBoundsException(from);
 		}
-		if(to > index) {
+		if(to > base + index) {
 			throw new StringIndexOutOfBoundsException(to);
 		}
 		if(from > to) {
 			throw new StringIndexOutOfBoundsException(to - from);
 		}
-		return new String(buffer, from, to - from);
+
+		final String result;
+		if(bytes != null) {
+			result = new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+		} else if(from >= base) {
+			result = new String(buffer, from - base, to - from);
+		} else {
+			final char[] ca = new char[to - from];
+			getChars(from, to, ca, 0);
+			result = new String(ca);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Copy characters to an array, the same as String.getChars().
+	 *
+	 * @param from
+	 *            The offset of the first character to copy.
+	 * @param to
+	 *            The offset after the last character to copy.
+	 * @param destination
+	 *            Where to copy to.
+	 * @param destinationOffset
+	 *            Where to copy the first character to in destination.
+	 */
+	public void getChars(int from, int to, char[] destination, int destinationOffset) {
+		assert from >= 0 && from <= to && to <= base + index;
+
+		if(bytes != null) {
+			for(int i = from; i < to; i++) {
+				destination[destinationOffset++] = (char)(bytes[i] & 0xff);
+			}
+		} else if(from < base) {
+			for(int chunk = chunkOf(from); chunk < chunkCount; chunk++) {
+				final int start = chunkStart(chunk);
+				if(start >= to) {
+					break;
+				}
+				final int copyFrom = Math.max(from, start);
+				final int copyTo = Math.min(to, chunkEnds[chunk]);
+				System.arraycopy(
+						chunks[chunk], copyFrom - start,
+						destination, destinationOffset + copyFrom - from,
+						copyTo - copyFrom);
+			}
+		}
+		if(bytes == null && to > base) {
+			final int copyFrom = Math.max(from, base);
+			System.arraycopy(
+					buffer, copyFrom - base,
+					destination, destinationOffset + copyFrom - from,
+					to - copyFrom);
+		}
 	}
 
 	/**
@@ -273,8 +763,29 @@ public class Text implements CharSequence {
 
 	public int lastIndexOf(char c) {
 		int result = index - 1;
-		while(result >= 0 && buffer[result] != c) {
-			result--;
+		if(bytes != null) {
+			final byte b = (byte)c;
+			while(result >= 0 && (bytes[result] != b || c > 0xff)) {
+				result--;
+			}
+		} else {
+			while(result >= 0 && buffer[result] != c) {
+				result--;
+			}
+		}
+		if(result >= 0) {
+			result += base;
+		} else {
+			for(int chunk = chunkCount - 1; chunk >= 0 && result < 0; chunk--) {
+				final char[] ca = chunks[chunk];
+				final int start = chunkStart(chunk);
+				for(int i = chunkEnds[chunk] - start - 1; i >= 0; i--) {
+					if(ca[i] == c) {
+						result = start + i;
+						break;
+					}
+				}
+			}
 		}
 		return result;
 	}
@@ -285,10 +796,36 @@ public class Text implements CharSequence {
 	public void recycle() {
 		lastNewline = 0;
 		index = 0;
-		if(indent != null) {
-			indent.recycle();
-		}
+		indentDepth = 0;
 		delimit = false;
+		nonAscii = false;
+		if(chunkCount > 0) {
+			recycleChunks();
+			base = 0;
+		}
+	}
+
+	/**
+	 * Recycle and restore the default delimiters, used by TextPool so a
+	 * pooled Text is indistinguishable from a new one.
+	 */
+	void reset() {
+		recycle();
+		sink = null;
+		chunkSize = 0;
+		if(bytes != null) {
+			bytes = null;
+			buffer = new char[bufferCapacity];
+		}
+		compactDelimiter = ',';
+		prettyDelimiter = ", ";
+	}
+
+	/**
+	 * @return The number of characters that can be held without growing.
+	 */
+	int capacity() {
+		return bufferCapacity;
 	}
 
 	// todo Should the object methods be here?
@@ -361,9 +898,27 @@ public class Text implements CharSequence {
 	 */
 	public int count(char c) {
 		int result = 0;
-		for(int i = 0; i < index; i++) {
-			if(buffer[i] == c) {
-				result++;
+		for(int chunk = 0; chunk < chunkCount; chunk++) {
+			final char[] ca = chunks[chunk];
+			final int length = chunkEnds[chunk] - chunkStart(chunk);
+			for(int i = 0; i < length; i++) {
+				if(ca[i] == c) {
+					result++;
+				}
+			}
+		}
+		if(bytes == null) {
+			for(int i = 0; i < index; i++) {
+				if(buffer[i] == c) {
+					result++;
+				}
+			}
+		} else if(c <= 0xff) {
+			final byte b = (byte)c;
+			for(int i = 0; i < index; i++) {
+				if(bytes[i] == b) {
+					result++;
+				}
 			}
 		}
 		return result;
@@ -373,8 +928,9 @@ public class Text implements CharSequence {
 	 * @return A character array copy of the currently buffered Text
 	 */
 	public char[] toCharArray() {
-		final char[] result = new char[index];
-		System.arraycopy(buffer, 0, result, 0, index);
+		final int length = base + index;
+		final char[] result = new char[length];
+		getChars(0, length, result, 0);
 		return result;
 	}
 
@@ -430,19 +986,364 @@ public class Text implements CharSequence {
 		}
 	}
 
+	/**
+	 * Append a string as a quoted JSON string literal, e.g. "a\"b\n".
+	 * Quotes, backslashes and control characters are escaped, runs of other
+	 * characters are copied in bulk.
+	 *
+	 * @param string
+	 *            The string to append.
+	 */
 	public void appendString(String string) {
 		assert string != null;
+
 		final int length = string.length();
+		ensureSpaceFor(length + 2);
 		append('"');
+		int run = 0;
 		for(int i = 0; i < length; i++) {
-			final char c = string.charAt(length);
-			appendEscaped(c, true);
+			final char c = string.charAt(i);
+			if(c < 0x20 || c == '"' || c == '\\') {
+				append(string, run, i);
+				append('\\');
+				switch(c) {
+				case '"':
+				case '\\':
+					append(c);
+					break;
+
+				case '\b':
+					append('b');
+					break;
+
+				case '\f':
+					append('f');
+					break;
+
+				case '\n':
+					append('n');
+					break;
+
+				case '\r':
+					append('r');
+					break;
+
+				case '\t':
+					append('t');
+					break;
+
+				default:
+					append("u00");
+					appendHex(c, 2);
+				}
+				run = i + 1;
+			}
 		}
+		append(string, run, length);
 		append('"');
 	}
 
+	/**
+	 * Write the contents to a Writer without creating a String. The Text is
+	 * not changed.
+	 *
+	 * @param writer
+	 *            Where to write to. It is not flushed or closed.
+	 */
+	public void writeTo(Writer writer) {
+		try {
+			if(bytes == null) {
+				for(int chunk = 0; chunk < chunkCount; chunk++) {
+					writer.write(chunks[chunk], 0, chunkEnds[chunk] - chunkStart(chunk));
+				}
+				writer.write(buffer, 0, index);
+			} else {
+				final char[] ca = new char[Math.min(index, 8 * 1024)];
+				for(int from = 0; from < index; from += ca.length) {
+					final int to = Math.min(index, from + ca.length);
+					getChars(from, to, ca, 0);
+					writer.write(ca, 0, to - from);
+				}
+			}
+		} catch(final IOException e) {
+			throw new RuntimeException("Error writing", e);
+		}
+	}
+
+	/**
+	 * Encode the contents and write them to a channel without creating a
+	 * String. The Text is not changed.
+	 *
+	 * @param channel
+	 *            Where to write to. It is not closed.
+	 * @param encoder
+	 *            The encoder to use, e.g. StandardCharsets.UTF_8.newEncoder(),
+	 *            it is reset before use. In Latin-1 mode it's not used if the
+	 *            bytes can be written as they are.
+	 */
+	public void writeTo(WritableByteChannel channel, CharsetEncoder encoder) {
+		try {
+			if(bytes != null) {
+				final Charset charset = encoder.charset();
+				if(charset.equals(StandardCharsets.ISO_8859_1) || !nonAscii
+						&& (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII))) {
+					final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, 0, index);
+					while(byteBuffer.hasRemaining()) {
+						channel.write(byteBuffer);
+					}
+				} else {
+					final ChannelSink channelSink = new ChannelSink(channel, encoder, Math.min(index, 8 * 1024));
+					final char[] ca = new char[Math.min(index, 8 * 1024)];
+					int from = 0;
+					do {
+						final int to = Math.min(index, from + ca.length);
+						getChars(from, to, ca, 0);
+						channelSink.write(ca, to - from, to == index);
+						from = to;
+					} while(from < index);
+				}
+			} else {
+				writeChunksTo(channel, encoder);
+			}
+		} catch(final IOException e) {
+			throw new RuntimeException("Error writing", e);
+		}
+	}
+
+	private void writeChunksTo(WritableByteChannel channel, CharsetEncoder encoder) throws IOException {
+		final ChannelSink channelSink = new ChannelSink(channel, encoder, Math.min(base + index, 8 * 1024));
+		// Chunks never end with a high surrogate so nothing is left over
+		for(int chunk = 0; chunk < chunkCount; chunk++) {
+			channelSink.write(chunks[chunk], chunkEnds[chunk] - chunkStart(chunk), false);
+		}
+		channelSink.write(buffer, index, true);
+	}
+
+	/**
+	 * Flush to a Writer whenever the buffer would grow beyond a threshold.
+	 * Anything already in the buffer is kept and will be flushed first.
+	 *
+	 * @param writer
+	 *            Where to flush to.
+	 * @param threshold
+	 *            The number of characters to buffer before flushing.
+	 * @see #flush()
+	 */
+	public void setAutoFlush(Writer writer, int threshold) {
+		setSink(new WriterSink(writer), threshold);
+	}
+
+	/**
+	 * Encode and flush to a channel whenever the buffer would grow beyond a
+	 * threshold. Anything already in the buffer is kept and will be flushed
+	 * first.
+	 *
+	 * @param channel
+	 *            Where to flush to.
+	 * @param encoder
+	 *            The encoder to use, e.g. StandardCharsets.UTF_8.newEncoder().
+	 * @param threshold
+	 *            The number of characters to buffer before flushing.
+	 * @see #flush()
+	 */
+	public void setAutoFlush(WritableByteChannel channel, CharsetEncoder encoder, int threshold) {
+		setSink(new ChannelSink(channel, encoder, threshold), threshold);
+	}
+
+	/**
+	 * Write anything buffered to the auto flush sink, flush a Writer and
+	 * finish the encoding for a channel. The Text is then empty and can
+	 * carry on being used. Has no effect if there is no auto flush sink.
+	 */
+	public void flush() {
+		if(sink != null) {
+			spill(true);
+		}
+	}
+
+	/**
+	 * Stop the buffer being grown and copied as the Text gets longer. Instead
+	 * when the buffer is full it is kept as a chunk and a new chunk started.
+	 * Use this when building very large outputs in memory. Auto flushing
+	 * cancels segmented mode, the chunks are joined into a single buffer.
+	 *
+	 * @param chunkSize
+	 *            The size of new chunks in characters, a single append larger
+	 *            than this gets a chunk of its own.
+	 */
+	public void setSegmented(int chunkSize) {
+		assert chunkSize > 0 : "Invalid chunk size: " + chunkSize;
+		assert sink == null : "Cannot segment an auto flushing Text";
+
+		inflate();
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Store the contents as Latin-1 bytes rather than chars until a
+	 * character above 0xff is appended. Segmented mode, auto flushing and
+	 * wrapping the Text in a Parser all inflate the contents to chars so
+	 * this has no effect on a segmented or auto flushing Text. Anything
+	 * already appended is kept, if it is not all Latin-1 the Text stays in
+	 * char mode.
+	 */
+	public void setLatin1() {
+		if(bytes == null && sink == null && chunkSize == 0) {
+			boolean latin1NonAscii = false;
+			for(int i = 0; i < index; i++) {
+				final char c = buffer[i];
+				if(c > 0xff) {
+					return;
+				}
+				latin1NonAscii |= c >= 0x80;
+			}
+			final byte[] narrowed = new byte[bufferCapacity];
+			for(int i = 0; i < index; i++) {
+				narrowed[i] = (byte)buffer[i];
+			}
+			bytes = narrowed;
+			buffer = NO_CHARS;
+			nonAscii = latin1NonAscii;
+		}
+	}
+
+	/**
+	 * Leave Latin-1 mode by converting the bytes to chars.
+	 */
+	private void inflate() {
+		if(bytes != null) {
+			buffer = new char[bufferCapacity];
+			for(int i = 0; i < index; i++) {
+				buffer[i] = (char)(bytes[i] & 0xff);
+			}
+			bytes = null;
+		}
+	}
+
+	private void setSink(Sink sink, int threshold) {
+		assert threshold > 0 : "Invalid threshold: " + threshold;
+
+		join();
+		inflate();
+		chunkSize = 0;
+		this.sink = sink;
+		// The buffer is spilled when it would grow beyond its capacity
+		if(buffer.length < threshold) {
+			buffer = Arrays.copyOf(buffer, threshold);
+		}
+		bufferCapacity = Math.max(threshold, index);
+	}
+
+	/**
+	 * Write the buffer to the sink and keep what wasn't written, at most a
+	 * high surrogate, for next time.
+	 */
+	private void spill(boolean end) {
+		try {
+			final int written = sink.write(buffer, index, end);
+			System.arraycopy(buffer, written, buffer, 0, index - written);
+			index -= written;
+			lastNewline -= written;
+		} catch(final IOException e) {
+			throw new RuntimeException("Error writing", e);
+		}
+	}
+
+	/**
+	 * @return The internal buffer, only the first length() characters are
+	 *         valid. This is so that Parser can wrap a Text without copying.
+	 */
+	char[] getBuffer() {
+		join();
+		inflate();
+		return buffer;
+	}
+
+	/**
+	 * Copy any chunks and the buffer into a single buffer.
+	 */
+	private void join() {
+		if(chunkCount > 0) {
+			final char[] joined = toCharArray();
+			recycleChunks();
+			lastNewline += base;
+			index = joined.length;
+			base = 0;
+			buffer = joined;
+			bufferCapacity = joined.length;
+		}
+	}
+
+	private void recycleChunks() {
+		Arrays.fill(chunks, 0, chunkCount, null);
+		chunkCount = 0;
+	}
+
+	/**
+	 * Keep the buffer as a chunk and start a new one.
+	 */
+	private void seal(int extraSpaceNeeded) {
+		int length = index;
+		// Don't split a surrogate pair so the chunks can be encoded separately
+		final boolean carry = Character.isHighSurrogate(buffer[length - 1]);
+		if(carry) {
+			length--;
+		}
+
+		if(chunks == null) {
+			chunks = new char[16][];
+			chunkEnds = new int[16];
+		} else if(chunkCount == chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunkCount * 2);
+			chunkEnds = Arrays.copyOf(chunkEnds, chunkCount * 2);
+		}
+		base += length;
+		chunks[chunkCount] = buffer;
+		chunkEnds[chunkCount] = base;
+		chunkCount++;
+
+		bufferCapacity = Math.max(chunkSize, extraSpaceNeeded + 1);
+		final char[] next = new char[bufferCapacity];
+		if(carry) {
+			next[0] = buffer[length];
+		}
+		buffer = next;
+		index -= length;
+		lastNewline -= length;
+	}
+
+	/**
+	 * @param offset
+	 *            An offset before base.
+	 * @return The index of the chunk that holds offset.
+	 */
+	private int chunkOf(int offset) {
+		int low = 0, high = chunkCount - 1;
+		while(low < high) {
+			final int middle = (low + high) >>> 1;
+			if(chunkEnds[middle] <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int chunkStart(int chunk) {
+		return chunk == 0 ? 0 : chunkEnds[chunk - 1];
+	}
+
 	private void ensureSpaceFor(int extraSpaceNeeded) {
-		final int totalNeeded = index + extraSpaceNeeded;
+		int totalNeeded = index + extraSpaceNeeded;
+		if(totalNeeded > bufferCapacity && sink != null && index > 0) {
+			// Auto flushing: make room by spilling rather than growing
+			spill(false);
+			totalNeeded = index + extraSpaceNeeded;
+		} else if(totalNeeded > bufferCapacity && chunkSize > 0 && index > 0) {
+			seal(extraSpaceNeeded);
+			totalNeeded = index + extraSpaceNeeded;
+		}
 		if(totalNeeded > bufferCapacity) {
 			// By default we'll increase by 50%...
 			bufferCapacity = bufferCapacity + bufferCapacity / 2;
@@ -450,7 +1351,11 @@ public class Text implements CharSequence {
 				// Still not enough, use what's needed plus a bit
 				bufferCapacity = totalNeeded + 32;
 			}
-			buffer = Arrays.copyOf(buffer, bufferCapacity);
+			if(bytes == null) {
+				buffer = Arrays.copyOf(buffer, bufferCapacity);
+			} else {
+				bytes = Arrays.copyOf(bytes, bufferCapacity);
+			}
 		}
 	}
 
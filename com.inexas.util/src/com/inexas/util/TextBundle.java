@@ -2,7 +2,9 @@ package com.inexas.util;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.*;
+import com.inexas.exception.InvalidCallException;
 
 /**
  * <p>
@@ -29,13 +31,26 @@ import java.util.jar.*;
  * existed and load that. The property files are used in the load order to
  * service requests.
  *
+ * The layers are flattened, on the first getString(), into one immutable
+ * hash table so reads take no locks and don't walk the defaults chain.
+ * put(), putAll(), remove() and clear() discard the table so changes are
+ * seen; other changes through the Hashtable methods are not. The table can
+ * be saved as a snapshot at build time, see main(), and load() maps the
+ * snapshot at startup instead of parsing the property files. get() parses
+ * a string as a Template the first time and renders the cached template
+ * after that.
+ *
  * @author Keith Whittingham
  * @version $Revision: 1.1 $
  */
 public class TextBundle extends Properties {
-	// todo JUnit me
 	private static final long serialVersionUID = 1832358303485280887L;
 	private final String baseName;
+	/** The flattened layers, null until used or after a change */
+	private transient volatile StringTable table;
+	/** Templates parsed so far by key, null after a change */
+	private transient volatile Map<String, Template> templates;
+	private final boolean snapshot;
 
 	/**
 	 * Load a set of properties as a text bundle. The base name is referenced
@@ -51,6 +66,7 @@ public class TextBundle extends Properties {
 		assert baseName != null && baseName.length() > 0;
 
 		this.baseName = baseName;
+		snapshot = false;
 
 		final Collection<String> filenames = generateFilenames(baseName);
 		if(filenames.size() == 0) {
@@ -79,6 +95,10 @@ public class TextBundle extends Properties {
 				throw new RuntimeException("Error loading file: " + filename, e);
 			}
 		}
+		if(properties != this) {
+			// The most specific file is missing, fall back to the others
+			defaults = properties;
+		}
 	}
 
 	/**
@@ -97,6 +117,7 @@ public class TextBundle extends Properties {
 		boolean found = false;
 
 		this.baseName = baseName;
+		snapshot = false;
 		try {
 			// tokenize the class path and look for the right file name...
 			final String classpath = System.getProperty("java.class.path");
@@ -127,7 +148,7 @@ public class TextBundle extends Properties {
 						while(j.hasNext()) {
 							je = j.next();
 							try(final InputStream is = jf.getInputStream(je)) {
-								properties = process(is, i.hasNext(), properties);
+								properties = process(is, j.hasNext(), properties);
 							} catch(final FileNotFoundException e) {
 								// ignore files not found...
 							} catch(final IOException e) {
@@ -177,8 +198,60 @@ public class TextBundle extends Properties {
 		}
 	}
 
+	private TextBundle(String baseName, StringTable table) {
+		this.baseName = baseName;
+		this.table = table;
+		snapshot = true;
+	}
+
+	/**
+	 * Load a bundle from a snapshot written by save(). The snapshot is memory
+	 * mapped so loading costs next to nothing whatever its size. The bundle
+	 * is read only and its strings are only seen through getString(), get()
+	 * and getProperty(), not the Hashtable methods.
+	 *
+	 * @param baseName
+	 *            The base name of the bundle, for error messages.
+	 * @param snapshot
+	 *            The snapshot file.
+	 * @return The bundle.
+	 */
+	public static TextBundle load(String baseName, File snapshot) {
+		return new TextBundle(baseName, StringTable.map(snapshot));
+	}
+
+	/**
+	 * Save the bundle's strings, all layers flattened, as a snapshot for
+	 * load().
+	 *
+	 * @param file
+	 *            The file to write.
+	 */
+	public void save(File file) {
+		getTable().write(file);
+	}
+
+	/**
+	 * Write a snapshot of a text bundle at build time, e.g.
+	 *
+	 * <pre>
+	 * java com.inexas.util.TextBundle sql_db2 build/sql_db2.snapshot
+	 * </pre>
+	 *
+	 * @param arguments
+	 *            The bundle's base name and the snapshot file to write.
+	 */
+	public static void main(String[] arguments) {
+		if(arguments.length != 2) {
+			System.err.println("Usage: TextBundle baseName snapshotFile");
+			System.exit(1);
+		}
+		new TextBundle(arguments[0]).save(new File(arguments[1]));
+	}
+
 	public String getString(String key, String defaultValue) {
-		return super.getProperty(key, defaultValue);
+		final String value = getTable().get(key);
+		return value == null ? defaultValue : value;
 	}
 
 	/**
@@ -191,7 +264,7 @@ public class TextBundle extends Properties {
 	 *                if no string for the key is found
 	 */
 	public String getString(String key) {
-		final String value = super.getProperty(key);
+		final String value = getTable().get(key);
 		if(value == null) {
 			throw new RuntimeException("Missing key in TextBundle " + baseName + " key: " + key);
 		}
@@ -211,13 +284,33 @@ public class TextBundle extends Properties {
 	 */
 	public String get(String key, String... parameters) {
 		assert parameters.length > 0 && parameters.length % 2 == 0 : "Next 2, 4, 6... parameters";
-		assert parametersExist(key, parameters);
 
-		String result = getString(key);
-		for(int i = 0; i < parameters.length;) {
-			final String name = parameters[i++];
-			final String value = parameters[i++];
-			result = result.replace(name, value);
+		final Template template = getTemplate(key);
+		assert parametersExist(key, template, parameters);
+		return template.render(parameters);
+	}
+
+	/**
+	 * Get the string for a key parsed as a template. The template is parsed
+	 * the first time and cached so callers can keep it or ask again.
+	 *
+	 * @param key
+	 *            The key of the string.
+	 * @return The string as a template.
+	 * @exception RuntimeException
+	 *                If no string for the key is found.
+	 */
+	public Template getTemplate(String key) {
+		Map<String, Template> map = templates;
+		if(map == null) {
+			// Racy, at worst a few templates are parsed twice
+			map = new ConcurrentHashMap<>();
+			templates = map;
+		}
+		Template result = map.get(key);
+		if(result == null) {
+			result = Template.parse(getString(key));
+			map.put(key, result);
 		}
 		return result;
 	}
@@ -225,7 +318,59 @@ public class TextBundle extends Properties {
 	@Deprecated
 	@Override
 	public String getProperty(String key) {
-		return super.getProperty(key);
+		return getTable().get(key);
+	}
+
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		changed();
+		return super.put(key, value);
+	}
+
+	@Override
+	public synchronized void putAll(Map<?, ?> map) {
+		changed();
+		super.putAll(map);
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		changed();
+		return super.remove(key);
+	}
+
+	@Override
+	public synchronized void clear() {
+		changed();
+		super.clear();
+	}
+
+	private void changed() {
+		if(snapshot) {
+			throw new InvalidCallException("A TextBundle loaded from a snapshot is read only: " + baseName);
+		}
+		table = null;
+		templates = null;
+	}
+
+	private StringTable getTable() {
+		StringTable result = table;
+		if(result == null) {
+			// Built under the lock changed() is called with or a change made
+			// while it was built would be lost to a stale table
+			synchronized(this) {
+				result = table;
+				if(result == null) {
+					final Map<String, String> flattened = new HashMap<>();
+					for(final String key : stringPropertyNames()) {
+						flattened.put(key, super.getProperty(key));
+					}
+					result = StringTable.of(flattened);
+					table = result;
+				}
+			}
+		}
+		return result;
 	}
 
 	private Properties process(InputStream is, boolean notLast, Properties properties)
@@ -251,7 +396,7 @@ public class TextBundle extends Properties {
 			}
 		}
 		returnValue.load(is);
-		return properties;
+		return returnValue;
 	}
 
 	private List<String> generateFilenames(String theBaseName) {
@@ -282,21 +427,21 @@ public class TextBundle extends Properties {
 
 	/**
 	 * This method checks that there is at least one occurrence of each
-	 * parameter in the string. It is only called by an assert so take our time
+	 * parameter in the string. It is only called by an assert
 	 *
-	 * @param sql
+	 * @param sqlKey
+	 * @param template
 	 * @param parameters
 	 * @return true if all is well
 	 */
-	private boolean parametersExist(String sqlKey, String[] parameters) {
-		final String sql = getString(sqlKey);
+	private boolean parametersExist(String sqlKey, Template template, String[] parameters) {
 		final Text sb = new Text();
 		for(int i = 0; i < parameters.length; i += 2) {
 			final String parameterName = parameters[i];
 			if(!(parameterName.startsWith("{") && parameterName.endsWith("}"))) {
 				throw new RuntimeException("Parameter name missing {Brackets}: " + parameterName);
 			}
-			if(sql.indexOf(parameterName) < 0) {
+			if(template.indexOf(parameterName) < 0) {
 				if(sb.length() > 0) {
 					sb.append(',');
 				}
@@ -306,7 +451,7 @@ public class TextBundle extends Properties {
 		if(sb.length() > 0) {
 			throw new RuntimeException(
 					"Missing parameters in SQL template, (sqlKey:sqltemplate:missing-parameters): " +
-							sqlKey + ':' + sql + ':' + sb.toString());
+							sqlKey + ':' + template + ':' + sb.toString());
 		}
 		return true;
 	}
@@ -0,0 +1,110 @@
+package com.inexas.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pool of reusable Text instances so that code that builds lots of short
+ * lived strings doesn't need to create a new Text, and grow its buffer, each
+ * time. Use it like this:
+ *
+ * <pre>
+ * final Text t = TextPool.SHARED.acquire(false);
+ * t.append(...);
+ * return TextPool.SHARED.toString(t);
+ * </pre>
+ *
+ * A Text must not be used after it has been released. If an exception is
+ * thrown before the Text is released nothing needs to be done, it is simply
+ * garbage collected.
+ *
+ * The pool is a small array of slots, each holding at most one pretty and one
+ * compact Text. The slot used is chosen from the current thread's ID so
+ * threads rarely contend and, as there are no ThreadLocals or locks, the
+ * pool works as well with virtual threads as with platform threads: memory
+ * use is bounded by the number of slots, not the number of threads. Texts
+ * whose buffer has grown beyond the maximum retained capacity are dropped
+ * rather than returned to the pool so one huge string doesn't pin memory.
+ */
+public class TextPool {
+	public final static int DEFAULT_MAX_CAPACITY = 16 * 1024;
+	/** Shared by the utility classes, e.g. StringU and DateU */
+	public final static TextPool SHARED = new TextPool(
+			4 * Runtime.getRuntime().availableProcessors(),
+			DEFAULT_MAX_CAPACITY);
+	private final AtomicReferenceArray<Text> pretty;
+	private final AtomicReferenceArray<Text> compact;
+	private final int mask;
+	private final int maxCapacity;
+
+	/**
+	 * @param slots
+	 *            The number of Texts of each kind, pretty or not, that can be
+	 *            retained. Rounded up to a power of 2.
+	 * @param maxCapacity
+	 *            Texts with a buffer larger than this are not retained.
+	 */
+	public TextPool(int slots, int maxCapacity) {
+		assert slots > 0 && maxCapacity > 0;
+
+		final int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+		pretty = new AtomicReferenceArray<>(size);
+		compact = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+		this.maxCapacity = maxCapacity;
+	}
+
+	/**
+	 * @param prettyText
+	 *            True to get a pretty Text, see {@link Text#Text(boolean)}.
+	 * @return An empty Text, either from the pool or a new one.
+	 */
+	public Text acquire(boolean prettyText) {
+		final Text result;
+
+		final AtomicReferenceArray<Text> slots = prettyText ? pretty : compact;
+		final int slot = slot();
+		final Text pooled = slots.get(slot);
+		if(pooled != null && slots.compareAndSet(slot, pooled, null)) {
+			result = pooled;
+		} else {
+			result = new Text(prettyText);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return a Text to the pool. The Text must not be used by the caller
+	 * after this.
+	 *
+	 * @param text
+	 *            The Text to release.
+	 */
+	public void release(Text text) {
+		if(text.capacity() <= maxCapacity) {
+			text.reset();
+			final AtomicReferenceArray<Text> slots = text.pretty ? pretty : compact;
+			// If the slot's full just drop the Text
+			slots.compareAndSet(slot(), null, text);
+		}
+	}
+
+	/**
+	 * Convenience method to get a Text's contents and release it.
+	 *
+	 * @param text
+	 *            The Text to release.
+	 * @return The contents of the Text.
+	 */
+	public String toString(Text text) {
+		final String result = text.toString();
+		release(text);
+		return result;
+	}
+
+	private int slot() {
+		// Spread the IDs as they are mostly sequential
+		return (int)(Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 40) & mask;
+	}
+
+}
@@ -2,7 +2,7 @@ package com.inexas.util.logging;
 
 import java.util.Date;
 import java.util.logging.*;
-import com.inexas.util.DateU;
+import com.inexas.util.*;
 
 /**
  * Better logging because the output is: compact, properly aligned and Eclipse
@@ -13,7 +13,7 @@ public class InexasFormatter extends Formatter {
 
 	@Override
 	public String format(LogRecord record) {
-		final StringBuilder sb = new StringBuilder();
+		final Text sb = TextPool.SHARED.acquire(false);
 
 		// Logger name, last 8 characters, padded to 4 characters...
 		final String loggerName = record.getLoggerName() + "        ";
@@ -47,6 +47,6 @@ public class InexasFormatter extends Formatter {
 		// but the record doesn't contain a real one so use anything (i.e. :1)
 		sb.append(".java:1)]");
 		sb.append(LINE_SEPARATOR);
-		return sb.toString();
+		return TextPool.SHARED.toString(sb);
 	}
 }
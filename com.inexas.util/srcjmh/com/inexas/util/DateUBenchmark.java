@@ -0,0 +1,38 @@
+package com.inexas.util;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * DateU standard datetime parsing and formatting, the input parameter covers
+ * the shortest and the longest forms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUBenchmark {
+	@Param({ "1957/4/7 12:34", "1957/04/30 12:34:56", "1957/04/30 12:34:56.007" })
+	public String input;
+
+	private LocalDateTime datetime;
+
+	@Setup
+	public void setup() {
+		datetime = DateU.parseStandardDatetime(input);
+	}
+
+	@Benchmark
+	public LocalDateTime parseStandardDatetime() {
+		return DateU.parseStandardDatetime(input);
+	}
+
+	@Benchmark
+	public String formatStandardDatetime() {
+		return DateU.formatStandardDatetime(datetime);
+	}
+
+}
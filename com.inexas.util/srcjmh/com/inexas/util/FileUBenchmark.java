@@ -0,0 +1,57 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading a text file with the FileU read methods. The size parameter is the
+ * number of lines in the file, each about 40 characters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileUBenchmark {
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("benchmark", ".txt");
+		file.deleteOnExit();
+		try(final Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			for(int i = 0; i < size; i++) {
+				writer.write("Line " + i + " of the file being read\n");
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public String read() {
+		return FileU.read(file, false);
+	}
+
+	@Benchmark
+	public List<String> readIntoStringList() {
+		return FileU.readIntoStringList(file, false);
+	}
+
+	@Benchmark
+	public char[] readToCharacterArray() {
+		return FileU.readToCharacterArray(file);
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Listing a directory with FileU.getChildren(). The size parameter is the
+ * number of entries in the directory, half of them ".txt" files and a tenth
+ * of them directories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetChildrenBenchmark {
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private Path directory;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("benchmark");
+		for(int i = 0; i < size; i++) {
+			final Path path = directory.resolve("entry" + i + (i % 2 == 0 ? ".txt" : ".dat"));
+			if(i % 10 == 1) {
+				Files.createDirectory(path);
+			} else {
+				Files.createFile(path);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try(final Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public File[] files() {
+		return FileU.getChildren(directory.toFile(), FileU.Type.FILE, ".*\\.txt");
+	}
+
+	@Benchmark
+	public File[] both() {
+		return FileU.getChildren(directory.toFile(), FileU.Type.BOTH, ".*\\.txt");
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.inexas.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import com.google.gson.Gson;
+
+/**
+ * JSON serialization and deserialization with JsonWriter and JsonReader
+ * compared with Gson. The size parameter is the number of records in the
+ * array written or read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+	@Param({ "16", "1024", "65536" })
+	public int size;
+
+	public static class Record implements JsonWriter.ToJson {
+		long id;
+		String name;
+		double score;
+		boolean active;
+
+		@Override
+		public void toJson(JsonWriter writer) {
+			writer.beginObject();
+			writer.property("id", id);
+			writer.property("name", name);
+			writer.property("score", score);
+			writer.property("active", active);
+			writer.endObject();
+		}
+	}
+
+	private Record[] records;
+	private String json;
+	/** An object with the records followed by the properties read */
+	private String document;
+	private JsonUtilities utilities;
+	private final Gson gson = new Gson();
+
+	@Setup
+	public void setup() {
+		records = new Record[size];
+		for(int i = 0; i < size; i++) {
+			final Record record = new Record();
+			record.id = i * 1_000_003L;
+			record.name = i % 10 == 0 ? "Name \"" + i + '"' : "Name " + i;
+			record.score = i / 8.0;
+			record.active = i % 3 == 0;
+			records[i] = record;
+		}
+		json = gson.toJson(records);
+		document = "{\"records\": " + json + ", \"id\": 42, \"name\": \"Fred\", \"size\": 7}";
+		try {
+			utilities = new JsonUtilities(document, "document");
+		} catch(final JsonException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Benchmark
+	public String gsonToJson() {
+		return gson.toJson(records);
+	}
+
+	@Benchmark
+	public String jsonWriter() {
+		final Text t = new Text(false);
+		final JsonWriter writer = new JsonWriter(t);
+		writer.beginArray();
+		for(final Record record : records) {
+			record.toJson(writer);
+		}
+		writer.endArray();
+		return t.toString();
+	}
+
+	@Benchmark
+	public Record[] gsonFromJson() {
+		return gson.fromJson(json, Record[].class);
+	}
+
+	@Benchmark
+	public Record[] codecFromJson() {
+		final Record[] result = new Record[size];
+		final JsonCodec<Record> codec = JsonCodec.of(Record.class);
+		final JsonReader reader = new JsonReader(Parser.wrap(json));
+		reader.beginArray();
+		for(int i = 0; i < size; i++) {
+			result[i] = codec.read(reader);
+		}
+		reader.endArray();
+		return result;
+	}
+
+	@Benchmark
+	public Record[] jsonReader() {
+		final Record[] result = new Record[size];
+		final JsonReader reader = new JsonReader(Parser.wrap(json));
+		reader.beginArray();
+		for(int i = 0; i < size; i++) {
+			final Record record = new Record();
+			reader.beginObject();
+			while(reader.hasNext()) {
+				final String name = reader.nextName();
+				switch(name) {
+				case "id":
+					record.id = reader.nextLong();
+					break;
+				case "name":
+					record.name = reader.nextString();
+					break;
+				case "score":
+					record.score = reader.nextDouble();
+					break;
+				case "active":
+					record.active = reader.nextBoolean();
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			result[i] = record;
+		}
+		reader.endArray();
+		return result;
+	}
+
+	@Benchmark
+	public int utilitiesLoad() throws JsonException {
+		final JsonUtilities loaded = new JsonUtilities(document, "document");
+		return loaded.getInt("id") + loaded.getString("name").length() + loaded.getInt("size");
+	}
+
+	@Benchmark
+	public int utilitiesGet() throws JsonException {
+		return utilities.getInt("id") + utilities.getString("name").length() + utilities.getInt("size");
+	}
+
+	@Benchmark
+	public int jsonReaderSkip() {
+		// Pick one field out of each record, skipping the rest
+		int result = 0;
+		final JsonReader reader = new JsonReader(Parser.wrap(json));
+		reader.beginArray();
+		while(reader.hasNext()) {
+			reader.beginObject();
+			while(reader.hasNext()) {
+				if(reader.nextNameEquals("active")) {
+					result += reader.nextBoolean() ? 1 : 0;
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		reader.endArray();
+		return result;
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading a JSON lines file with JsonLines compared with reading it line by
+ * line into JsonUtilities on one thread. The size parameter is the number of
+ * lines in the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonLinesBenchmark {
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("benchmark", ".jsonl");
+		file.deleteOnExit();
+		try(final Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			for(int i = 0; i < size; i++) {
+				writer.write("{\"id\":" + i + ",\"name\":\"Name " + i + "\",\"score\":" + i / 8.0
+						+ ",\"active\":" + (i % 3 == 0) + "}\n");
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public long lineByLine() throws IOException, JsonException {
+		long result = 0;
+		try(final BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				result += new JsonUtilities(line, "line").getInt("id");
+			}
+		}
+		return result;
+	}
+
+	@Benchmark
+	public long jsonLines() {
+		return JsonLines.stream(file, false).mapToLong(json -> {
+			try {
+				return json.getInt("id");
+			} catch(final JsonException e) {
+				throw new RuntimeException(e);
+			}
+		}).sum();
+	}
+
+	@Benchmark
+	public long jsonLinesBound() {
+		return JsonLines.stream(file, JsonBenchmark.Record.class, false).mapToLong(record -> record.id).sum();
+	}
+
+}
@@ -0,0 +1,152 @@
+package com.inexas.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parser hot paths: identifiers, integers and quoted strings separated by
+ * single spaces. The size parameter is the number of tokens in the input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	private final static CharClass identifierClass = new CharClass.Builder()
+			.add('a', 'z').add('A', 'Z').add('0', '9').add('_')
+			.build();
+
+	@Param({ "16", "1024", "65536" })
+	public int size;
+
+	private String identifiers;
+	private String ints;
+	private String strings;
+	private String doubles;
+
+	@Setup
+	public void setup() {
+		final Text identifiersText = new Text(false);
+		final Text intsText = new Text(false);
+		final Text stringsText = new Text(false);
+		final Text doublesText = new Text(false);
+		for(int i = 0; i < size; i++) {
+			identifiersText.append("name_");
+			identifiersText.append(i);
+			identifiersText.append(' ');
+
+			intsText.append(i % 2 == 0 ? i * 7919 : -i * 31);
+			intsText.append(' ');
+
+			stringsText.append("\"value \\\" ");
+			stringsText.append(i);
+			stringsText.append("\" ");
+
+			doublesText.append(i * 0.25 - 17.5);
+			doublesText.append(' ');
+		}
+		identifiers = identifiersText.toString();
+		ints = intsText.toString();
+		strings = stringsText.toString();
+		doubles = doublesText.toString();
+	}
+
+	@Benchmark
+	public int consumeAscii() {
+		final Parser parser = new Parser(identifiers);
+		int result = 0;
+		while(parser.consumeAscii((byte)(Parser.ASCII_A_Z | Parser.ASCII_a_z | Parser.ASCII_0_9
+				| Parser.ASCII_UNDERLINE))) {
+			result++;
+			parser.consume(' ');
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int consumeCharClass() {
+		final Parser parser = new Parser(identifiers);
+		int result = 0;
+		while(parser.consume(identifierClass)) {
+			result++;
+			parser.consume(' ');
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int consumeInt() {
+		final Parser parser = new Parser(ints);
+		int result = 0;
+		while(parser.consumeInt()) {
+			result++;
+			parser.consume(' ');
+		}
+		return result;
+	}
+
+	@Benchmark
+	public void consumeIntAndParse(Blackhole blackhole) {
+		final Parser parser = new Parser(ints);
+		while(parser.consumeInt()) {
+			blackhole.consume(Integer.parseInt(parser.getConsumed()));
+			parser.consume(' ');
+		}
+	}
+
+	@Benchmark
+	public long tryParseInt() {
+		final Parser parser = new Parser(ints);
+		long result = 0;
+		while(true) {
+			final int i = parser.tryParseInt();
+			if(!parser.parsed()) {
+				break;
+			}
+			result += i;
+			parser.consume(' ');
+		}
+		return result;
+	}
+
+	@Benchmark
+	public double parseDouble() {
+		final Parser parser = new Parser(doubles);
+		double result = 0;
+		while(true) {
+			final double d = parser.tryParseDouble();
+			if(!parser.parsed()) {
+				break;
+			}
+			result += d;
+			parser.consume(' ');
+		}
+		return result;
+	}
+
+	@Benchmark
+	public double parseDoubleWithGetConsumed() {
+		final Parser parser = new Parser(doubles);
+		double result = 0;
+		while(parser.consumeUntil(' ')) {
+			result += Double.parseDouble(parser.getConsumed());
+			parser.consume(' ');
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int consumeString() {
+		final Parser parser = new Parser(strings);
+		int result = 0;
+		while(parser.consumeString()) {
+			result++;
+			parser.consume(' ');
+		}
+		return result;
+	}
+
+}
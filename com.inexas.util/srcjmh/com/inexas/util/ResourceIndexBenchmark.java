@@ -0,0 +1,28 @@
+package com.inexas.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Searching the class path, the benchmark's own with JMH and its
+ * dependencies, for resources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceIndexBenchmark {
+	@Benchmark
+	public Collection<String> getResources() {
+		return FileU.getResources(".*\\.properties", true);
+	}
+
+	@Benchmark
+	public ResourceIndex scan() {
+		return new ResourceIndex(null);
+	}
+
+}
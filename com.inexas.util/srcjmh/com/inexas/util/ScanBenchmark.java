@@ -0,0 +1,76 @@
+package com.inexas.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Parser's bulk scans. The input is 'size' characters of text with a newline
+ * every 80 characters and leading indentation on each line. Compare the
+ * results with {@link ScanBenchmarkScalar} which runs the same benchmarks
+ * with the SWAR kernel switched off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	private char[] ca;
+	private final char[] stops = { '\n', ';', '|' };
+
+	@Setup
+	public void setup() {
+		ca = new char[size];
+		for(int i = 0; i < size; i++) {
+			final int column = i % 80;
+			ca[i] = column == 79 ? '\n' : column < 16 ? ' ' : (char)('a' + i % 26);
+		}
+	}
+
+	@Benchmark
+	public int ws() {
+		final Parser parser = new Parser(ca);
+		int result = 0;
+		while(!parser.isEof()) {
+			parser.ws();
+			parser.consumeUntil(' ');
+			result++;
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int consumeUntil() {
+		final Parser parser = new Parser(ca);
+		int result = 0;
+		while(parser.consumeUntil('\n') || parser.consume('\n')) {
+			result++;
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int consumeUntilAny() {
+		final Parser parser = new Parser(ca);
+		int result = 0;
+		while(parser.consumeUntilAny(stops) || parser.consume('\n')) {
+			result++;
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int count() {
+		return new Parser(ca).count('\n');
+	}
+
+	@Benchmark
+	public int lastIndexOf() {
+		return new Parser(ca).lastIndexOf('|');
+	}
+
+}
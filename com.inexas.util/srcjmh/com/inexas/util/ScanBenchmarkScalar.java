@@ -0,0 +1,12 @@
+package com.inexas.util;
+
+import org.openjdk.jmh.annotations.Fork;
+
+/**
+ * The ScanBenchmark benchmarks with the SWAR kernel switched off, i.e. the
+ * char at a time loops.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Dcom.inexas.util.swar=false")
+public class ScanBenchmarkScalar extends ScanBenchmark {
+	// Everything is inherited
+}
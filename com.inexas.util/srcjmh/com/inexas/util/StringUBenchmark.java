@@ -0,0 +1,62 @@
+package com.inexas.util;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * StringU stringify/destringify and escape/unescape. The size parameter is
+ * the number of array elements or the length of the string being escaped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUBenchmark {
+	@Param({ "16", "1024", "65536" })
+	public int size;
+
+	private List<String> list;
+	private String stringified;
+	private String toEscape;
+	private String escaped;
+
+	@Setup
+	public void setup() {
+		list = new ArrayList<>(size);
+		for(int i = 0; i < size; i++) {
+			list.add((i % 10 == 0) ? "a,b\\c" + i : "value" + i);
+		}
+		stringified = StringU.stringify(list, false);
+
+		final Text t = new Text(false);
+		for(int i = 0; i < size; i++) {
+			t.append(i % 20 == 0 ? '"' : i % 33 == 0 ? '\\' : (char)('a' + i % 26));
+		}
+		toEscape = t.toString();
+		escaped = StringU.escape(toEscape, '"', false);
+	}
+
+	@Benchmark
+	public String stringify() {
+		return StringU.stringify(list, false);
+	}
+
+	@Benchmark
+	public String[] destringifyStringArray() {
+		return StringU.destringifyStringArray(stringified);
+	}
+
+	@Benchmark
+	public String escape() {
+		return StringU.escape(toEscape, '"', true);
+	}
+
+	@Benchmark
+	public String unescape() {
+		return StringU.unescape(escaped, '"', false);
+	}
+
+}
@@ -0,0 +1,227 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Text.append() variants. The size parameter is the number of values
+ * appended per invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchmark {
+	@Param({ "16", "1024", "65536" })
+	public int size;
+
+	private String shortString;
+	private String longString;
+	private char[] longCharArray;
+	private Text longText;
+	/** A document of size lines to write */
+	private Text document;
+	/** The same document in Latin-1 mode */
+	private Text latin1Document;
+	private final WritableByteChannel nullChannel = new WritableByteChannel() {
+		@Override
+		public int write(ByteBuffer src) {
+			final int result = src.remaining();
+			src.position(src.limit());
+			return result;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+			// Nothing to do
+		}
+	};
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	/** Discards what's written */
+	private final Writer nullWriter = new Writer() {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			// Discard
+		}
+
+		@Override
+		public void flush() {
+			// Nothing to do
+		}
+
+		@Override
+		public void close() {
+			// Nothing to do
+		}
+	};
+
+	@Setup
+	public void setup() {
+		shortString = "Hello world";
+		final Text t = new Text(false);
+		for(int i = 0; i < 100; i++) {
+			t.append("The quick brown fox jumps over the lazy dog ");
+		}
+		longString = t.toString();
+		longCharArray = longString.toCharArray();
+		longText = t;
+
+		document = new Text(false);
+		latin1Document = new Text(false);
+		latin1Document.setLatin1();
+		for(final Text text : new Text[] { document, latin1Document }) {
+			for(int i = 0; i < size; i++) {
+				text.append("The quick brown fox jumps over the lazy dog ");
+				text.append(i);
+				text.newlinePrettyOrNot();
+			}
+		}
+	}
+
+	@Benchmark
+	public Text appendChar() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size; i++) {
+			result.append((char)('a' + (i & 15)));
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Text appendShortString() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size; i++) {
+			result.append(shortString);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Text appendLongString() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size / 16 + 1; i++) {
+			result.append(longString);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Text appendLongCharArray() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size / 16 + 1; i++) {
+			result.append(longCharArray);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Text appendLongText() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size / 16 + 1; i++) {
+			result.append((CharSequence)longText);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Text appendInt() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size; i++) {
+			result.append(i * 7919);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Text appendLong() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size; i++) {
+			result.append(i * 1_000_000_007L);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public void toStringThenWrite() throws IOException {
+		nullWriter.write(document.toString());
+	}
+
+	@Benchmark
+	public void writeTo() {
+		document.writeTo(nullWriter);
+	}
+
+	@Benchmark
+	public void writeToChannel() {
+		document.writeTo(nullChannel, encoder);
+	}
+
+	@Benchmark
+	public void writeToChannelLatin1() {
+		latin1Document.writeTo(nullChannel, encoder);
+	}
+
+	@Benchmark
+	public void autoFlush() {
+		final Text result = new Text(false);
+		result.setAutoFlush(nullWriter, 8 * 1024);
+		for(int i = 0; i < size; i++) {
+			result.append("The quick brown fox jumps over the lazy dog ");
+			result.append(i);
+			result.newlinePrettyOrNot();
+		}
+		result.flush();
+	}
+
+	@Benchmark
+	public Text buildDocument() {
+		final Text result = new Text(false);
+		buildDocument(result);
+		return result;
+	}
+
+	@Benchmark
+	public Text buildDocumentSegmented() {
+		final Text result = new Text(false);
+		result.setSegmented(64 * 1024);
+		buildDocument(result);
+		return result;
+	}
+
+	@Benchmark
+	public Text buildDocumentLatin1() {
+		final Text result = new Text(false);
+		result.setLatin1();
+		buildDocument(result);
+		return result;
+	}
+
+	private void buildDocument(Text result) {
+		for(int i = 0; i < size * 16; i++) {
+			result.append("The quick brown fox jumps over the lazy dog ");
+			result.append(i);
+			result.newlinePrettyOrNot();
+		}
+	}
+
+	@Benchmark
+	public Text appendDouble() {
+		final Text result = new Text(false);
+		for(int i = 0; i < size; i++) {
+			result.append(i / 7.0);
+		}
+		return result;
+	}
+
+}
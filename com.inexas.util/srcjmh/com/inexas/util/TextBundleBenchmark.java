@@ -0,0 +1,92 @@
+package com.inexas.util;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Loading a two layer TextBundle and reading strings, and rendering them as
+ * templates, from it. The size parameter is the number of keys in the base
+ * layer; the dialect layer overrides every tenth of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBundleBenchmark {
+	@Param({ "100", "5000" })
+	public int size;
+
+	private ClassLoader loader;
+	private File snapshot;
+	private TextBundle bundle;
+	private String[] keys;
+	private int next;
+	private Template.Bindings bindings;
+	private int id;
+
+	@Setup
+	public void setup() throws IOException {
+		final Path directory = Files.createTempDirectory("benchmark");
+		final Text base = new Text(), dialect = new Text();
+		keys = new String[size / 10];
+		for(int i = 0; i < size; i++) {
+			base.append("query.number" + i + "=select * from table" + i + " where id = {Id}\n");
+			if(i % 10 == 0) {
+				dialect.append("query.number" + i + "=SELECT * FROM TABLE" + i + " WHERE ID = {Id}\n");
+				keys[i / 10] = "query.number" + i;
+			}
+		}
+		Files.write(directory.resolve("bench.properties"), base.toString().getBytes("ISO-8859-1"));
+		dialect.append("insert=INSERT INTO PERSON(ID,NAME,EMAIL,CREATED) VALUES({Id},'{Name}','{Email}',{Created})\n");
+		Files.write(directory.resolve("bench_db2.properties"), dialect.toString().getBytes("ISO-8859-1"));
+		loader = new URLClassLoader(new URL[] { directory.toUri().toURL() });
+
+		Thread.currentThread().setContextClassLoader(loader);
+		bundle = new TextBundle("bench_db2");
+		snapshot = directory.resolve("bench_db2.snapshot").toFile();
+		bundle.save(snapshot);
+
+		final Template template = bundle.getTemplate(keys[0]);
+		id = template.indexOf("{Id}");
+		bindings = template.bind();
+	}
+
+	@Benchmark
+	public String getString() {
+		final String key = keys[next++ % keys.length];
+		return bundle.getString(key);
+	}
+
+	@Benchmark
+	public String get() {
+		final String key = keys[next++ % keys.length];
+		return bundle.get(key, "{Id}", "42");
+	}
+
+	@Benchmark
+	public String getFour() {
+		return bundle.get("insert", "{Id}", "42", "{Name}", "Keith", "{Email}", "keith@example.com", "{Created}", "NOW()");
+	}
+
+	@Benchmark
+	public String bindings() {
+		return bindings.set(id, "42").render();
+	}
+
+	@Benchmark
+	public TextBundle construct() {
+		Thread.currentThread().setContextClassLoader(loader);
+		return new TextBundle("bench_db2");
+	}
+
+	@Benchmark
+	public TextBundle loadSnapshot() {
+		return TextBundle.load("bench_db2", snapshot);
+	}
+
+}
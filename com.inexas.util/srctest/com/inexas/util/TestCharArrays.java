@@ -0,0 +1,85 @@
+package com.inexas.util;
+
+import static org.junit.Assert.*;
+import java.util.Random;
+import org.junit.Test;
+
+public class TestCharArrays {
+	private final static char[] alphabet = { 'a', 'b', ' ', '\n', '\t', ',', '\u8000', '\uffff' };
+
+	private char[] random(Random random, int length) {
+		final char[] result = new char[length];
+		for(int i = 0; i < length; i++) {
+			result[i] = alphabet[random.nextInt(alphabet.length)];
+		}
+		return result;
+	}
+
+	@Test
+	public void testAgainstSimpleLoops() {
+		final Random random = new Random(1957);
+		final char[] any = { ',', '\n', '\uffff' };
+		// Short arrays with every range, long ones so the SWAR paths are used
+		for(int length = 0; length < 200; length += length < 40 ? 1 : 13) {
+			final boolean all = length < 40;
+			for(int repeat = 0; repeat < 20; repeat++) {
+				final char[] ca = random(random, length);
+				if(repeat % 2 == 0 && length > 100) {
+					// Long runs of whitespace
+					for(int i = 0; i < 90; i++) {
+						ca[i] = i % 3 == 0 ? '\t' : ' ';
+					}
+				}
+				for(int from = 0; from <= (all ? length : Math.min(length, 5)); from++) {
+					for(int to = all ? from : Math.max(from, length - 5); to <= length; to++) {
+						for(final char c : alphabet) {
+							int indexOf = -1, lastIndexOf = -1, count = 0, indexOfAny = -1;
+							for(int i = from; i < to; i++) {
+								if(ca[i] == c) {
+									if(indexOf < 0) {
+										indexOf = i;
+									}
+									lastIndexOf = i;
+									count++;
+								}
+								if(indexOfAny < 0 && (ca[i] == ',' || ca[i] == '\n' || ca[i] == '\uffff')) {
+									indexOfAny = i;
+								}
+							}
+							assertEquals(indexOf, CharArrays.indexOf(ca, from, to, c));
+							assertEquals(lastIndexOf, CharArrays.lastIndexOf(ca, from, to, c));
+							assertEquals(count, CharArrays.count(ca, from, to, c));
+							assertEquals(indexOfAny, CharArrays.indexOfAny(ca, from, to, any));
+						}
+
+						int ws = from;
+						while(ws < to && (ca[ws] == ' ' || ca[ws] == '\n' || ca[ws] == '\t')) {
+							ws++;
+						}
+						assertEquals(ws, CharArrays.skipWhitespace(ca, from, to));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParser() {
+		final Parser parser = new Parser("  \t\n  key: value, other\n");
+		parser.ws();
+		assertEquals(6, parser.cursor());
+		assertTrue(parser.consumeUntilAny(':', ','));
+		assertEquals("key", parser.getConsumed());
+		parser.consume(':');
+		parser.ws();
+		assertTrue(parser.consumeUntilAny(',', '\n'));
+		assertEquals("value", parser.getConsumed());
+		parser.consume(',');
+		assertTrue(parser.consumeUntilAny(',', '\n'));
+		assertEquals(" other", parser.getConsumed());
+		assertFalse(parser.consumeUntilAny(',', '\n'));
+		assertEquals(2, parser.count(':') + parser.count(','));
+		assertEquals(parser.length() - 1, parser.lastIndexOf('\n'));
+	}
+
+}
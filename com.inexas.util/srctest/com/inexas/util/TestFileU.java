@@ -0,0 +1,140 @@
+package com.inexas.util;
+
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFileU {
+
+	@Rule
+	public final TemporaryFolder temporary = new TemporaryFolder();
+
+	private File write(String text, Charset charset) throws IOException {
+		final File result = temporary.newFile();
+		try(final Writer writer = new OutputStreamWriter(new FileOutputStream(result), charset)) {
+			writer.write(text);
+		}
+		return result;
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		final String ls = System.lineSeparator();
+		final File file = write("  one \r\ntwo\rthr\u00e9e\n\nfour", StandardCharsets.UTF_8);
+
+		assertEquals(
+				"  one " + ls + "two" + ls + "thr\u00e9e" + ls + ls + "four" + ls,
+				FileU.read(file, false, StandardCharsets.UTF_8));
+		assertEquals(
+				"one" + ls + "two" + ls + "thr\u00e9e" + ls + ls + "four" + ls,
+				FileU.read(file, true, StandardCharsets.UTF_8));
+		assertEquals(
+				Arrays.asList("  one ", "two", "thr\u00e9e", "", "four"),
+				FileU.readIntoStringList(file, false, StandardCharsets.UTF_8));
+		assertEquals(
+				Arrays.asList("one", "two", "thr\u00e9e", "", "four"),
+				FileU.readIntoStringList(file, true, StandardCharsets.UTF_8));
+
+		final char[] ca = FileU.readToCharacterArray(file, StandardCharsets.UTF_8);
+		assertEquals("  one \r\ntwo\rthr\u00e9e\n\nfour", new String(ca));
+		assertEquals(24, FileU.readToByteArray(file).length);
+
+		// Latin-1 is one byte per character so there's no copy
+		final File latin1 = write("caf\u00e9\n", StandardCharsets.ISO_8859_1);
+		assertEquals("caf\u00e9\n", new String(FileU.readToCharacterArray(latin1, StandardCharsets.ISO_8859_1)));
+
+		final File empty = write("", StandardCharsets.UTF_8);
+		assertEquals("", FileU.read(empty, false, StandardCharsets.UTF_8));
+		assertTrue(FileU.readIntoStringList(empty, false, StandardCharsets.UTF_8).isEmpty());
+		assertEquals(0, FileU.readToCharacterArray(empty).length);
+	}
+
+	private static List<String> names(Stream<Path> paths, Path root) {
+		try(final Stream<Path> stream = paths) {
+			return stream.map(path -> root.relativize(path).toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void testGetChildren() throws IOException {
+		final Path root = temporary.newFolder().toPath();
+		for(final String name : new String[] { "a.txt", "b.xml", "d/c.txt", "d/e/f.txt", "g.txt/h.txt" }) {
+			final Path path = root.resolve(name);
+			Files.createDirectories(path.getParent());
+			Files.createFile(path);
+		}
+		Files.createSymbolicLink(root.resolve("link.txt"), root.resolve("d"));
+
+		final File[] files = FileU.getChildren(root.toFile(), FileU.Type.FILE, ".*\\.txt");
+		assertEquals(1, files.length);
+		assertEquals("a.txt", files[0].getName());
+		assertEquals(3, FileU.getChildren(root.toFile(), FileU.Type.DIRECTORY, ".*").length);
+		assertEquals(5, FileU.getChildren(root.toFile(), FileU.Type.BOTH, ".*").length);
+
+		assertEquals(
+				Arrays.asList("a.txt", "d/c.txt", "g.txt/h.txt"),
+				names(FileU.getChildren(root, FileU.Type.FILE, ".*\\.txt", 2), root));
+		final List<String> all = Arrays.asList("a.txt", "d/c.txt", "d/e/f.txt", "g.txt/h.txt");
+		assertEquals(all, names(FileU.getChildren(root, FileU.Type.FILE, ".*\\.txt", Integer.MAX_VALUE), root));
+		assertEquals(all, names(FileU.getChildren(root, FileU.Type.FILE, ".*\\.txt", Integer.MAX_VALUE).parallel(), root));
+
+		// The link is a directory but isn't followed
+		assertEquals(
+				Arrays.asList("d", "d/e", "g.txt", "link.txt"),
+				names(FileU.getChildren(root, FileU.Type.DIRECTORY, ".*", Integer.MAX_VALUE), root));
+	}
+
+	@Test
+	public void testGetChildrenDeleted() throws IOException {
+		final Path root = temporary.newFolder().toPath();
+		for(int i = 0; i < 10; i++) {
+			Files.createFile(root.resolve("f" + i + ".txt"));
+			Files.createDirectories(root.resolve("d" + i));
+			Files.createFile(root.resolve("d" + i + "/g.txt"));
+		}
+
+		// Delete everything else once the walk has started, already listed
+		// entries that have gone are skipped
+		final List<Path> found = new ArrayList<>();
+		try(final Stream<Path> children = FileU.getChildren(root, FileU.Type.FILE, ".*", 2)) {
+			final Iterator<Path> i = children.iterator();
+			found.add(i.next());
+			try(final Stream<Path> all = Files.walk(root)) {
+				all.filter(path -> !path.equals(root) && !path.equals(found.get(0)))
+						.sorted(Comparator.reverseOrder())
+						.forEach(path -> path.toFile().delete());
+			}
+			i.forEachRemaining(found::add);
+		}
+		assertEquals(1, found.size());
+	}
+
+	@Test
+	public void testReadMapped() throws IOException {
+		final Text text = new Text(false);
+		while(text.length() < FileU.MAPPING_THRESHOLD * 2) {
+			text.append("line \u00e9 ");
+			text.append(text.length());
+			text.append('\n');
+		}
+		final File file = write(text.toString(), StandardCharsets.UTF_8);
+
+		final ByteBuffer bytes = FileU.readToByteBuffer(file);
+		assertTrue(bytes.isDirect());
+		assertEquals(file.length(), bytes.remaining());
+
+		final CharBuffer chars = FileU.readToCharBuffer(file, StandardCharsets.UTF_8);
+		assertEquals(text.toString(), chars.toString());
+		if(System.lineSeparator().equals("\n")) {
+			assertEquals(text.toString(), FileU.read(file, false, StandardCharsets.UTF_8));
+		}
+	}
+
+}
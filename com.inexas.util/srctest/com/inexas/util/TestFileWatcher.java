@@ -0,0 +1,102 @@
+package com.inexas.util;
+
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFileWatcher {
+
+	@Rule
+	public final TemporaryFolder temporary = new TemporaryFolder();
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+		while(!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+	}
+
+	private static void write(Path path, String text) throws IOException {
+		Files.write(path, text.getBytes("UTF-8"));
+	}
+
+	@Test
+	public void testWatch() throws Exception {
+		final Path directory = temporary.newFolder().toPath();
+		final BlockingQueue<Set<Path>> changes = new LinkedBlockingQueue<>();
+		try(final FileWatcher watcher = new FileWatcher(200)) {
+			watcher.watch(directory, false, changes::add);
+
+			// Both writes fall within the debounce period
+			write(directory.resolve("a.txt"), "a");
+			write(directory.resolve("b.txt"), "b");
+			final Set<Path> changed = changes.poll(10, TimeUnit.SECONDS);
+			assertEquals(
+					new HashSet<>(Arrays.asList(directory.resolve("a.txt"), directory.resolve("b.txt"))),
+					changed);
+
+			Files.delete(directory.resolve("a.txt"));
+			assertEquals(Collections.singleton(directory.resolve("a.txt")), changes.poll(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		final Path directory = temporary.newFolder().toPath();
+		write(directory.resolve("a.txt"), "one\ntwo");
+		write(directory.resolve("b.dat"), "ignored");
+
+		try(final FileWatcher watcher = new FileWatcher(50)) {
+			final Map<Path, List<String>> files = watcher.load(
+					directory,
+					".*\\.txt",
+					file -> FileU.readIntoStringList(file, false));
+			assertEquals(Collections.singleton(directory.resolve("a.txt")), files.keySet());
+			assertEquals(Arrays.asList("one", "two"), files.get(directory.resolve("a.txt")));
+
+			write(directory.resolve("a.txt"), "three");
+			await(() -> Arrays.asList("three").equals(files.get(directory.resolve("a.txt"))));
+
+			// A new sub-directory is loaded and then watched too
+			final Path sub = Files.createDirectory(directory.resolve("sub"));
+			write(sub.resolve("c.txt"), "c");
+			await(() -> files.containsKey(sub.resolve("c.txt")));
+			write(sub.resolve("d.txt"), "d");
+			await(() -> files.containsKey(sub.resolve("d.txt")));
+
+			Files.delete(directory.resolve("a.txt"));
+			await(() -> !files.containsKey(directory.resolve("a.txt")));
+			assertEquals(2, files.size());
+		}
+	}
+
+	@Test
+	public void testLoadVanished() throws Exception {
+		final Path directory = temporary.newFolder().toPath();
+		write(directory.resolve("a.txt"), "a");
+		write(directory.resolve("b.txt"), "b");
+
+		try(final FileWatcher watcher = new FileWatcher(50)) {
+			// b.txt is deleted between being listed and being loaded
+			final Map<Path, List<String>> files = watcher.load(
+					directory,
+					".*\\.txt",
+					file -> {
+						if(file.getName().equals("b.txt")) {
+							Files.delete(file.toPath());
+						}
+						return FileU.readIntoStringList(file, false);
+					});
+			assertEquals(Collections.singleton(directory.resolve("a.txt")), files.keySet());
+			assertEquals(Arrays.asList("a"), files.get(directory.resolve("a.txt")));
+		}
+	}
+
+}
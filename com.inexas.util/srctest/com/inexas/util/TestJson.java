@@ -0,0 +1,694 @@
+package com.inexas.util;
+
+import static org.junit.Assert.*;
+import java.io.*;
+import java.math.*;
+import java.nio.CharBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import com.inexas.exception.InvalidCallException;
+import com.inexas.util.JsonReader.Token;
+
+public class TestJson {
+
+	public static class Point implements JsonWriter.ToJson {
+		int x, y;
+		String label;
+
+		@Override
+		public void toJson(JsonWriter writer) {
+			writer.beginObject();
+			writer.property("x", x);
+			writer.property("y", y);
+			writer.property("label", label);
+			writer.endObject();
+		}
+	}
+
+	public static enum Colour {
+		RED, GREEN
+	}
+
+	public static class Base {
+		long id;
+	}
+
+	public static class Node extends Base {
+		private String name;
+		int count;
+		double weight;
+		boolean flag;
+		float ratio;
+		Integer boxed;
+		char initial;
+		Colour colour;
+		int[] numbers;
+		List<Node> children;
+		Map<String, Double> scores;
+		transient String ignored = "ignored";
+		static String alsoIgnored = "ignored";
+
+		private Node() {
+			// Needed for binding
+		}
+
+		Node(String name) {
+			this.name = name;
+		}
+	}
+
+	public static class Holdings {
+		Date when;
+		BigDecimal price;
+		BigInteger big;
+		HashMap<String, Integer> counts;
+		TreeMap<String, String> sorted;
+		SortedSet<String> tags;
+		LinkedList<Integer> queue;
+		Deque<String> deque;
+	}
+
+	public static class Loose<T> {
+		Object any;
+		T value;
+	}
+
+	public static class HasLoose {
+		Loose<String> loose;
+	}
+
+	public static class HasLocale {
+		Locale locale;
+	}
+
+	public static class ExtendsJdk extends Random {
+		private static final long serialVersionUID = 1L;
+		int x;
+	}
+
+	private void write(JsonWriter writer) {
+		writer.beginObject();
+		writer.property("s", "a\"b\\c\n\r\t\u0001\u00e9");
+		writer.property("i", -42);
+		writer.property("d", 2.5);
+		writer.property("b", true);
+		writer.property("n", (String)null);
+		writer.name("a");
+		writer.beginArray();
+		writer.value(1);
+		writer.beginObject();
+		writer.endObject();
+		writer.beginArray();
+		writer.endArray();
+		writer.nullValue();
+		writer.endArray();
+		writer.endObject();
+		assertTrue(writer.isComplete());
+	}
+
+	@Test
+	public void testWriter() {
+		final Text compact = new Text(false);
+		write(new JsonWriter(compact));
+		assertEquals(
+				"{\"s\":\"a\\\"b\\\\c\\n\\r\\t\\u0001\u00e9\",\"i\":-42,\"d\":2.5,\"b\":true,\"n\":null,"
+						+ "\"a\":[1,{},[],null]}",
+				compact.toString());
+
+		final Text pretty = new Text(true);
+		write(new JsonWriter(pretty));
+		assertEquals(
+				"{\n"
+						+ "\t\"s\": \"a\\\"b\\\\c\\n\\r\\t\\u0001\u00e9\",\n"
+						+ "\t\"i\": -42,\n"
+						+ "\t\"d\": 2.5,\n"
+						+ "\t\"b\": true,\n"
+						+ "\t\"n\": null,\n"
+						+ "\t\"a\": [\n"
+						+ "\t\t1,\n"
+						+ "\t\t{},\n"
+						+ "\t\t[],\n"
+						+ "\t\tnull\n"
+						+ "\t]\n"
+						+ "}",
+				pretty.toString());
+
+		// JSON lines
+		final Text lines = new Text(false);
+		final JsonWriter writer = new JsonWriter(lines);
+		writer.value(1);
+		writer.value("two");
+		writer.beginArray();
+		writer.endArray();
+		assertEquals("1\n\"two\"\n[]", lines.toString());
+	}
+
+	@Test
+	public void testWriterStreaming() {
+		final StringWriter out = new StringWriter();
+		final JsonWriter writer = new JsonWriter(out, false);
+		writer.beginArray();
+		for(int i = 0; i < 10_000; i++) {
+			writer.value(i);
+		}
+		writer.endArray();
+		writer.flush();
+		final String json = out.toString();
+		assertTrue(json.startsWith("[0,1,2,"));
+		assertTrue(json.endsWith(",9998,9999]"));
+	}
+
+	@Test
+	public void testWriterErrors() {
+		final JsonWriter writer = new JsonWriter(new Text(false));
+		writer.beginObject();
+		try {
+			writer.value(1);
+			fail();
+		} catch(final InvalidCallException e) {
+			// Expected, need a name first
+		}
+		try {
+			writer.endArray();
+			fail();
+		} catch(final InvalidCallException e) {
+			// Expected, in an object
+		}
+		writer.name("x");
+		try {
+			writer.name("y");
+			fail();
+		} catch(final InvalidCallException e) {
+			// Expected, need a value
+		}
+		try {
+			writer.value(Double.NaN);
+			fail();
+		} catch(final InvalidCallException e) {
+			// Expected
+		}
+		writer.value(1);
+		writer.endObject();
+		assertTrue(writer.isComplete());
+	}
+
+	@Test
+	public void testKeyedObject() {
+		final Point point = new Point();
+		point.x = 1;
+		point.y = -2;
+		point.label = "p\"1";
+		final String string = StringU.stringifyKeyedObject("key", point);
+		assertEquals("key:" + Point.class.getName() + ":{\"x\":1,\"y\":-2,\"label\":\"p\\\"1\"}", string);
+
+		final Pair<String, Point> pair = StringU.destringifyKeyedObject(string);
+		assertEquals("key", pair.object1);
+		assertEquals(1, pair.object2.x);
+		assertEquals(-2, pair.object2.y);
+		assertEquals("p\"1", pair.object2.label);
+	}
+
+	@Test
+	public void testReader() {
+		final JsonReader reader = new JsonReader(new Parser(
+				" {\"s\": \"a\\\"b\\\\c\\n\\u00e9\\/\", \"i\":-42,\r\n\"d\" : 2.5e1,"
+						+ "\"b\":false, \"n\":null, \"a\":[1, {}, [], true]}"));
+		assertEquals(Token.BEGIN_OBJECT, reader.peek());
+		reader.beginObject();
+		assertEquals("s", reader.nextName());
+		assertEquals("a\"b\\c\n\u00e9/", reader.nextString());
+		assertFalse(reader.nextNameEquals("x"));
+		assertEquals(-42, reader.nextInt());
+		assertTrue(reader.nextNameEquals("d"));
+		assertEquals(25, reader.nextLong());
+		assertEquals("b", reader.nextName());
+		assertFalse(reader.nextBoolean());
+		assertEquals("n", reader.nextName());
+		assertEquals(Token.NULL, reader.peek());
+		reader.nextNull();
+		assertEquals("a", reader.nextName());
+		reader.beginArray();
+		assertEquals(1.0, reader.nextDouble(), 0);
+		assertEquals(Token.BEGIN_OBJECT, reader.peek());
+		reader.skipValue();
+		reader.skipValue();
+		assertTrue(reader.hasNext());
+		assertTrue(reader.nextBoolean());
+		assertFalse(reader.hasNext());
+		reader.endArray();
+		reader.endObject();
+		assertEquals(Token.END_DOCUMENT, reader.peek());
+
+		// Skip a name and its value, JSON lines
+		final JsonReader lines = new JsonReader(new Parser(
+				"{\"x\":{\"y\":[1,\"]}\\\"\"]},\"z\":3}\n[\"two\"]\n"));
+		lines.beginObject();
+		lines.skipValue();
+		assertEquals("z", lines.nextName());
+		assertEquals("3", lines.nextString());
+		lines.endObject();
+		lines.beginArray();
+		assertEquals("two", lines.nextString());
+		lines.endArray();
+		assertFalse(lines.hasNext());
+
+		// Streamed
+		final Text text = new Text(false);
+		final JsonWriter writer = new JsonWriter(text);
+		writer.beginArray();
+		for(int i = 0; i < 10_000; i++) {
+			writer.value("v\"" + i);
+		}
+		writer.endArray();
+		final JsonReader streamed = new JsonReader(new Parser(new StringReader(text.toString()), 64, 32));
+		streamed.beginArray();
+		for(int i = 0; i < 10_000; i++) {
+			assertEquals("v\"" + i, streamed.nextString());
+		}
+		streamed.endArray();
+		assertEquals(Token.END_DOCUMENT, streamed.peek());
+	}
+
+	@Test
+	public void testReaderErrors() {
+		final String[] invalid = {
+				"",
+				"{",
+				"{\"a\" 1}",
+				"{\"a\":1,}",
+				"[1 2]",
+				"[\"abc]",
+				"{1:2}",
+				"[x]" };
+		for(final String json : invalid) {
+			try {
+				new JsonReader(new Parser(json)).skipValue();
+				fail(json);
+			} catch(final JsonReader.ParseException e) {
+				// Expected
+			}
+		}
+
+		try {
+			new JsonReader(new Parser("\"\\q\"")).nextString();
+			fail();
+		} catch(final JsonReader.ParseException e) {
+			// Expected, invalid escape
+		}
+
+		final JsonReader reader = new JsonReader(new Parser("[1.5, \"s\", 3000000000]"));
+		reader.beginArray();
+		try {
+			reader.nextLong();
+			fail();
+		} catch(final JsonReader.ParseException e) {
+			// Expected, not a whole number
+		}
+		assertEquals(1.5, reader.nextDouble(), 0);
+		try {
+			reader.nextInt();
+			fail();
+		} catch(final JsonReader.ParseException e) {
+			// Expected, a string
+		}
+		reader.skipValue();
+		try {
+			reader.nextInt();
+			fail();
+		} catch(final JsonReader.ParseException e) {
+			// Expected, too big
+		}
+		assertEquals(3_000_000_000L, reader.nextLong());
+		reader.endArray();
+	}
+
+	@Test
+	public void testCodec() throws Exception {
+		final JsonCodec<Node> codec = JsonCodec.of(Node.class);
+		assertSame(codec, JsonCodec.of(Node.class));
+
+		final Node node = new Node("root");
+		node.id = 1L << 40;
+		node.count = -3;
+		node.weight = 0.5;
+		node.flag = true;
+		node.ratio = 0.1f;
+		node.boxed = Integer.valueOf(7);
+		node.initial = 'r';
+		node.colour = Colour.GREEN;
+		node.numbers = new int[] { 1, 2 };
+		node.children = new ArrayList<>();
+		node.children.add(new Node("a\"b"));
+		node.scores = new LinkedHashMap<>();
+		node.scores.put("x", Double.valueOf(1.5));
+		node.scores.put("y", null);
+
+		final String json = codec.toJson(node);
+		assertEquals("{\"id\":1099511627776,\"name\":\"root\",\"count\":-3,\"weight\":0.5,\"flag\":true,"
+				+ "\"ratio\":0.1,\"boxed\":7,\"initial\":\"r\",\"colour\":\"GREEN\",\"numbers\":[1,2],"
+				+ "\"children\":[{\"id\":0,\"name\":\"a\\\"b\",\"count\":0,\"weight\":0.0,\"flag\":false,"
+				+ "\"ratio\":0.0,\"initial\":\"\\u0000\"}],\"scores\":{\"x\":1.5,\"y\":null}}",
+				json);
+
+		final Node read = codec.fromJson(json);
+		assertEquals(node.id, read.id);
+		assertEquals("root", read.name);
+		assertEquals(-3, read.count);
+		assertEquals(0.5, read.weight, 0);
+		assertTrue(read.flag);
+		assertEquals(0.1f, read.ratio, 0);
+		assertEquals(Integer.valueOf(7), read.boxed);
+		assertEquals('r', read.initial);
+		assertEquals(Colour.GREEN, read.colour);
+		assertArrayEquals(new int[] { 1, 2 }, read.numbers);
+		assertEquals(1, read.children.size());
+		assertEquals("a\"b", read.children.get(0).name);
+		assertNull(read.children.get(0).children);
+		assertEquals(node.scores, read.scores);
+		assertEquals("ignored", read.ignored);
+
+		// Any order, unknown properties, nulls and escaped names
+		final Node other = codec.fromJson(
+				"{\"unknown\": [1, {\"a\": 2}], \"count\": null, \"co\\u0075nt\": 5, \"name\": null, \"id\": 2}");
+		assertEquals(2, other.id);
+		assertEquals(5, other.count);
+		assertNull(other.name);
+		assertNull(codec.fromJson("null"));
+
+		try {
+			codec.fromJson("{\"count\": \"five\"}");
+			fail();
+		} catch(final JsonReader.ParseException e) {
+			// Expected
+		}
+		try {
+			JsonCodec.of(List.class);
+			fail();
+		} catch(final InvalidCallException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testCodecJdkTypes() {
+		final Holdings holdings = new Holdings();
+		holdings.when = new Date(1234567890123L);
+		holdings.price = new BigDecimal("12345678901234567890.123456789");
+		holdings.big = new BigInteger("-123456789012345678901234567890");
+		holdings.counts = new HashMap<>();
+		holdings.counts.put("a", Integer.valueOf(1));
+		holdings.sorted = new TreeMap<>();
+		holdings.sorted.put("b", "2");
+		holdings.sorted.put("a", "1");
+		holdings.tags = new TreeSet<>(Arrays.asList("y", "x"));
+		holdings.queue = new LinkedList<>(Arrays.asList(Integer.valueOf(3), Integer.valueOf(4)));
+		holdings.deque = new ArrayDeque<>(Arrays.asList("d"));
+
+		final JsonCodec<Holdings> codec = JsonCodec.of(Holdings.class);
+		final String json = codec.toJson(holdings);
+		assertEquals("{\"when\":1234567890123,\"price\":12345678901234567890.123456789,"
+				+ "\"big\":-123456789012345678901234567890,\"counts\":{\"a\":1},\"sorted\":{\"a\":\"1\",\"b\":\"2\"},"
+				+ "\"tags\":[\"x\",\"y\"],\"queue\":[3,4],\"deque\":[\"d\"]}",
+				json);
+
+		final Holdings read = codec.fromJson(json);
+		assertEquals(holdings.when, read.when);
+		assertEquals(holdings.price, read.price);
+		assertEquals(holdings.big, read.big);
+		assertEquals(holdings.counts, read.counts);
+		assertEquals(holdings.sorted, read.sorted);
+		assertEquals(TreeSet.class, read.tags.getClass());
+		assertEquals(holdings.tags, read.tags);
+		assertEquals(holdings.queue, read.queue);
+		assertEquals(Arrays.asList("d"), new ArrayList<>(read.deque));
+
+		// Big numbers may also be quoted, as Gson allows
+		assertEquals(new BigDecimal("1.5"), codec.fromJson("{\"price\":\"1.5\"}").price);
+
+		// Other JDK classes aren't bound field by field
+		for(final Class<?> type : new Class<?>[] { Date.class, Locale.class, HasLocale.class, ExtendsJdk.class }) {
+			try {
+				JsonCodec.of(type).toJson(null);
+				fail(type.getName());
+			} catch(final InvalidCallException e) {
+				// Expected
+			}
+		}
+
+		// Keyed objects that aren't bound by a codec
+		for(final Object object : new Object[] { "s", Integer.valueOf(1), holdings.when, holdings.price }) {
+			final String string = StringU.stringifyKeyedObject("k", object);
+			final Pair<String, Object> pair = StringU.destringifyKeyedObject(string);
+			assertEquals("k", pair.object1);
+			assertEquals(object, pair.object2);
+		}
+	}
+
+	@Test
+	public void testKeyedObjectRuntimeTypes() throws java.text.ParseException {
+		final List<Object> list = new ArrayList<>(Arrays.asList("a", Long.valueOf(1), Double.valueOf(2.5), Boolean.TRUE, null));
+		final Map<String, Object> map = new HashMap<>();
+		map.put("list", Arrays.asList("b"));
+		map.put("map", Collections.singletonMap("c", Long.valueOf(3)));
+		final HasLoose hasLoose = new HasLoose();
+		hasLoose.loose = new Loose<>();
+		hasLoose.loose.any = Long.valueOf(4);
+		hasLoose.loose.value = "v";
+		final Object[] objects = { list, map, Arrays.asList("d"), new HashMap<>(), UUID.randomUUID(), hasLoose };
+		final List<Object> read = new ArrayList<>();
+		for(final Object object : objects) {
+			final String string = StringU.stringifyKeyedObject("k", object);
+			final Pair<String, Object> pair = StringU.destringifyKeyedObject(string);
+			assertEquals("k", pair.object1);
+			read.add(pair.object2);
+		}
+
+		// Collections and Maps are read as ArrayLists and LinkedHashMaps...
+		assertEquals(list, read.get(0));
+		assertEquals(map, read.get(1));
+		assertEquals(Arrays.asList("d"), read.get(2));
+		assertEquals(Collections.emptyMap(), read.get(3));
+		assertEquals(objects[4], read.get(4));
+
+		// ...as are Objects and type variables
+		final Loose<?> loose = ((HasLoose)read.get(5)).loose;
+		assertEquals(Long.valueOf(4), loose.any);
+		assertEquals("v", loose.value);
+		hasLoose.loose.any = new Point();
+		assertEquals("{\"loose\":{\"any\":{\"x\":0,\"y\":0,\"label\":null},\"value\":\"v\"}}",
+				JsonCodec.of(HasLoose.class).toJson(hasLoose));
+
+		// Dates written by Gson or as ISO 8601
+		final String gson = "Feb 13, 2009 11:31:30 PM";
+		final Date date = new java.text.SimpleDateFormat("MMM d, yyyy h:mm:ss a", Locale.US).parse(gson);
+		final Pair<String, Date> fromGson = StringU.destringifyKeyedObject("k:java.util.Date:\"" + gson + '"');
+		assertEquals(date, fromGson.object2);
+		final Pair<String, Date> fromIso = StringU.destringifyKeyedObject("k:java.util.Date:\"2009-02-13T23:31:30Z\"");
+		assertEquals(new Date(1234567890000L), fromIso.object2);
+	}
+
+	@Test
+	public void testUtilities() throws Exception {
+		final File file = File.createTempFile("test", ".json");
+		file.deleteOnExit();
+		try(final Writer writer = new FileWriter(file)) {
+			writer.write("{\n"
+					+ "\t\"name\": \"root\",\n"
+					+ "\t\"size\": 3,\n"
+					+ "\t\"list\": [1, 2.5, \"x\", null, {\"a\": true}],\n"
+					+ "\t\"children\": [\n"
+					+ "\t\t{\"name\": \"a\", \"children\": [{\"name\": \"b\"}]},\n"
+					+ "\t\t{\"name\": \"c\"}\n"
+					+ "\t]\n"
+					+ "}\n");
+		}
+		final JsonUtilities json = new JsonUtilities(file);
+		assertEquals("root", json.getString("name"));
+		assertEquals("x", json.getString("missing", "x"));
+		assertEquals(3, json.getInt("size"));
+		assertEquals(7, json.getInt("missing", 7));
+		try {
+			json.getInt("name");
+			fail();
+		} catch(final JsonException e) {
+			assertTrue(e.getMessage().contains("expected number"));
+		}
+		try {
+			json.getString("size");
+			fail();
+		} catch(final JsonException e) {
+			assertTrue(e.getMessage().contains("expected string"));
+		}
+		try {
+			json.getString("missing");
+			fail();
+		} catch(final JsonException e) {
+			assertTrue(e.getMessage().contains("missing key"));
+		}
+
+		final List<?> list = (List<?>)json.getObject("list");
+		assertEquals(Long.valueOf(1), list.get(0));
+		assertEquals(Double.valueOf(2.5), list.get(1));
+		assertEquals("x", list.get(2));
+		assertNull(list.get(3));
+		assertEquals("{\"a\": true}", list.get(4).toString());
+
+		final List<JsonUtilities> children = json.getChildren("children");
+		assertEquals(2, children.size());
+		assertEquals("c", children.get(1).getString("name"));
+		assertTrue(json.getChildren("missing").isEmpty());
+
+		final List<String> visited = new ArrayList<>();
+		json.visit("children", (source, parent) -> {
+			final String name = source.getString("name");
+			visited.add(parent + "/" + name);
+			return name;
+		});
+		assertEquals(Arrays.asList("null/root", "root/a", "a/b", "root/c"), visited);
+
+		final Node root = json.as(Node.class);
+		assertEquals("root", root.name);
+		assertEquals("b", root.children.get(0).children.get(0).name);
+		final List<Node> nodes = json.getChildren("children", Node.class);
+		assertEquals("c", nodes.get(1).name);
+		assertNull(json.get("missing", Node.class));
+		try {
+			json.get("list", Node.class);
+			fail();
+		} catch(final JsonException e) {
+			// Expected
+		}
+
+		try {
+			new JsonUtilities("{\"a\": 1", "test");
+			fail();
+		} catch(final JsonException e) {
+			// Expected
+		}
+		try {
+			new JsonUtilities("[]", "test");
+			fail();
+		} catch(final JsonException e) {
+			// Expected
+		}
+
+		// Malformed values are found when loading, not on access
+		for(final String malformed : new String[] {
+				"{\"a\": trueish}", "{\"a\": nul}", "{\"a\": 1.2.3}", "{\"a\": -}", "{\"a\": 01}",
+				"{\"a\": 1.}", "{\"a\": 1e}", "{\"a\": \"\\q\"}", "{\"a\": \"\\u12g4\"}", "{\"\\q\": 1}" }) {
+			try {
+				new JsonUtilities(malformed, "test");
+				fail(malformed);
+			} catch(final JsonException e) {
+				// Expected
+			}
+		}
+		final JsonUtilities numbers = new JsonUtilities(
+				"{\"a\": -0.5e+3, \"b\": [0, -1, 2E-2, true, false, null], \"c\": \"\\u00e9\\/\", "
+						+ "\"d\": 123456789012345678901234}",
+				"test");
+		assertEquals(Double.valueOf(-500), numbers.getObject("a"));
+		assertEquals(
+				Arrays.asList(Long.valueOf(0), Long.valueOf(-1), Double.valueOf(0.02), Boolean.TRUE, Boolean.FALSE, null),
+				numbers.getObject("b"));
+		assertEquals("\u00e9/", numbers.getString("c"));
+		try {
+			numbers.getObject("d");
+			fail();
+		} catch(final JsonException e) {
+			// Expected, too big for a Long
+		}
+	}
+
+	@Test
+	public void testJsonLines() throws Exception {
+		final File file = File.createTempFile("test", ".jsonl");
+		file.deleteOnExit();
+		final int count = 5_000;
+		try(final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+			for(int i = 0; i < count; i++) {
+				writer.write("{\"id\": " + i + ", \"name\": \"n\u00e9" + i + "\"}");
+				writer.write(i % 7 == 0 ? "\r\n" : i % 11 == 0 ? "\n \n" : "\n");
+			}
+		}
+
+		// Small chunks so there are lots of them
+		final List<Integer> ids = JsonLines.stream(file, true, 1000)
+				.map(json -> {
+					try {
+						assertEquals("n\u00e9" + json.getInt("id"), json.getString("name"));
+						return Integer.valueOf(json.getInt("id"));
+					} catch(final JsonException e) {
+						throw new RuntimeException(e);
+					}
+				})
+				.collect(Collectors.toList());
+		assertEquals(count, ids.size());
+		for(int i = 0; i < count; i++) {
+			assertEquals(i, ids.get(i).intValue());
+		}
+
+		final List<Node> nodes = JsonLines.stream(file, Node.class, true, 1000).collect(Collectors.toList());
+		assertEquals(count, nodes.size());
+		assertEquals(count - 1, nodes.get(count - 1).id);
+
+		final AtomicLong sum = new AtomicLong();
+		JsonLines.forEach(file, Node.class, node -> sum.addAndGet(node.id));
+		assertEquals((long)count * (count - 1) / 2, sum.get());
+		assertEquals(count, JsonLines.stream(file, false).count());
+
+		try(final Writer writer = new FileWriter(file, true)) {
+			writer.write("{\"id\": 1\n");
+		}
+		try {
+			JsonLines.stream(file, false).count();
+			fail();
+		} catch(final RuntimeException e) {
+			assertTrue(e.getMessage().contains("Error in JSON line"));
+		}
+	}
+
+	@Test
+	public void testIndex() throws Exception {
+		final String text = "xx{\"a\": {\"b\": [1, {\"c\": \"}\"}], \"d\": 2}, "
+				+ "\"e\\u0021\": \"escaped\", \"e\": null, \"a\\\\n\": 3, \"z\": [[], {}, 4]}yy";
+		final JsonUtilities json = new JsonUtilities(CharBuffer.wrap(text, 2, text.length() - 2), "test");
+		assertEquals(3, json.getInt("missing", 3));
+		assertEquals("escaped", json.getString("e!"));
+		assertEquals("x", json.getString("e", "x"));
+		assertEquals(3, json.getInt("a\\n"));
+		assertEquals(9, json.getInt("a\n", 9));
+
+		final JsonUtilities a = (JsonUtilities)json.getObject("a");
+		assertEquals(2, a.getInt("d"));
+		assertEquals("{\"b\": [1, {\"c\": \"}\"}], \"d\": 2}", a.toString());
+		final List<?> b = (List<?>)a.getObject("b");
+		assertEquals(2, b.size());
+		assertEquals("}", ((JsonUtilities)b.get(1)).getString("c"));
+
+		final List<?> z = (List<?>)json.getObject("z");
+		assertEquals(Collections.emptyList(), z.get(0));
+		assertEquals(Long.valueOf(4), z.get(2));
+
+		// A slice of a heap buffer is used without copying
+		final JsonUtilities slice = new JsonUtilities(
+				CharBuffer.wrap(text.toCharArray(), 2, text.length() - 4), "test");
+		assertEquals("escaped", slice.getString("e!"));
+		assertEquals(2, ((JsonUtilities)slice.getObject("a")).getInt("d"));
+
+		// Deep nesting
+		final Text deep = new Text(false);
+		deep.append("{\"x\":");
+		for(int i = 0; i < 10_000; i++) {
+			deep.append('[');
+		}
+		for(int i = 0; i < 10_000; i++) {
+			deep.append(']');
+		}
+		deep.append(",\"y\":1}");
+		assertEquals(1, new JsonUtilities(deep.toString(), "deep").getInt("y"));
+	}
+
+}
@@ -11,7 +11,13 @@
 package com.inexas.util;
 
 import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
 import org.junit.Test;
+import com.inexas.exception.InvalidCallException;
 
 public class TestParser {
 
@@ -20,13 +26,399 @@ public class TestParser {
 	}
 
 	private void doValueTest(boolean expectedResult, Object expectedObject, String toTest) {
-		final Parser t = new Parser(toTest);
-		final int start = t.cursor();
-		if(t.consumeString()) {
-			assertTrue(expectedResult);
-			assertEquals(expectedObject, t.getString(start));
-		} else {
-			assertFalse(expectedResult);
+		for(final Parser t : getParsers(toTest)) {
+			final int start = t.cursor();
+			if(t.consumeString()) {
+				assertTrue(expectedResult);
+				assertEquals(expectedObject, t.getString(start));
+			} else {
+				assertFalse(expectedResult);
+			}
+		}
+	}
+
+	/**
+	 * @return Parsers over the same input in each of the supported modes.
+	 */
+	private Parser[] getParsers(String string) {
+		final int length = string.length();
+
+		// Slice of a larger array...
+		final char[] padded = ("xx" + string + "yyy").toCharArray();
+
+		// Heap CharBuffer with a non-zero position...
+		final CharBuffer heap = CharBuffer.wrap(padded);
+		heap.position(2);
+		heap.limit(2 + length);
+
+		// Direct CharBuffer, no backing array...
+		final CharBuffer direct = ByteBuffer.allocateDirect(2 * length).asCharBuffer();
+		direct.put(string);
+		direct.flip();
+
+		return new Parser[] {
+				new Parser(string),
+				new Parser(padded, 2, length),
+				new Parser(heap),
+				new Parser(direct),
+				new Parser(new Text(string)),
+				Parser.wrap(string),
+				new Parser(new StringReader(string), 32, 4)
+		};
+	}
+
+	@Test
+	public void testModes() {
+		final String string = "abc_12 -345 'q\\'uote' 0 x\ny";
+		for(final Parser t : getParsers(string)) {
+			assertEquals('c', t.charAt(2));
+			assertEquals("bc_", t.subSequence(1, 4).toString());
+			// A streaming parser's window is big enough to have read it all
+			assertEquals(string, t.toString());
+			assertEquals(string.length(), t.length());
+			if(t.isStreaming()) {
+				try {
+					t.toCharArray();
+					fail();
+				} catch(final InvalidCallException e) {
+					// Expected
+				}
+				try {
+					t.lastIndexOf('y');
+					fail();
+				} catch(final InvalidCallException e) {
+					// Expected
+				}
+				try {
+					t.count('\'');
+					fail();
+				} catch(final InvalidCallException e) {
+					// Expected
+				}
+			} else {
+				assertArrayEquals(string.toCharArray(), t.toCharArray());
+				assertEquals(string.lastIndexOf('y'), t.lastIndexOf('y'));
+				assertEquals(3, t.count('\''));
+			}
+
+			assertTrue(t.consumeAscii(Parser.ASCII_a_z, 3));
+			assertTrue(t.consume('_'));
+			int save = t.cursor();
+			assertTrue(t.consumeInt());
+			assertEquals("12", t.getString(save));
+			assertTrue(t.ws());
+			save = t.cursor();
+			assertTrue(t.consumeInt());
+			assertEquals("-345", t.getString(save));
+			t.ws();
+			assertTrue(t.consumeString());
+			assertEquals("'q\\'uote'", t.getConsumed());
+			t.ws();
+			assertTrue(t.consumePint());
+			t.ws();
+			assertEquals("x\ny", t.parseUntil(' '));
+			assertTrue(t.isEof());
+			assertEquals(Parser.EOF, t.peek());
+		}
+	}
+
+	private void doIntTest(String toTest, int expected, int cursor) {
+		for(final Parser t : getParsers(toTest)) {
+			assertEquals(expected, t.tryParseInt());
+			assertEquals(cursor >= 0, t.parsed());
+			assertEquals(Math.max(cursor, 0), t.cursor());
+		}
+	}
+
+	private void doDoubleTest(String toTest) {
+		for(final Parser t : getParsers(toTest)) {
+			assertEquals(Double.parseDouble(toTest), t.parseDouble(), 0.0);
+			assertTrue(t.isEof());
+		}
+	}
+
+	@Test
+	public void testParseNumbers() {
+		doIntTest("0", 0, 1);
+		doIntTest("012", 0, 1);
+		doIntTest("123a", 123, 3);
+		doIntTest("-2147483648", Integer.MIN_VALUE, 11);
+		doIntTest("2147483647", Integer.MAX_VALUE, 10);
+		doIntTest("2147483648", 0, -1);
+		doIntTest("-", 0, -1);
+		doIntTest("-0", 0, -1);
+		doIntTest("x", 0, -1);
+
+		assertEquals(Long.MIN_VALUE, new Parser("-9223372036854775808").parseLong());
+		assertEquals(Long.MAX_VALUE, new Parser("9223372036854775807").parseLong());
+		assertEquals(0, new Parser("9223372036854775808").tryParseLong());
+
+		assertEquals(0xCafeBabeL, new Parser("CafeBabe").parseHex());
+		assertEquals(-1, new Parser("ffffffffffffffff").parseHex());
+		final Parser tooLong = new Parser("10000000000000000");
+		assertEquals(0, tooLong.tryParseHex());
+		assertFalse(tooLong.parsed());
+
+		doDoubleTest("0");
+		doDoubleTest("-0");
+		doDoubleTest("1");
+		doDoubleTest("-12.5");
+		doDoubleTest("0.1");
+		doDoubleTest("0.000123");
+		doDoubleTest("3.141592653589793");
+		doDoubleTest("1e10");
+		doDoubleTest("1.5E-7");
+		doDoubleTest("2.5e+300");
+		doDoubleTest("123456789012345678901234567890");
+		doDoubleTest("4.9e-324");
+		doDoubleTest("1e400");
+
+		final Parser partial = new Parser("1.e5");
+		assertEquals(1.0, partial.parseDouble(), 0.0);
+		assertEquals(1, partial.cursor());
+	}
+
+	@Test(expected = Parser.ParseException.class)
+	public void testParseIntOverflow() {
+		new Parser("99999999999").parseInt();
+	}
+
+	@Test
+	public void testSpan() {
+		final Interner keywords = new Interner("select", "from", "where");
+		final String string = "select name from table";
+		for(final Parser t : getParsers(string)) {
+			assertTrue(t.consumeAscii(Parser.ASCII_a_z));
+			final Span span = t.getSpan();
+			assertEquals(0, span.start());
+			assertEquals(6, span.end());
+			assertTrue(span.contentEquals("select"));
+			assertFalse(span.equals((Object)"select"));
+			assertTrue(span.equalsIgnoreCase("SELECT"));
+			assertFalse(span.contentEquals("selects"));
+			assertEquals("select".hashCode(), span.hashCode());
+			assertTrue(keywords.get(span) == "select");
+			assertEquals("lec", span.subSequence(2, 5).toString());
+			assertEquals("", span.subSequence(6, 6).toString());
+			try {
+				span.subSequence(4, 8);
+				fail();
+			} catch(final IndexOutOfBoundsException e) {
+				// Expected
+			}
+			t.ws();
+
+			t.consumeAscii(Parser.ASCII_a_z);
+			assertNull(keywords.get(t.getSpan()));
+			assertEquals("name", t.getSpan().toString());
+			t.ws();
+
+			final int save = t.cursor();
+			t.consumeAscii(Parser.ASCII_a_z);
+			assertTrue(keywords.get(t.getSpan(save)) == "from");
+		}
+
+		final Interner interner = new Interner();
+		for(int i = 0; i < 1000; i++) {
+			final String s = Integer.toString(i);
+			assertEquals(s, interner.intern(new Text(s)));
+		}
+		assertEquals(1000, interner.size());
+		final String s = interner.get(new Text("999"));
+		assertTrue(s == interner.intern("999"));
+	}
+
+	@Test
+	public void testStreaming() {
+		final int lines = 10_000;
+		final Text t = new Text(false);
+		for(int i = 0; i < lines; i++) {
+			t.append("1957/04/30 12:34:56.007 2..");
+			t.append(i + 2);
+			t.append('\n');
+		}
+
+		final Parser parser = new Parser(new CharArrayReader(t.toCharArray()), 64, 32);
+		int count = 0;
+		while(!parser.isEof()) {
+			final LocalDateTime datetime = DateU.parseStandardDatetime(parser);
+			assertEquals("1957/04/30 12:34:56.007", DateU.formatStandardDatetime(datetime));
+			assertTrue(parser.ws());
+			final Cardinality cardinality = Cardinality.parse(parser);
+			assertEquals(count + 2, cardinality.to);
+			assertTrue(parser.consume('\n'));
+			count++;
+		}
+		assertEquals(lines, count);
+		assertTrue(parser.length() > 64);
+	}
+
+	@Test(expected = Parser.ParseException.class)
+	public void testStreamingBacktrackTooFar() {
+		final Parser parser = new Parser(new StringReader("abcdefghijklmnopqrstuvwxyz"), 8, 2);
+		parser.consumeAscii(Parser.ASCII_a_z, 20);
+		parser.setCursor(1);
+	}
+
+	@Test
+	public void testStreamingFailedLookAhead() {
+		// Failed matches that look further ahead than the window holds
+		final String letters = "abcdefghijklmnopqrstuvwxyz";
+		final String[] inputs = {
+				"'" + letters + "\nrest",
+				"'" + letters,
+				letters + " rest",
+				"123456789012345678901234 rest",
+				"0123456789abcdef0123456789abcdef rest" };
+		final List<Function<Parser, Boolean>> matches = Arrays.asList(
+				p -> Boolean.valueOf(p.consumeString()),
+				p -> Boolean.valueOf(p.consumeString()),
+				p -> Boolean.valueOf(p.consume(CharClass.ASCII_LETTER, 30, 40)),
+				p -> {
+					p.tryParseLong();
+					return Boolean.valueOf(p.parsed());
+				},
+				p -> {
+					p.tryParseHex();
+					return Boolean.valueOf(p.parsed());
+				});
+		for(int i = 0; i < inputs.length; i++) {
+			// Within the window the cursor is not moved...
+			final Parser roomy = new Parser(new StringReader(inputs[i]), 64, 2);
+			assertFalse(matches.get(i).apply(roomy).booleanValue());
+			assertEquals(0, roomy.cursor());
+			assertEquals(inputs[i].charAt(0), roomy.peek());
+
+			// ...beyond it the match throws rather than lose the cursor
+			final Parser cramped = new Parser(new StringReader(inputs[i]), 8, 2);
+			try {
+				matches.get(i).apply(cramped);
+				fail(inputs[i]);
+			} catch(final Parser.ParseException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("Look ahead exceeds window size"));
+			}
+		}
+	}
+
+	@Test
+	public void testCharClass() {
+		final CharClass greek = new CharClass.Builder().add('\u0391', '\u03a9').add('\u03b1', '\u03c9').build();
+		final CharClass word = new CharClass.Builder()
+				.add(CharClass.ASCII_LETTER)
+				.add(greek)
+				.add("_$")
+				.build();
+		assertTrue(word.matches('$'));
+		assertTrue(word.matches('\u03b2'));
+		assertFalse(word.matches('\u03aa'));
+		assertFalse(word.matches('1'));
+		assertEquals("[$A-Z_a-z\\u0391-\\u03a9\\u03b1-\\u03c9]", word.toString());
+
+		final CharClass notWord = new CharClass.Builder().add(word).negate().build();
+		for(char c = 0; c < 0x400; c++) {
+			assertTrue(word.matches(c) != notWord.matches(c));
+		}
+		assertTrue(notWord.matches('\uffff'));
+		assertEquals(word, new CharClass.Builder().add(notWord).negate().build());
+		assertEquals(CharClass.DIGIT, new CharClass.Builder().add(c -> c >= '0' && c <= '9').build());
+
+		for(final Parser t : getParsers("ab\u03b1\u03b2_9 1234567 x")) {
+			assertTrue(t.consume(word));
+			assertEquals("ab\u03b1\u03b2_", t.getConsumed());
+			assertFalse(t.consume(word));
+			assertTrue(t.consume(CharClass.DIGIT, 0, 3));
+			assertTrue(t.consume(CharClass.DIGIT, 0, 3));
+			assertEquals("", t.getConsumed());
+			assertTrue(t.consume(CharClass.WHITESPACE));
+			assertFalse(t.consume(CharClass.DIGIT, 8, 10));
+			assertEquals(7, t.cursor());
+			assertTrue(t.consume(CharClass.DIGIT, 2, 5));
+			assertEquals("12345", t.getConsumed());
+			assertTrue(t.consume(CharClass.DIGIT, 2, 2));
+			assertTrue(t.peek(CharClass.WHITESPACE));
+			t.ws();
+			assertTrue(t.consume(word, 1, 1));
+			assertTrue(t.isEof());
+			assertFalse(t.peek(word));
+		}
+
+		// Tokens that span refills of a streaming window
+		final Parser parser = new Parser(new StringReader("aaaaaaaaaaaaaaaaaaaa bbbbbbbbbbbbbbbbbbbbbbb"), 32, 4);
+		assertTrue(parser.consume(CharClass.ASCII_LETTER));
+		assertEquals(20, parser.getConsumed().length());
+		parser.ws();
+		assertTrue(parser.consume(CharClass.ASCII_LETTER));
+		assertEquals(23, parser.getConsumed().length());
+		assertTrue(parser.isEof());
+	}
+
+	@Test
+	public void testRules() {
+		// key '=' ( int | word ) ( ',' key '=' ( int | word ) )*
+		final Rule key = Rule.capture(0, Rule.chars(CharClass.ASCII_LETTER));
+		final Rule value = Rule.choice(
+				Rule.capture(1, Rule.of(Parser::consumeInt)),
+				Rule.capture(2, Rule.chars(CharClass.ASCII_LETTER)));
+		final Rule pair = Rule.sequence(key, Rule.ch('='), value);
+		final Rule list = Rule.sequence(pair, Rule.repeat(Rule.sequence(Rule.ch(','), pair), 0, Cardinality.MANY));
+
+		for(final Parser t : getParsers("a=1,bc=-23,d=x,e=")) {
+			final Match match = new Match(t, 3);
+			assertTrue(match.matches(list));
+			// The failed ",e=" is undone
+			assertEquals(14, t.cursor());
+			assertEquals("d", match.getString(0));
+			assertEquals(-23, match.getInt(1, 0));
+			assertEquals("x", match.getSpan(2).toString());
+
+			t.setCursor(0);
+			assertTrue(match.matches(Rule.sequence(pair, Rule.optional(Rule.string(",z")))));
+			assertEquals(3, t.cursor());
+			assertFalse(match.isCaptured(2));
+			assertEquals(1, match.getInt(1, 0));
+
+			t.setCursor(10);
+			assertFalse(match.matches(Rule.repeat(Rule.sequence(Rule.ch(','), pair), 2, 3)));
+			assertEquals(10, t.cursor());
+			assertFalse(match.isCaptured(0));
+		}
+
+		// Without memoisation the parenthesized terms are re-parsed for each
+		// alternative of expression so the work grows exponentially with the
+		// nesting depth, with it it's linear
+		final int[] calls = new int[1];
+		final Rule digits = Rule.of(parser -> {
+			calls[0]++;
+			return parser.consume(CharClass.DIGIT);
+		});
+		final Text text = new Text();
+		for(int i = 0; i < 10; i++) {
+			text.append('(');
+		}
+		text.append('1');
+		for(int i = 0; i < 10; i++) {
+			text.append(')');
+		}
+		final String input = text.toString();
+		for(final boolean memo : new boolean[] { false, true }) {
+			final Rule.Reference expression = Rule.reference();
+			Rule term = Rule.choice(Rule.sequence(Rule.ch('('), expression, Rule.ch(')')), digits);
+			if(memo) {
+				term = term.memo();
+			}
+			expression.set(Rule.choice(
+					Rule.sequence(term, Rule.ch('+'), expression),
+					Rule.sequence(term, Rule.ch('-'), expression),
+					term));
+			calls[0] = 0;
+			final Parser parser = new Parser(input);
+			assertTrue(new Match(parser, 0).matches(expression));
+			assertTrue(parser.isEof());
+			if(memo) {
+				assertEquals(1, calls[0]);
+			} else {
+				assertEquals(177_147, calls[0]); // 3^11
+			}
 		}
 	}
 
@@ -0,0 +1,147 @@
+package com.inexas.util;
+
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestResourceIndex {
+
+	@Rule
+	public final TemporaryFolder temporary = new TemporaryFolder();
+
+	private File directory(String... names) throws IOException {
+		final File result = temporary.newFolder();
+		for(final String name : names) {
+			final File file = new File(result, name);
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+		}
+		return result;
+	}
+
+	private static File jar(File file, String... names) throws IOException {
+		try(final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+			for(final String name : names) {
+				out.putNextEntry(new ZipEntry(name));
+				out.closeEntry();
+			}
+		}
+		return file;
+	}
+
+	@Test
+	public void testFind() throws IOException {
+		final File directory = directory("a.properties", "com/b.properties", "com/c.txt");
+		final File jar = jar(temporary.newFile(), "com/", "com/d.properties", "e.txt");
+		final String classPath = directory.getPath() + File.pathSeparator + File.pathSeparator
+				+ jar.getPath() + File.pathSeparator + "missing.jar";
+		final ResourceIndex index = new ResourceIndex(classPath, null);
+
+		assertEquals(6, index.size());
+		final List<String> found = index.find(".*\\.properties", true);
+		Collections.sort(found);
+		assertEquals(Arrays.asList("/a.properties", "/com/b.properties", "com/d.properties"), found);
+		assertEquals(Arrays.asList("/com/c.txt"), index.find(".*\\.txt", false));
+
+		final List<String> globbed = index.glob("**/*.properties", true);
+		Collections.sort(globbed);
+		assertEquals(Arrays.asList("/a.properties", "/com/b.properties", "com/d.properties"), globbed);
+		assertEquals(Arrays.asList("/a.properties"), index.glob("/?.{properties,xml}", true));
+		assertEquals(Arrays.asList("/com/c.txt", "e.txt"), index.glob("**.txt", true));
+		assertEquals(Arrays.asList("e.txt"), index.glob("*.txt", true));
+
+		// New files are seen after a refresh
+		new File(directory, "f.properties").createNewFile();
+		assertEquals(3, index.find(".*\\.properties", true).size());
+		index.refresh();
+		assertEquals(4, index.find(".*\\.properties", true).size());
+	}
+
+	@Test
+	public void testGlob() {
+		assertEquals("[^/]*\\.txt", ResourceIndex.toRegexp("*.txt"));
+		assertEquals(".*/[^/]", ResourceIndex.toRegexp("**/?"));
+		assertEquals("(?:a|b)\\}", ResourceIndex.toRegexp("{a,b}}"));
+		assertEquals("[^a-c]\\(1\\)", ResourceIndex.toRegexp("[!a-c](1)"));
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		final File jar = jar(temporary.newFile(), "a.txt");
+		final File cache = new File(temporary.getRoot(), "test.cache");
+
+		assertEquals(Arrays.asList("a.txt"), new ResourceIndex(jar.getPath(), cache).find(".*", true));
+		assertTrue(cache.isFile());
+
+		// Same size and time so the cache is believed...
+		final long lastModified = jar.lastModified();
+		jar(jar, "b.txt");
+		assertTrue(jar.setLastModified(lastModified));
+		assertEquals(Arrays.asList("a.txt"), new ResourceIndex(jar.getPath(), cache).find(".*", true));
+
+		// ...but not once the JAR's time changes
+		assertTrue(jar.setLastModified(lastModified + 2000));
+		assertEquals(Arrays.asList("b.txt"), new ResourceIndex(jar.getPath(), cache).find(".*", true));
+		assertEquals(Arrays.asList("b.txt"), new ResourceIndex(jar.getPath(), cache).find(".*", true));
+	}
+
+	@Test
+	public void testUnreadable() throws IOException {
+		final File jar = jar(temporary.newFile(), "a.txt");
+		final File corrupt = temporary.newFile();
+		Files.write(corrupt.toPath(), "Not a JAR".getBytes());
+		final String classPath = corrupt.getPath() + File.pathSeparator + jar.getPath();
+
+		// A corrupt JAR has no resources but doesn't stop the others being found...
+		final ResourceIndex index = new ResourceIndex(classPath, null);
+		assertEquals(Arrays.asList("a.txt"), index.find(".*", true));
+		assertEquals(1, index.size());
+
+		// ...and is still the first element
+		assertEquals(Collections.emptyList(), index.find(".*", false));
+		assertEquals(Collections.emptyList(),
+				new ResourceIndex("missing.jar" + File.pathSeparator + jar.getPath(), null).find(".*", false));
+
+		// Once it's fixed a refresh reads it
+		jar(corrupt, "b.txt");
+		index.refresh();
+		assertEquals(Arrays.asList("b.txt"), index.find(".*", false));
+	}
+
+	@Test
+	public void testCorruptCache() throws IOException {
+		final File jar = jar(temporary.newFile(), "a.txt");
+		final File cache = new File(temporary.getRoot(), "test.cache");
+		for(final int count : new int[] { -1, Integer.MAX_VALUE }) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try(final DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeInt(1);
+				out.writeInt(1);
+				out.writeUTF(jar.getPath());
+				out.writeLong(jar.lastModified());
+				out.writeLong(jar.length());
+				out.writeInt(count);
+			}
+			Files.write(cache.toPath(), bytes.toByteArray());
+
+			// The cache is ignored, the JAR scanned and the cache rewritten
+			assertEquals(Arrays.asList("a.txt"), new ResourceIndex(jar.getPath(), cache).find(".*", true));
+			assertEquals(Arrays.asList("a.txt"), new ResourceIndex(jar.getPath(), cache).find(".*", true));
+		}
+	}
+
+	@Test
+	public void testUnwritableCache() throws IOException {
+		final File jar = jar(temporary.newFile(), "a.txt");
+		final File cache = new File(directory(), "missing/test.cache");
+
+		assertEquals(Arrays.asList("a.txt"), new ResourceIndex(jar.getPath(), cache).find(".*", true));
+		assertFalse(cache.exists());
+	}
+
+}
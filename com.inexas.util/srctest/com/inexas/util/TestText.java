@@ -10,7 +10,12 @@
 
 package com.inexas.util;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.*;
+import java.util.*;
 import org.junit.Test;
 
 public class TestText {
@@ -34,4 +39,340 @@ public class TestText {
 		doAppendEscapedTest("\u0001", "\\u0001", true);
 		doAppendEscapedTest("\u0014", "\\u0014", true);
 	}
+
+	@Test
+	public void testIndent() {
+		final Text t = new Text();
+		t.beginObject("a");
+		t.beginObject("b");
+		t.writeProperty("c", "d");
+		t.endObject();
+		t.endObject();
+		assertEquals("a {\n\tb {\n\t\tc: d;\n\t}\n}\n", t.toString());
+	}
+
+	@Test
+	public void testWriteTo() throws UnsupportedEncodingException {
+		// Includes a 2 and a 3 byte UTF-8 character and a surrogate pair
+		final String string = "a\u00e9\u20ac\ud83d\ude00z";
+		final Text t = new Text(false);
+		t.append(string);
+
+		final StringWriter writer = new StringWriter();
+		t.writeTo(writer);
+		assertEquals(string, writer.toString());
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		t.writeTo(Channels.newChannel(out), StandardCharsets.UTF_8.newEncoder());
+		assertEquals(string, out.toString("UTF-8"));
+		assertEquals(string, t.toString());
+
+		final Appendable appendable = new Text(false);
+		try {
+			appendable.append("xabcx", 1, 4).append('d');
+		} catch(final IOException e) {
+			fail();
+		}
+		assertEquals("abcd", appendable.toString());
+	}
+
+	@Test
+	public void testAutoFlush() throws UnsupportedEncodingException {
+		final Text expected = new Text(false);
+		for(int i = 0; i < 1000; i++) {
+			expected.append(i);
+			expected.append(i % 7 == 0 ? "\ud83d\ude00" : "\u00e9 ");
+		}
+
+		final StringWriter writer = new StringWriter();
+		final Text toWriter = new Text(false);
+		toWriter.append("start ");
+		toWriter.setAutoFlush(writer, 16);
+		for(int i = 0; i < 1000; i++) {
+			toWriter.append(i);
+			toWriter.append(i % 7 == 0 ? "\ud83d\ude00" : "\u00e9 ");
+			assertTrue(toWriter.length() <= 16);
+		}
+		toWriter.flush();
+		assertEquals(0, toWriter.length());
+		assertEquals("start " + expected, writer.toString());
+
+		// Odd threshold so surrogate pairs get split across spills
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final Text toChannel = new Text(false);
+		toChannel.setAutoFlush(Channels.newChannel(out), StandardCharsets.UTF_8.newEncoder(), 7);
+		for(int i = 0; i < 1000; i++) {
+			toChannel.append(i);
+			toChannel.append(i % 7 == 0 ? "\ud83d\ude00" : "\u00e9 ");
+		}
+		toChannel.flush();
+		assertEquals(expected.toString(), out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testSegmented() throws UnsupportedEncodingException {
+		final Text expected = new Text(false);
+		final Text t = new Text(false);
+		t.setSegmented(16);
+		for(int i = 0; i < 500; i++) {
+			for(final Text text : new Text[] { expected, t }) {
+				text.append(i);
+				text.append(i % 7 == 0 ? "\ud83d\ude00" : " ");
+				if(i % 50 == 0) {
+					text.append(expected.length() > 100 ? "a string longer than the chunk size" : "x");
+					text.newlinePrettyOrNot();
+				}
+			}
+		}
+		final String string = expected.toString();
+		assertEquals(string, t.toString());
+		assertEquals(string.length(), t.length());
+		for(int i = 0; i < string.length(); i++) {
+			assertEquals(string.charAt(i), t.charAt(i));
+		}
+		for(int i = 0; i < string.length(); i += 7) {
+			final int to = Math.min(string.length(), i + i % 40);
+			assertEquals(string.substring(i, to), t.getString(i, to));
+		}
+		assertEquals(string.lastIndexOf('x'), t.lastIndexOf('x'));
+		assertEquals(string.lastIndexOf('\n'), t.lastIndexOf('\n'));
+		assertEquals(expected.count('\n'), t.count('\n'));
+
+		final StringWriter writer = new StringWriter();
+		t.writeTo(writer);
+		assertEquals(string, writer.toString());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		t.writeTo(Channels.newChannel(out), StandardCharsets.UTF_8.newEncoder());
+		assertEquals(string, out.toString("UTF-8"));
+
+		final Text appended = new Text(false);
+		appended.append(t);
+		assertEquals(string, appended.toString());
+
+		// Truncate back into an earlier chunk and carry on
+		t.setLength(100);
+		t.append("end");
+		assertEquals(string.substring(0, 100) + "end", t.toString());
+
+		// Parsers see the joined chunks
+		t.append(string);
+		final Parser parser = new Parser(t);
+		assertEquals(t.toString(), parser.getString(0, parser.length()));
+		t.append('!');
+		assertEquals(string.substring(0, 100) + "end" + string + '!', t.toString());
+	}
+
+	@Test
+	public void testBulkAppend() {
+		final String string = "0123456789\nabcdefghijklmnopqrstuvwxyz";
+		final Text source = new Text(false);
+		source.append(string);
+		final CharSequence[] sequences = {
+				string,
+				source,
+				new StringBuilder(string),
+				CharBuffer.wrap(("xx" + string).toCharArray()).subSequence(2, string.length() + 2),
+				CharBuffer.wrap(string) };
+		for(final CharSequence sequence : sequences) {
+			final Text t = new Text(false);
+			t.append(sequence);
+			t.append(sequence, 5, 15);
+			assertEquals(sequence.getClass().getName(), string + string.substring(5, 15), t.toString());
+		}
+
+		final Text t = new Text(false);
+		t.append(string.toCharArray());
+		t.append(string.toCharArray(), 3, 12);
+		t.append(t);
+		final String expected = string + string.substring(3, 12);
+		assertEquals(expected + expected, t.toString());
+
+		// The last newline is tracked so compact Texts wrap long lines
+		final char[] line = new char[140];
+		Arrays.fill(line, 'x');
+		final Text compact = new Text(false);
+		compact.append(new String(line, 0, 100));
+		compact.append("\n" + new String(line, 0, 100));
+		compact.newline();
+		assertEquals(1, compact.count('\n'));
+		compact.append(line);
+		compact.newline();
+		assertEquals(2, compact.count('\n'));
+		assertEquals(compact.length() - 1, compact.lastIndexOf('\n'));
+	}
+
+	private void appendMixture(Text t, String extra) {
+		t.append("abc");
+		t.append(-123L);
+		t.append(1.5);
+		t.appendPadded(7, 3);
+		t.appendHex(0xcafe);
+		t.append('\u00e9');
+		t.append("xyz", 1, 2);
+		t.newlinePrettyOrNot();
+		t.append(extra);
+	}
+
+	private String write(Text t, Charset charset) throws UnsupportedEncodingException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		t.writeTo(Channels.newChannel(out), charset.newEncoder());
+		return out.toString(charset.name());
+	}
+
+	@Test
+	public void testLatin1() throws UnsupportedEncodingException {
+		final Text expected = new Text(false);
+		appendMixture(expected, "");
+		final String string = expected.toString();
+
+		final Text t = new Text(false);
+		t.setLatin1();
+		appendMixture(t, "");
+		assertEquals(string, t.toString());
+		assertEquals(string.length(), t.length());
+		assertEquals('\u00e9', t.charAt(string.indexOf('\u00e9')));
+		assertEquals(string.lastIndexOf('\u00e9'), t.lastIndexOf('\u00e9'));
+		assertEquals(-1, t.lastIndexOf('\u01e9'));
+		assertEquals(0, t.count('\u01e9'));
+		assertEquals(1, t.count('\n'));
+		assertEquals(string.substring(2, 9), t.getString(2, 9));
+		assertArrayEquals(string.toCharArray(), t.toCharArray());
+		assertEquals(string, write(t, StandardCharsets.ISO_8859_1));
+		assertEquals(string, write(t, StandardCharsets.UTF_8));
+		assertEquals(string, write(t, StandardCharsets.UTF_16));
+		final StringWriter writer = new StringWriter();
+		t.writeTo(writer);
+		assertEquals(string, writer.toString());
+
+		// ASCII is written as it is
+		final Text ascii = new Text(false);
+		ascii.setLatin1();
+		ascii.append("ascii ");
+		ascii.append(ascii);
+		assertEquals("ascii ascii ", write(ascii, StandardCharsets.UTF_8));
+
+		// Non Latin-1 inflates
+		final String euro = "\u20ac and \ud83d\ude00";
+		appendMixture(t, euro);
+		appendMixture(expected, euro);
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.toString(), write(t, StandardCharsets.UTF_8));
+		t.append(ascii);
+		assertEquals(expected + "ascii ascii ", t.toString());
+
+		// Existing contents are kept
+		final Text existing = new Text("abc\u00e9");
+		existing.setLatin1();
+		existing.append("d");
+		assertEquals("abc\u00e9d", existing.toString());
+		assertEquals("abc\u00e9d", write(existing, StandardCharsets.UTF_8));
+
+		// ...or left as chars if they are not all Latin-1
+		final Text wide = new Text("\u20ac");
+		wide.setLatin1();
+		wide.append("d");
+		assertEquals("\u20acd", wide.toString());
+
+		// Segmented Texts stay as chars
+		final Text segmented = new Text(false);
+		segmented.setSegmented(4);
+		segmented.append("abcdefgh");
+		segmented.setLatin1();
+		segmented.append("i");
+		assertEquals("abcdefghi", segmented.toString());
+	}
+
+	private String append(double d) {
+		final Text t = new Text(false);
+		t.append(d);
+		return t.toString();
+	}
+
+	@Test
+	public void testAppendNumbers() {
+		final Text t = new Text(false);
+		for(final long l : new long[] { 0, 9, 10, 99, 100, -1, -99, -100, Long.MIN_VALUE, Long.MAX_VALUE }) {
+			t.recycle();
+			t.append(l);
+			assertEquals(Long.toString(l), t.toString());
+		}
+		t.recycle();
+		t.append(Integer.MIN_VALUE);
+		assertEquals(Integer.toString(Integer.MIN_VALUE), t.toString());
+
+		// Exactly as Double.toString()...
+		final double[] doubles = {
+				0.0, -0.0, 1.0, -1.5, 0.1, 0.001, 1.0E-4, 123.456, 9999999.0, 1.0E7, 1.2345678E7,
+				Double.MAX_VALUE, Double.MIN_VALUE, Double.MIN_NORMAL, 1.0E22, 2.5E-4,
+				Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for(final double d : doubles) {
+			assertEquals(Double.toString(d), append(d));
+		}
+		// ...except it's always the shortest, older JDKs give 9.999999999999999E22
+		assertEquals("1.0E23", append(1.0E23));
+
+		// Random bit patterns and decimals always round trip and are no longer
+		final Random random = new Random(1957);
+		for(int i = 0; i < 100_000; i++) {
+			final double d = i % 2 == 0
+					? Double.longBitsToDouble(random.nextLong())
+					: random.nextInt(2_000_000) / 1000.0 - 1000.0;
+			if(!Double.isNaN(d)) {
+				final String string = append(d);
+				assertEquals(string, d, Double.parseDouble(string), 0.0);
+				assertTrue(string, string.length() <= Double.toString(d).length());
+			}
+		}
+	}
+
+	@Test
+	public void testAppendPaddedAndHex() {
+		final Text t = new Text(false);
+		t.appendPadded(7, 3);
+		t.append(' ');
+		t.appendPadded(-7, 3);
+		t.append(' ');
+		t.appendPadded(1234, 2);
+		t.append(' ');
+		t.appendPadded(-7, 4, ' ');
+		t.append(' ');
+		t.appendHex(0);
+		t.append(' ');
+		t.appendHex(0xcafe, 8);
+		t.append(' ');
+		t.appendHex(-1);
+		assertEquals("007 -07 1234   -7 0 0000cafe ffffffffffffffff", t.toString());
+	}
+
+	@Test
+	public void testPool() {
+		final TextPool pool = new TextPool(1, 64);
+
+		final Text pretty = pool.acquire(true);
+		pretty.setDelimiter(';');
+		pretty.indentMore();
+		pretty.append("abc");
+		assertEquals("abc", pool.toString(pretty));
+
+		// Reused but reset...
+		final Text reused = pool.acquire(true);
+		assertSame(pretty, reused);
+		reused.indent();
+		reused.delimit();
+		reused.delimit();
+		assertEquals(", ", reused.toString());
+
+		// ...but not if it's compact...
+		pool.release(reused);
+		assertNotSame(reused, pool.acquire(false));
+
+		// ...or too big
+		final Text big = pool.acquire(true);
+		assertSame(reused, big);
+		for(int i = 0; i < 100; i++) {
+			big.append('x');
+		}
+		pool.release(big);
+		assertNotSame(big, pool.acquire(true));
+	}
 }
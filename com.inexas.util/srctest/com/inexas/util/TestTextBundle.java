@@ -0,0 +1,150 @@
+package com.inexas.util;
+
+import static org.junit.Assert.*;
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import com.inexas.exception.InvalidCallException;
+
+public class TestTextBundle {
+	private ClassLoader loader;
+
+	@Rule
+	public final TemporaryFolder temporary = new TemporaryFolder();
+
+	@Before
+	public void setUp() throws IOException {
+		final Path directory = temporary.newFolder().toPath();
+		Files.write(directory.resolve("tb.properties"), (""
+				+ "select=select * from mytable\n"
+				+ "insert=insert into tab(id,name)values('{Id}','{Name}')\n").getBytes("ISO-8859-1"));
+		Files.write(directory.resolve("tb_db2.properties"), (""
+				+ "select=SELECT * FROM DB2TAB\n").getBytes("ISO-8859-1"));
+
+		loader = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] { directory.toUri().toURL() }));
+	}
+
+	@After
+	public void tearDown() {
+		Thread.currentThread().setContextClassLoader(loader);
+	}
+
+	@Test
+	public void testLayers() {
+		final TextBundle base = new TextBundle("tb");
+		assertEquals("select * from mytable", base.getString("select"));
+
+		final TextBundle db2 = new TextBundle("tb_db2");
+		assertEquals("SELECT * FROM DB2TAB", db2.getString("select"));
+		assertEquals("insert into tab(id,name)values('{Id}','{Name}')", db2.getString("insert"));
+		assertEquals("x", db2.getString("missing", "x"));
+		try {
+			db2.getString("missing");
+			fail();
+		} catch(final RuntimeException e) {
+			assertTrue(e.getMessage().contains("missing"));
+		}
+
+		// Falls back when the most specific layer is missing
+		assertEquals("select * from mytable", new TextBundle("tb_oracle").getString("select"));
+
+		// Changes are seen
+		db2.put("select", "SELECT 1");
+		assertEquals("SELECT 1", db2.getString("select"));
+		db2.remove("select");
+		assertEquals("select * from mytable", db2.getString("select"));
+	}
+
+	@Test
+	public void testGet() {
+		final TextBundle db2 = new TextBundle("tb_db2");
+		assertEquals(
+				"insert into tab(id,name)values('1','Keith')",
+				db2.get("insert", "{Id}", "1", "{Name}", "Keith"));
+		assertEquals(
+				"insert into tab(id,name)values('2','{Name}')",
+				db2.get("insert", "{Id}", "2"));
+		db2.put("greeting", "Hello {First Name}");
+		assertEquals("Hello Keith", db2.get("greeting", "{First Name}", "Keith"));
+		assertSame(db2.getTemplate("insert"), db2.getTemplate("insert"));
+
+		// Templates are parsed again after a change
+		db2.put("insert", "insert {Id}");
+		assertEquals("insert 3", db2.get("insert", "{Id}", "3"));
+	}
+
+	@Test
+	public void testTemplate() {
+		final Template template = Template.parse("{A} and {B}, {A} again, {First Name} {} {{C}} }{");
+		assertEquals(4, template.getParameterCount());
+		assertEquals(0, template.indexOf("{A}"));
+		assertEquals(1, template.indexOf("{B}"));
+		assertEquals(2, template.indexOf("{First Name}"));
+		assertEquals(3, template.indexOf("{C}"));
+		assertEquals(-1, template.indexOf("{}"));
+		assertEquals("{B}", template.getParameter(1));
+
+		assertEquals(
+				"1 and {A}, 1 again, Keith {} {3} }{",
+				template.render("{A}", "1", "{B}", "{A}", "{First Name}", "Keith", "{C}", "3"));
+		assertEquals(template.toString(), template.render());
+
+		final Template.Bindings bindings = template.bind();
+		assertEquals("x and {B}, x again, {First Name} {} {{C}} }{", bindings.set(0, "x").render());
+		assertEquals("x and y, x again, {First Name} {} {z} }{", bindings.set(1, "y").set(3, "z").render());
+		assertEquals(template.toString(), bindings.clear().render());
+
+		assertEquals("", Template.parse("").render());
+		assertEquals("v", Template.parse("{A}").render("{A}", "v"));
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		final File file = temporary.newFile();
+		new TextBundle("tb_db2").save(file);
+
+		final TextBundle db2 = TextBundle.load("tb_db2", file);
+		assertEquals("SELECT * FROM DB2TAB", db2.getString("select"));
+		assertEquals("insert into tab(id,name)values('{Id}','{Name}')", db2.getString("insert"));
+		assertNull(db2.getString("missing", null));
+		try {
+			db2.put("select", "SELECT 1");
+			fail();
+		} catch(final InvalidCallException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testStringTable() throws IOException {
+		final Map<String, String> map = new HashMap<>();
+		for(int i = 0; i < 1000; i++) {
+			map.put("key" + i, "value \u00e9 " + i);
+		}
+		map.put("", "empty");
+		final StringTable table = StringTable.of(map);
+		assertEquals(1001, table.size());
+		assertEquals("value \u00e9 7", table.get("key7"));
+		assertEquals("empty", table.get(""));
+		assertNull(table.get("key1000"));
+		assertEquals(map, table.toMap());
+		assertEquals(0, StringTable.of(new HashMap<String, String>()).size());
+
+		// The same once written and mapped
+		final File file = temporary.newFile();
+		table.write(file);
+		final StringTable mapped = StringTable.map(file);
+		assertEquals(1001, mapped.size());
+		assertEquals("value \u00e9 7", mapped.get("key7"));
+		assertEquals("value \u00e9 7", mapped.get("key7"));
+		assertNull(mapped.get("key1000"));
+		assertEquals(map, mapped.toMap());
+		assertNull(StringTable.of(new HashMap<String, String>()).get("x"));
+	}
+
+}